@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.CassandraClientAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.entities.Client;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.CassandraRealmAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.entities.Realm;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.RoleValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.Roles;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.AuthenticationFlowModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.services.DefaultKeycloakContext;
+import org.keycloak.services.DefaultKeycloakSession;
+import org.keycloak.services.DefaultKeycloakSessionFactory;
+
+/**
+ * In-memory entities and a {@link KeycloakSession} without providers so benchmarks run without Cassandra or Keycloak
+ * server.
+ */
+public final class BenchmarkFixtures {
+    public static final String REALM_ID = "benchmark-realm";
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * Keycloak's session without any providers, which is enough for the attributes the L1 cache is kept in.
+     */
+    public static KeycloakSession keycloakSession() {
+        return new BenchmarkSessionFactory().create();
+    }
+
+    /**
+     * Roles of a realm which aren't stored yet.
+     */
+    public static Roles roles(int realmRoleCount, int clientCount, int rolesPerClient) {
+        Set<RoleValue> realmRoles = new HashSet<>();
+        for (int i = 0; i < realmRoleCount; i++) {
+            realmRoles.add(role("realm-role-" + i, null));
+        }
+
+        Map<String, Set<RoleValue>> clientRoles = new HashMap<>();
+        for (int c = 0; c < clientCount; c++) {
+            String clientId = "client-" + c;
+            Set<RoleValue> roles = new HashSet<>();
+            for (int i = 0; i < rolesPerClient; i++) {
+                roles.add(role(clientId + "-role-" + i, clientId));
+            }
+            clientRoles.put(clientId, roles);
+        }
+
+        return Roles.builder()
+                .realmId(REALM_ID)
+                .realmRoles(realmRoles)
+                .clientRoles(clientRoles)
+                .build();
+    }
+
+    private static RoleValue role(String id, String clientId) {
+        return RoleValue.builder()
+                .id(id)
+                .name(id)
+                .clientId(clientId)
+                .realmId(REALM_ID)
+                .build();
+    }
+
+    /**
+     * Realm with {@code flowCount} flows, each having {@code executionsPerFlow} executions.
+     */
+    public static CassandraRealmAdapter realm(int flowCount, int executionsPerFlow) {
+        Realm entity = Realm.builder().id(REALM_ID).name(REALM_ID).version(1L).build();
+        CassandraRealmAdapter realm = new CassandraRealmAdapter(entity, null, null);
+        realm.setSsoSessionIdleTimeout(1800);
+        realm.setSsoSessionMaxLifespan(36000);
+        realm.setOfflineSessionIdleTimeout(2592000);
+        realm.setOfflineSessionMaxLifespan(5184000);
+        realm.setOfflineSessionMaxLifespanEnabled(true);
+
+        for (int f = 0; f < flowCount; f++) {
+            AuthenticationFlowModel flow = new AuthenticationFlowModel();
+            flow.setId("flow-" + f);
+            flow.setAlias("flow-" + f);
+            flow.setProviderId("basic-flow");
+            flow.setTopLevel(true);
+            realm.addAuthenticationFlow(flow);
+
+            for (int e = 0; e < executionsPerFlow; e++) {
+                AuthenticationExecutionModel execution = new AuthenticationExecutionModel();
+                execution.setId("flow-" + f + "-execution-" + e);
+                execution.setParentFlow(flow.getId());
+                execution.setAuthenticator("auth-cookie");
+                execution.setRequirement(AuthenticationExecutionModel.Requirement.ALTERNATIVE);
+                execution.setPriority(e);
+                realm.addAuthenticatorExecution(execution);
+            }
+        }
+
+        // Without pending changes, like a realm read from the database
+        return new CassandraRealmAdapter(entity, null, null);
+    }
+
+    public static CassandraClientAdapter client(CassandraRealmAdapter realm, int attributeCount) {
+        Map<String, List<String>> attributes = new HashMap<>();
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put("attribute-" + i, List.of("value-" + i));
+        }
+
+        Client entity = Client.builder()
+                .realmId(REALM_ID)
+                .id("benchmark-client")
+                .version(1L)
+                .attributes(attributes)
+                .build();
+        return new CassandraClientAdapter(entity, null, realm, null);
+    }
+
+    private static class BenchmarkSessionFactory extends DefaultKeycloakSessionFactory {
+        @Override
+        public KeycloakSession create() {
+            return new DefaultKeycloakSession(this) {
+                @Override
+                protected DefaultKeycloakContext createKeycloakContext(KeycloakSession session) {
+                    return null;
+                }
+            };
+        }
+    }
+}
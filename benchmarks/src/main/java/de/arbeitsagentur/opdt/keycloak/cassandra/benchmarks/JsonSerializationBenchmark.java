@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.internal.core.type.codec.extras.json.JsonCodec;
+import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of the JSON codec used for client sessions, which are (de)serialized on every user session read and write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    @Param({"5", "20"})
+    private int noteCount;
+
+    private JsonCodec<AuthenticatedClientSessionValue> codec;
+    private AuthenticatedClientSessionValue clientSession;
+    private ByteBuffer encoded;
+    private String json;
+
+    @Setup
+    public void setup() {
+        codec = new JsonCodec<>(AuthenticatedClientSessionValue.class, CassandraJsonSerialization.getMapper());
+
+        Map<String, String> notes = new HashMap<>();
+        for (int i = 0; i < noteCount; i++) {
+            notes.put("note-" + i, "value-" + i);
+        }
+
+        clientSession = AuthenticatedClientSessionValue.builder()
+                .id("client-session")
+                .clientId("benchmark-client")
+                .timestamp(System.currentTimeMillis())
+                .expiration(System.currentTimeMillis() + 1800_000L)
+                .authMethod("openid-connect")
+                .redirectUri("https://localhost/callback")
+                .currentRefreshToken("refresh-token")
+                .currentRefreshTokenUseCount(0)
+                .notes(notes)
+                .build();
+        encoded = codec.encode(clientSession, ProtocolVersion.DEFAULT);
+        json = CassandraJsonSerialization.writeValueAsString(clientSession);
+    }
+
+    @Benchmark
+    public ByteBuffer codecEncode() {
+        return codec.encode(clientSession, ProtocolVersion.DEFAULT);
+    }
+
+    @Benchmark
+    public AuthenticatedClientSessionValue codecDecode() {
+        return codec.decode(encoded.duplicate(), ProtocolVersion.DEFAULT);
+    }
+
+    @Benchmark
+    public String writeValueAsString() {
+        return CassandraJsonSerialization.writeValueAsString(clientSession);
+    }
+
+    @Benchmark
+    public AuthenticatedClientSessionValue readValue() {
+        return CassandraJsonSerialization.readValue(json, AuthenticatedClientSessionValue.class);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.CompositeRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.ManagedCompositeCassandraRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.L1CacheInterceptor;
+import de.arbeitsagentur.opdt.keycloak.cassandra.inmemory.InMemoryRoleRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.Roles;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Overhead of the proxy based L1 cache compared to calling the repository directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class L1CacheInterceptorBenchmark {
+    private ManagedCompositeCassandraRepository repository;
+    private CompositeRepository intercepted;
+    private Roles roles;
+
+    @Setup
+    public void setup() {
+        roles = BenchmarkFixtures.roles(10, 10, 10);
+
+        repository = new ManagedCompositeCassandraRepository();
+        repository.setRoleRepository(new InMemoryRoleRepository());
+        repository.insertOrUpdate(roles);
+
+        intercepted = (CompositeRepository) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[] {CompositeRepository.class},
+                new L1CacheInterceptor(BenchmarkFixtures.keycloakSession(), repository, CassandraMetrics.NOOP));
+    }
+
+    @Benchmark
+    public Roles direct() {
+        return repository.getRolesByRealmId(BenchmarkFixtures.REALM_ID);
+    }
+
+    @Benchmark
+    public Roles cached() {
+        return intercepted.getRolesByRealmId(BenchmarkFixtures.REALM_ID);
+    }
+
+    @Benchmark
+    public void uncachedWrite() {
+        intercepted.insertOrUpdate(roles);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.CassandraRealmAdapter;
+import java.util.concurrent.TimeUnit;
+import org.keycloak.models.AuthenticationExecutionModel;
+import org.keycloak.models.AuthenticationFlowModel;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Flow and execution lookups, which are stored as JSON attributes of the realm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RealmAdapterBenchmark {
+    @Param({"10", "50"})
+    private int flowCount;
+
+    private CassandraRealmAdapter realm;
+    private String flowId;
+    private String executionId;
+
+    @Setup
+    public void setup() {
+        realm = BenchmarkFixtures.realm(flowCount, 5);
+        flowId = "flow-" + (flowCount / 2);
+        executionId = flowId + "-execution-2";
+    }
+
+    @Benchmark
+    public AuthenticationFlowModel flowById() {
+        return realm.getAuthenticationFlowById(flowId);
+    }
+
+    @Benchmark
+    public AuthenticationExecutionModel executionById() {
+        return realm.getAuthenticationExecutionById(executionId);
+    }
+
+    @Benchmark
+    public long executionsOfFlow() {
+        return realm.getAuthenticationExecutionsStream(flowId).count();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.RoleValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.Roles;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Role lookups by id on catalogues of growing size, client roles are found after all realm roles were scanned.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RolesBenchmark {
+    @Param({"10", "100", "1000"})
+    private int clientCount;
+
+    private Roles roles;
+    private String realmRoleId;
+    private String clientRoleId;
+
+    @Setup
+    public void setup() {
+        roles = BenchmarkFixtures.roles(clientCount, clientCount, 10);
+        realmRoleId = "realm-role-" + (clientCount / 2);
+        clientRoleId = "client-" + (clientCount / 2) + "-role-5";
+    }
+
+    @Benchmark
+    public RoleValue realmRoleById() {
+        return roles.getRoleById(realmRoleId);
+    }
+
+    @Benchmark
+    public RoleValue clientRoleById() {
+        return roles.getRoleById(clientRoleId);
+    }
+
+    @Benchmark
+    public RoleValue missingRoleById() {
+        return roles.getRoleById("unknown");
+    }
+}
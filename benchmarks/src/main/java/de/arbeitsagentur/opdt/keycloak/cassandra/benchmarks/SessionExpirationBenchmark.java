@@ -0,0 +1,88 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.CassandraClientAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.CassandraRealmAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.CassandraSessionExpiration;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ExpirationPolicies;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.SessionExpirationData;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Expiration calculations done for every user and client session update, including the lookup of the realm's
+ * expiration policy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionExpirationBenchmark {
+    @Param({"false", "true"})
+    private boolean offline;
+
+    private final ExpirationPolicies expirationPolicies = new ExpirationPolicies(100);
+
+    private CassandraRealmAdapter realm;
+    private CassandraClientAdapter client;
+    private UserSession userSession;
+    private AuthenticatedClientSessionValue clientSession;
+
+    @Setup
+    public void setup() {
+        realm = BenchmarkFixtures.realm(0, 0);
+        client = BenchmarkFixtures.client(realm, 20);
+
+        long now = System.currentTimeMillis();
+        userSession = UserSession.builder()
+                .id("user-session")
+                .realmId(BenchmarkFixtures.REALM_ID)
+                .timestamp(now)
+                .lastSessionRefresh(now)
+                .offline(offline)
+                .build();
+        clientSession = AuthenticatedClientSessionValue.builder()
+                .id("client-session")
+                .clientId(client.getId())
+                .timestamp(now)
+                .offline(offline)
+                .build();
+    }
+
+    @Benchmark
+    public Long userSessionExpiration() {
+        CassandraSessionExpiration.setUserSessionExpiration(userSession, expirationData());
+        return userSession.getExpiration();
+    }
+
+    @Benchmark
+    public Long clientSessionExpiration() {
+        CassandraSessionExpiration.setClientSessionExpiration(
+                clientSession, expirationData(), expirationPolicies.of(client));
+        return clientSession.getExpiration();
+    }
+
+    private SessionExpirationData expirationData() {
+        return SessionExpirationData.builder()
+                .realmPolicy(expirationPolicies.of(realm))
+                .build();
+    }
+}
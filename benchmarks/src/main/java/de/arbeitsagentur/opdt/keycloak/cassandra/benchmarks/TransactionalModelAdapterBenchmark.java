@@ -0,0 +1,65 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.benchmarks;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.CassandraClientAdapter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Attribute access on adapters, which copies and filters the attribute map on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionalModelAdapterBenchmark {
+    @Param({"10", "100"})
+    private int attributeCount;
+
+    private CassandraClientAdapter client;
+    private String attributeName;
+
+    @Setup
+    public void setup() {
+        client = BenchmarkFixtures.client(BenchmarkFixtures.realm(0, 0), attributeCount);
+        attributeName = "attribute-" + (attributeCount / 2);
+    }
+
+    @Benchmark
+    public String getAttribute() {
+        return client.getAttribute(attributeName);
+    }
+
+    @Benchmark
+    public List<String> getAttributeValues() {
+        return client.getAttributeValues(attributeName);
+    }
+
+    @Benchmark
+    public Map<String, String> getAttributeFirstValues() {
+        return client.getAttributeFirstValues();
+    }
+
+    @Benchmark
+    public Map<String, List<String>> getAllAttributes() {
+        return client.getAllAttributes();
+    }
+}
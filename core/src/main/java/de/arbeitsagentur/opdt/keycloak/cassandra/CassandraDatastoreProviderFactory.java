@@ -85,6 +85,18 @@ public class CassandraDatastoreProviderFactory
             create(session).roles().removeRoles((ClientModel) params[1]);
         } else if (type == GROUP_BEFORE_REMOVE) {
             create(session).users().preRemove((RealmModel) params[0], (GroupModel) params[1]);
+        } else if (type == REALM_AFTER_REMOVE) {
+            session.getKeycloakSessionFactory().publish(new RealmModel.RealmRemovedEvent() {
+                @Override
+                public RealmModel getRealm() {
+                    return (RealmModel) params[0];
+                }
+
+                @Override
+                public KeycloakSession getKeycloakSession() {
+                    return session;
+                }
+            });
         } else if (type == CLIENT_AFTER_REMOVE) {
             session.getKeycloakSessionFactory().publish(new ClientModel.ClientRemovedEvent() {
                 @Override
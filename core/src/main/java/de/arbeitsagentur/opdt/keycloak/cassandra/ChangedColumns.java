@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra;
+
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+
+import com.datastax.oss.driver.api.querybuilder.update.Assignment;
+import java.util.*;
+
+/**
+ * Assignments for update statements which only write changed columns. Collections are updated with add / remove
+ * operations instead of being rewritten completely, the bound values are collected in the same order.
+ */
+public final class ChangedColumns {
+    private ChangedColumns() {}
+
+    public static void setIfChanged(
+            String column, Object oldValue, Object newValue, List<Assignment> assignments, List<Object> values) {
+        if (!Objects.equals(oldValue, newValue)) {
+            assignments.add(Assignment.setColumn(column, bindMarker()));
+            values.add(newValue);
+        }
+    }
+
+    public static void updateSet(
+            String column,
+            Set<String> oldValue,
+            Set<String> newValue,
+            List<Assignment> assignments,
+            List<Object> values) {
+        Set<String> added = new HashSet<>(newValue);
+        added.removeAll(oldValue);
+
+        Set<String> removed = new HashSet<>(oldValue);
+        removed.removeAll(newValue);
+
+        if (!added.isEmpty()) {
+            assignments.add(Assignment.append(column, bindMarker()));
+            values.add(added);
+        }
+
+        if (!removed.isEmpty()) {
+            assignments.add(Assignment.remove(column, bindMarker()));
+            values.add(removed);
+        }
+    }
+
+    public static <V> void updateMap(
+            String column,
+            Map<String, V> oldValue,
+            Map<String, V> newValue,
+            List<Assignment> assignments,
+            List<Object> values) {
+        Map<String, V> changed = new HashMap<>();
+        newValue.forEach((key, value) -> {
+            if (value != null && !Objects.equals(oldValue.get(key), value)) {
+                changed.put(key, value);
+            }
+        });
+
+        Set<String> removed = new HashSet<>();
+        oldValue.keySet().forEach(key -> {
+            if (newValue.get(key) == null) {
+                removed.add(key);
+            }
+        });
+
+        if (!changed.isEmpty()) {
+            assignments.add(Assignment.append(column, bindMarker()));
+            values.add(changed);
+        }
+
+        if (!removed.isEmpty()) {
+            assignments.add(Assignment.remove(column, bindMarker()));
+            values.add(removed);
+        }
+    }
+}
@@ -41,6 +41,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.FederatedIdentity;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserConsent;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserCredential;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
@@ -236,6 +237,29 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
         return this.userRepository.findUserConsentsByRealmId(realmId);
     }
 
+    @L1Cached(cacheName = USER_CREDENTIAL_CACHE)
+    public List<UserCredential> findCredentials(String realmId, String userId) {
+        return this.userRepository.findCredentials(realmId, userId);
+    }
+
+    @L1Cached(cacheName = USER_CREDENTIAL_CACHE)
+    @InvalidateCache
+    public List<UserCredential> migrateLegacyCredentials(User user) {
+        return this.userRepository.migrateLegacyCredentials(user);
+    }
+
+    @L1Cached(cacheName = USER_CREDENTIAL_CACHE)
+    @InvalidateCache
+    public void createOrUpdateCredential(UserCredential credential) {
+        this.userRepository.createOrUpdateCredential(credential);
+    }
+
+    @L1Cached(cacheName = USER_CREDENTIAL_CACHE)
+    @InvalidateCache
+    public boolean deleteCredential(String realmId, String userId, String credentialId) {
+        return this.userRepository.deleteCredential(realmId, userId, credentialId);
+    }
+
     @L1Cached(cacheName = USER_CACHE)
     @InvalidateCache
     public void insertOrUpdate(Roles role) {
@@ -342,6 +366,18 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
         this.userSessionRepository.addClientSession(realm, session, clientSession);
     }
 
+    @L1Cached(cacheName = USER_SESSION_CACHE)
+    @InvalidateCache
+    public void updateClientSession(UserSession session, AuthenticatedClientSessionValue clientSession) {
+        this.userSessionRepository.updateClientSession(session, clientSession);
+    }
+
+    @L1Cached(cacheName = USER_SESSION_CACHE)
+    @InvalidateCache
+    public void removeClientSession(UserSession session, String clientId) {
+        this.userSessionRepository.removeClientSession(session, clientId);
+    }
+
     @L1Cached(cacheName = USER_SESSION_CACHE)
     public UserSession findUserSessionById(String id) {
         return this.userSessionRepository.findUserSessionById(id);
@@ -467,6 +503,36 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
         this.loginFailureRepository.insertOrUpdate(loginFailure);
     }
 
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public LoginFailure insertIfNotExists(LoginFailure loginFailure) {
+        return this.loginFailureRepository.insertIfNotExists(loginFailure);
+    }
+
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public void updateFailureDetails(LoginFailure loginFailure) {
+        this.loginFailureRepository.updateFailureDetails(loginFailure);
+    }
+
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public int incrementNumFailures(LoginFailure loginFailure) {
+        return this.loginFailureRepository.incrementNumFailures(loginFailure);
+    }
+
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public int incrementNumTemporaryLockouts(LoginFailure loginFailure) {
+        return this.loginFailureRepository.incrementNumTemporaryLockouts(loginFailure);
+    }
+
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public void clearFailures(LoginFailure loginFailure) {
+        this.loginFailureRepository.clearFailures(loginFailure);
+    }
+
     @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
     public List<LoginFailure> findLoginFailuresByUserId(String userId) {
         return this.loginFailureRepository.findLoginFailuresByUserId(userId);
@@ -480,8 +546,14 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
 
     @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
     @InvalidateCache
-    public void deleteLoginFailureByUserId(String userId) {
-        this.loginFailureRepository.deleteLoginFailureByUserId(userId);
+    public void deleteLoginFailureByUserId(String realmId, String userId) {
+        this.loginFailureRepository.deleteLoginFailureByUserId(realmId, userId);
+    }
+
+    @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
+    @InvalidateCache
+    public void deleteLoginFailuresByRealmId(String realmId) {
+        this.loginFailureRepository.deleteLoginFailuresByRealmId(realmId);
     }
 
     @L1Cached(cacheName = LOGIN_FAILURE_CACHE)
@@ -489,6 +561,11 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
         return this.loginFailureRepository.findAllLoginFailures();
     }
 
+    @Override
+    public void backfillLoginFailureRealmIndex() {
+        this.loginFailureRepository.backfillLoginFailureRealmIndex();
+    }
+
     @L1Cached(cacheName = SUO_CACHE)
     public SingleUseObject findSingleUseObjectByKey(String key) {
         return this.singleUseObjectRepository.findSingleUseObjectByKey(key);
@@ -500,6 +577,12 @@ public class ManagedCompositeCassandraRepository implements CompositeRepository
         this.singleUseObjectRepository.insertOrUpdate(singleUseObject, ttl);
     }
 
+    @L1Cached(cacheName = SUO_CACHE)
+    @InvalidateCache
+    public boolean insertIfNotExists(SingleUseObject singleUseObject, int ttl) {
+        return this.singleUseObjectRepository.insertIfNotExists(singleUseObject, ttl);
+    }
+
     @L1Cached(cacheName = SUO_CACHE)
     @InvalidateCache
     public void insertOrUpdate(SingleUseObject singleUseObject) {
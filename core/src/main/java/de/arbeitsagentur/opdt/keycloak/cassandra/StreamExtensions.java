@@ -17,6 +17,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra;
 
 import com.datastax.oss.driver.api.core.PagingIterable;
 import com.datastax.oss.driver.api.core.paging.OffsetPager;
+import java.util.List;
 import java.util.stream.Stream;
 
 public final class StreamExtensions {
@@ -30,4 +31,19 @@ public final class StreamExtensions {
 
         return page.getElements().stream();
     }
+
+    /**
+     * Same paging as {@link OffsetPager}: pages are aligned to maxResult and the last page is returned if firstResult
+     * lies behind the end.
+     */
+    public static <T> Stream<T> paginated(List<T> list, Integer firstResult, Integer maxResult) {
+        if (maxResult == null || maxResult == -1) {
+            return list.stream();
+        }
+
+        int lastPageStart = list.isEmpty() ? 0 : ((list.size() - 1) / maxResult) * maxResult;
+        int pageStart = Math.min((firstResult / maxResult) * maxResult, lastPageStart);
+
+        return list.subList(pageStart, Math.min(pageStart + maxResult, list.size())).stream();
+    }
 }
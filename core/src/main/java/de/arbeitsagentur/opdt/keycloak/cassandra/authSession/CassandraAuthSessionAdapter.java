@@ -49,6 +49,10 @@ public class CassandraAuthSessionAdapter implements AuthenticationSessionModel {
         deleted = true;
     }
 
+    public AuthenticationSession getEntity() {
+        return authenticationSession;
+    }
+
     @Override
     public String getTabId() {
         return authenticationSession.getTabId();
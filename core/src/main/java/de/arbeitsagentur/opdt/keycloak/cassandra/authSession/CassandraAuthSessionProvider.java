@@ -108,7 +108,10 @@ public class CassandraAuthSessionProvider implements AuthenticationSessionProvid
 
         authSessionRepository.insertOrUpdate(entity);
 
-        return entityToAdapterFunc(realm).apply(entity);
+        CassandraRootAuthSessionAdapter adapter =
+                (CassandraRootAuthSessionAdapter) entityToAdapterFunc(realm).apply(entity);
+        adapter.markNew();
+        return adapter;
     }
 
     @Override
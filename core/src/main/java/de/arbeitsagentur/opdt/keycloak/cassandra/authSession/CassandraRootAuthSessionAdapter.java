@@ -23,8 +23,6 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entitie
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.CassandraModelTransaction;
 import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 import lombok.EqualsAndHashCode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.jbosslog.JBossLog;
@@ -49,30 +47,37 @@ public class CassandraRootAuthSessionAdapter implements RootAuthenticationSessio
 
     private final int authSessionsLimit;
 
-    private Map<String, CassandraAuthSessionAdapter> sessionModels = new HashMap<>();
+    // Tab sessions by tabId, loaded with a single query on first access and kept in sync afterwards
+    private Map<String, CassandraAuthSessionAdapter> sessionModels;
     private boolean updated = false;
     private boolean deleted = false;
 
     private static final Comparator<AuthenticationSession> TIMESTAMP_COMPARATOR =
             Comparator.comparingLong(AuthenticationSession::getTimestamp);
 
-    private Function<AuthenticationSession, CassandraAuthSessionAdapter> entityToAdapterFunc(RealmModel realm) {
-        return (origEntity) -> {
-            if (origEntity == null) {
-                return null;
-            }
+    private Map<String, CassandraAuthSessionAdapter> getSessionModels() {
+        if (sessionModels == null) {
+            sessionModels = new LinkedHashMap<>();
+            authSessionRepository
+                    .findAuthSessionsByParentSessionId(rootAuthenticationSession.getId())
+                    .forEach(this::toAdapter);
+        }
+
+        return sessionModels;
+    }
 
-            if (sessionModels.containsKey(origEntity.getTabId())) {
-                return sessionModels.get(origEntity.getTabId());
-            }
+    private CassandraAuthSessionAdapter toAdapter(AuthenticationSession entity) {
+        CassandraAuthSessionAdapter adapter =
+                new CassandraAuthSessionAdapter(session, realm, this, entity, authSessionRepository);
+        session.getTransactionManager().enlistAfterCompletion((CassandraModelTransaction) adapter::flush);
+        sessionModels.put(adapter.getTabId(), adapter);
 
-            CassandraAuthSessionAdapter adapter =
-                    new CassandraAuthSessionAdapter(session, realm, this, origEntity, authSessionRepository);
-            session.getTransactionManager().enlistAfterCompletion((CassandraModelTransaction) adapter::flush);
-            sessionModels.put(adapter.getTabId(), adapter);
+        return adapter;
+    }
 
-            return adapter;
-        };
+    /** A newly created root session has no tab sessions yet, so there is nothing to load. */
+    public void markNew() {
+        sessionModels = new LinkedHashMap<>();
     }
 
     public void markDeleted() {
@@ -110,9 +115,7 @@ public class CassandraRootAuthSessionAdapter implements RootAuthenticationSessio
 
     @Override
     public Map<String, AuthenticationSessionModel> getAuthenticationSessions() {
-        return authSessionRepository.findAuthSessionsByParentSessionId(rootAuthenticationSession.getId()).stream()
-                .map(entityToAdapterFunc(realm))
-                .collect(Collectors.toMap(CassandraAuthSessionAdapter::getTabId, Function.identity()));
+        return new HashMap<>(getSessionModels());
     }
 
     @Override
@@ -121,33 +124,30 @@ public class CassandraRootAuthSessionAdapter implements RootAuthenticationSessio
             return null;
         }
 
-        return authSessionRepository.findAuthSessionsByParentSessionId(rootAuthenticationSession.getId()).stream()
-                .filter(s -> Objects.equals(s.getClientId(), client.getId()))
-                .filter(s -> Objects.equals(s.getTabId(), tabId))
-                .map(entityToAdapterFunc(realm))
-                .findFirst()
-                .orElse(null);
+        CassandraAuthSessionAdapter authSession = getSessionModels().get(tabId);
+        return authSession != null && Objects.equals(authSession.getEntity().getClientId(), client.getId())
+                ? authSession
+                : null;
     }
 
     @Override
     public AuthenticationSessionModel createAuthenticationSession(ClientModel client) {
         Objects.requireNonNull(client, "The provided client can't be null!");
 
-        List<AuthenticationSession> authenticationSessions =
-                authSessionRepository.findAuthSessionsByParentSessionId(rootAuthenticationSession.getId());
-        if (authenticationSessions != null && authenticationSessions.size() >= authSessionsLimit) {
-            Optional<AuthenticationSession> oldest =
-                    authenticationSessions.stream().min(TIMESTAMP_COMPARATOR);
-            String tabId = oldest.map(AuthenticationSession::getTabId).orElse(null);
-
-            if (tabId != null && !oldest.isEmpty()) {
-                log.debugf(
-                        "Reached limit (%s) of active authentication sessions per a root authentication session. Removing oldest authentication session with TabId %s.",
-                        authSessionsLimit, tabId);
-
-                // remove the oldest authentication session
-                authSessionRepository.deleteAuthSession(oldest.get());
-            }
+        Map<String, CassandraAuthSessionAdapter> authenticationSessions = getSessionModels();
+        if (authenticationSessions.size() >= authSessionsLimit) {
+            authenticationSessions.values().stream()
+                    .min(Comparator.comparing(CassandraAuthSessionAdapter::getEntity, TIMESTAMP_COMPARATOR))
+                    .ifPresent(oldest -> {
+                        log.debugf(
+                                "Reached limit (%s) of active authentication sessions per a root authentication session. Removing oldest authentication session with TabId %s.",
+                                authSessionsLimit, oldest.getTabId());
+
+                        // remove the oldest authentication session
+                        authSessionRepository.deleteAuthSession(oldest.getEntity());
+                        oldest.markDeleted();
+                        authenticationSessions.remove(oldest.getTabId());
+                    });
         }
 
         long timestamp = Time.currentTimeMillis();
@@ -167,8 +167,7 @@ public class CassandraRootAuthSessionAdapter implements RootAuthenticationSessio
         authSessionRepository.insertOrUpdate(authSession, rootAuthenticationSession);
         updated = true;
 
-        CassandraAuthSessionAdapter cassandraAuthSessionAdapter =
-                entityToAdapterFunc(realm).apply(authSession);
+        CassandraAuthSessionAdapter cassandraAuthSessionAdapter = toAdapter(authSession);
         session.getContext().setAuthenticationSession(cassandraAuthSessionAdapter);
 
         return cassandraAuthSessionAdapter;
@@ -176,42 +175,34 @@ public class CassandraRootAuthSessionAdapter implements RootAuthenticationSessio
 
     @Override
     public void removeAuthenticationSessionByTabId(String tabId) {
-        List<AuthenticationSession> allAuthSessions =
-                authSessionRepository.findAuthSessionsByParentSessionId(rootAuthenticationSession.getId());
-        AuthenticationSession toDelete = allAuthSessions.stream()
-                .filter(s -> Objects.equals(s.getTabId(), tabId))
-                .findFirst()
-                .orElse(null);
-
-        if (toDelete != null) {
-            authSessionRepository.deleteAuthSession(toDelete);
+        CassandraAuthSessionAdapter toDelete = getSessionModels().remove(tabId);
+        if (toDelete == null) {
+            return;
         }
 
-        CassandraAuthSessionAdapter model = sessionModels.get(tabId);
-        if (model != null) {
-            model.markDeleted();
-        }
-        sessionModels.remove(tabId);
-
-        if (toDelete != null) {
-            if (allAuthSessions.size() == 1) {
-                session.authenticationSessions().removeRootAuthenticationSession(realm, this);
-                deleted = true;
-            } else {
-                long timestamp = Time.currentTimeMillis();
-                rootAuthenticationSession.setTimestamp(timestamp);
-                int authSessionLifespanSeconds = getAuthSessionLifespan(realm);
-                rootAuthenticationSession.setExpiration(
-                        timestamp + TimeAdapter.fromSecondsToMilliseconds(authSessionLifespanSeconds));
-                updated = true;
-            }
+        authSessionRepository.deleteAuthSession(toDelete.getEntity());
+        toDelete.markDeleted();
+
+        if (sessionModels.isEmpty()) {
+            session.authenticationSessions().removeRootAuthenticationSession(realm, this);
+            deleted = true;
+        } else {
+            long timestamp = Time.currentTimeMillis();
+            rootAuthenticationSession.setTimestamp(timestamp);
+            int authSessionLifespanSeconds = getAuthSessionLifespan(realm);
+            rootAuthenticationSession.setExpiration(
+                    timestamp + TimeAdapter.fromSecondsToMilliseconds(authSessionLifespanSeconds));
+            updated = true;
         }
     }
 
     @Override
     public void restartSession(RealmModel realm) {
         authSessionRepository.deleteAuthSessions(rootAuthenticationSession.getId());
-        sessionModels.clear();
+        if (sessionModels != null) {
+            sessionModels.values().forEach(CassandraAuthSessionAdapter::markDeleted);
+        }
+        markNew();
         long timestamp = Time.currentTimeMillis();
         rootAuthenticationSession.setTimestamp(timestamp);
         int authSessionLifespanSeconds = getAuthSessionLifespan(realm);
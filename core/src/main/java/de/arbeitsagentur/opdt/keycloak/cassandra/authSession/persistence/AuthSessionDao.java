@@ -24,42 +24,45 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entitie
 @Dao
 public interface AuthSessionDao extends BaseDao {
     @Update(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(RootAuthenticationSession session, int ttl);
 
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(RootAuthenticationSession session);
 
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(AuthenticationSession session);
 
     @Update(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(AuthenticationSession session, int ttl);
 
+    @QueryProvider(providerClass = AuthSessionUpdateQueryProvider.class, entityHelpers = AuthenticationSession.class)
+    void updateChangedColumns(AuthenticationSession session, int ttl);
+
     @Delete(entityClass = RootAuthenticationSession.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void deleteRootAuthSession(String id);
 
     @Delete
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void delete(RootAuthenticationSession session);
 
     @Delete
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void delete(AuthenticationSession session);
 
     @Delete(entityClass = AuthenticationSession.class, customWhereClause = "parent_session_id = :parentSessionId")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void deleteAuthSessions(String parentSessionId);
 
     @Select(customWhereClause = "parent_session_id = :parentSessionId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     PagingIterable<AuthenticationSession> findByParentSessionId(String parentSessionId);
 
     @Select(customWhereClause = "id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     RootAuthenticationSession findById(String id);
 }
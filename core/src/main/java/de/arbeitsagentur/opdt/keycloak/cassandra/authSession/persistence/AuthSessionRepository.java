@@ -18,6 +18,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entities.AuthenticationSession;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entities.RootAuthenticationSession;
 import java.util.List;
+import org.keycloak.common.util.Time;
 
 public interface AuthSessionRepository {
     void insertOrUpdate(RootAuthenticationSession session);
@@ -35,4 +36,30 @@ public interface AuthSessionRepository {
     List<AuthenticationSession> findAuthSessionsByParentSessionId(String parentSessionId);
 
     RootAuthenticationSession findRootAuthSessionById(String id);
+
+    /**
+     * Tab sessions are written with a TTL reaching beyond the expiration of their root session, so that bumping the
+     * root timestamp doesn't require rewriting all of them. Once the root outlives that headroom, the children
+     * expiration is extended by the remaining lifespan of the root and the tab sessions have to be rewritten.
+     *
+     * @return true if the tab sessions of an existing root have to be rewritten with a new TTL
+     */
+    static boolean extendChildrenExpiration(RootAuthenticationSession root) {
+        Long expiration = root.getExpiration();
+        Long childrenExpiration = root.getChildrenExpiration();
+        if (expiration == null || (childrenExpiration != null && expiration <= childrenExpiration)) {
+            return false;
+        }
+
+        root.setChildrenExpiration(expiration + Math.max(0, expiration - Time.currentTimeMillis()));
+
+        // New root sessions (and those written before children expiration was introduced) don't track it yet
+        return childrenExpiration != null;
+    }
+
+    static long getChildExpiration(RootAuthenticationSession root) {
+        return root.getChildrenExpiration() == null
+                ? root.getExpiration()
+                : Math.max(root.getExpiration(), root.getChildrenExpiration());
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence;
+
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import static de.arbeitsagentur.opdt.keycloak.cassandra.ChangedColumns.*;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.mapper.MapperContext;
+import com.datastax.oss.driver.api.mapper.entity.EntityHelper;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.oss.driver.api.querybuilder.update.Assignment;
+import com.datastax.oss.driver.api.querybuilder.update.Update;
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entities.AuthenticationSession;
+import java.util.*;
+
+/**
+ * Builds an update statement containing only the columns of an {@link AuthenticationSession} which differ from its
+ * persisted state. Notes, execution status and other collections are updated per element, so long authentication flows
+ * don't rewrite (and tombstone) complete maps for every single change.
+ */
+public class AuthSessionUpdateQueryProvider {
+    private final CqlSession session;
+    private final EntityHelper<AuthenticationSession> authSessionHelper;
+
+    public AuthSessionUpdateQueryProvider(
+            MapperContext context, EntityHelper<AuthenticationSession> authSessionHelper) {
+        this.session = context.getSession();
+        this.authSessionHelper = authSessionHelper;
+    }
+
+    public void updateChangedColumns(AuthenticationSession authSession, int ttl) {
+        AuthenticationSession persisted = authSession.getPersistedState();
+        List<Assignment> assignments = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+
+        setIfChanged("timestamp", persisted.getTimestamp(), authSession.getTimestamp(), assignments, values);
+        setIfChanged("user_id", persisted.getUserId(), authSession.getUserId(), assignments, values);
+        setIfChanged("client_id", persisted.getClientId(), authSession.getClientId(), assignments, values);
+        setIfChanged("redirect_uri", persisted.getRedirectUri(), authSession.getRedirectUri(), assignments, values);
+        setIfChanged("action", persisted.getAction(), authSession.getAction(), assignments, values);
+        setIfChanged("protocol", persisted.getProtocol(), authSession.getProtocol(), assignments, values);
+
+        updateSet(
+                "required_actions",
+                persisted.getRequiredActions(),
+                authSession.getRequiredActions(),
+                assignments,
+                values);
+        updateSet("client_scopes", persisted.getClientScopes(), authSession.getClientScopes(), assignments, values);
+
+        updateMap(
+                "execution_status",
+                persisted.getExecutionStatus(),
+                authSession.getExecutionStatus(),
+                assignments,
+                values);
+        updateMap("user_notes", persisted.getUserNotes(), authSession.getUserNotes(), assignments, values);
+        updateMap("auth_notes", persisted.getAuthNotes(), authSession.getAuthNotes(), assignments, values);
+        updateMap("client_notes", persisted.getClientNotes(), authSession.getClientNotes(), assignments, values);
+
+        if (assignments.isEmpty()) {
+            return;
+        }
+
+        Update update = QueryBuilder.update(authSessionHelper.getKeyspaceId(), authSessionHelper.getTableId())
+                .usingTtl(bindMarker())
+                .set(assignments)
+                .whereColumn("parent_session_id")
+                .isEqualTo(bindMarker())
+                .whereColumn("tab_id")
+                .isEqualTo(bindMarker());
+        values.add(0, ttl);
+        values.add(authSession.getParentSessionId());
+        values.add(authSession.getTabId());
+
+        // The driver caches prepared statements, so every distinct combination of changed columns is prepared once
+        PreparedStatement preparedStatement = session.prepare(update.build());
+        session.execute(preparedStatement.bind(values.toArray()).setExecutionProfileName("session-write"));
+    }
+}
@@ -28,29 +28,42 @@ public class CassandraAuthSessionRepository implements AuthSessionRepository {
 
     @Override
     public void insertOrUpdate(RootAuthenticationSession session) {
+        boolean refreshChildren = AuthSessionRepository.extendChildrenExpiration(session);
         if (session.getExpiration() == null) {
             dao.insertOrUpdate(session);
         } else {
-            int ttl = TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
-                    TimeAdapter.fromMilliSecondsToSeconds(session.getExpiration() - Time.currentTimeMillis()));
-            dao.insertOrUpdate(session, ttl);
+            dao.insertOrUpdate(session, ttl(session.getExpiration()));
         }
 
-        // Update TTL
-        findAuthSessionsByParentSessionId(session.getId()).forEach(s -> insertOrUpdate(s, session));
+        // A new TTL has to be written to every cell, so the tab sessions are rewritten completely
+        if (refreshChildren) {
+            findAuthSessionsByParentSessionId(session.getId()).forEach(s -> write(s, session));
+        }
     }
 
     @Override
     public void insertOrUpdate(AuthenticationSession session, RootAuthenticationSession parent) {
+        if (session.getPersistedState() == null || parent.getExpiration() == null) {
+            write(session, parent);
+        } else {
+            dao.updateChangedColumns(session, ttl(AuthSessionRepository.getChildExpiration(parent)));
+        }
+        session.markPersisted();
+    }
+
+    private void write(AuthenticationSession session, RootAuthenticationSession parent) {
         if (parent.getExpiration() == null) {
             dao.insertOrUpdate(session);
         } else {
-            int ttl = TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
-                    TimeAdapter.fromMilliSecondsToSeconds(parent.getExpiration() - Time.currentTimeMillis()));
-            dao.insertOrUpdate(session, ttl);
+            dao.insertOrUpdate(session, ttl(AuthSessionRepository.getChildExpiration(parent)));
         }
     }
 
+    private static int ttl(long expiration) {
+        return TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
+                TimeAdapter.fromMilliSecondsToSeconds(expiration - Time.currentTimeMillis()));
+    }
+
     @Override
     public void deleteRootAuthSession(String sessionId) {
         dao.deleteRootAuthSession(sessionId);
@@ -75,7 +88,10 @@ public class CassandraAuthSessionRepository implements AuthSessionRepository {
 
     @Override
     public List<AuthenticationSession> findAuthSessionsByParentSessionId(String parentSessionId) {
-        return dao.findByParentSessionId(parentSessionId).all();
+        List<AuthenticationSession> authSessions =
+                dao.findByParentSessionId(parentSessionId).all();
+        authSessions.forEach(AuthenticationSession::markPersisted);
+        return authSessions;
     }
 
     @Override
@@ -19,6 +19,8 @@ import com.datastax.oss.driver.api.mapper.annotations.ClusteringColumn;
 import com.datastax.oss.driver.api.mapper.annotations.CqlName;
 import com.datastax.oss.driver.api.mapper.annotations.Entity;
 import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import com.datastax.oss.driver.api.mapper.annotations.Transient;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -66,6 +68,12 @@ public class AuthenticationSession {
     @Builder.Default
     private Map<String, String> clientNotes = new HashMap<>();
 
+    // State as last read from / written to the database, used to determine changed columns on update
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    private AuthenticationSession persistedState;
+
     public Map<String, CommonClientSessionModel.ExecutionStatus> getExecutionStatus() {
         if (executionStatus == null) {
             executionStatus = new HashMap<>();
@@ -107,4 +115,16 @@ public class AuthenticationSession {
         }
         return clientNotes;
     }
+
+    public void markPersisted() {
+        this.persistedState = this.toBuilder()
+                .persistedState(null)
+                .executionStatus(new HashMap<>(getExecutionStatus()))
+                .requiredActions(new HashSet<>(getRequiredActions()))
+                .clientScopes(new HashSet<>(getClientScopes()))
+                .userNotes(new HashMap<>(getUserNotes()))
+                .authNotes(new HashMap<>(getAuthNotes()))
+                .clientNotes(new HashMap<>(getClientNotes()))
+                .build();
+    }
 }
@@ -36,4 +36,7 @@ public class RootAuthenticationSession implements ExpirableEntity {
 
     private Long timestamp;
     private Long expiration;
+
+    // Lower bound of the expiration of all tab sessions, they only need a TTL refresh once the root outlives it
+    private Long childrenExpiration;
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.Value;
+import org.keycloak.common.util.Time;
+
+/**
+ * Node-local cache whose entries expire after a fixed time to live. Used to avoid round trips for data which is read
+ * very frequently and where staleness of a few seconds across nodes is acceptable.
+ *
+ * <p>The cache is split into segments, each of which evicts its least recently used entry when it is full.
+ */
+public class ExpiringCache<K, V> {
+    private static final int GENERATION_STRIPES = 256;
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    // Invalidations per key stripe, lets a load detect a concurrent write of the key it is about to cache
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final long ttlMillis;
+    private final int maxSize;
+
+    @SuppressWarnings("unchecked")
+    public ExpiringCache(long ttlMillis, int maxSize) {
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+
+        // Small caches use fewer segments, so that each segment can hold at least a few entries
+        int segmentCount = Math.max(1, Math.min(SEGMENTS, maxSize / SEGMENTS));
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    public boolean isEnabled() {
+        return ttlMillis > 0 && maxSize > 0;
+    }
+
+    public V get(K key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.get(key);
+            if (entry == null) {
+                return null;
+            }
+
+            if (entry.getExpiresAt() <= Time.currentTimeMillis()) {
+                segment.remove(key);
+                return null;
+            }
+
+            return entry.getValue();
+        }
+    }
+
+    public void put(K key, V value) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.put(key, new Entry<>(value, Time.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Generation of the key, to be read before loading the value which is passed to {@link #put(Object, Object, long)}.
+     */
+    public long generation(K key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Caches the value unless the key was invalidated since the given generation was read.
+     */
+    public void put(K key, V value, long generation) {
+        put(key, value);
+
+        // an invalidation may have raced with the put, it either removed the new entry or is detected here
+        if (generations.get(stripe(key)) != generation) {
+            remove(key);
+        }
+    }
+
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        remove(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    private void remove(K key) {
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    private Segment<K, V> segment(K key) {
+        int hash = key.hashCode();
+        return segments[Math.floorMod(hash ^ (hash >>> 16), segments.length)];
+    }
+
+    private int stripe(K key) {
+        return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+    }
+
+    // Access ordered, so the eldest entry is the least recently used one
+    private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    @Value
+    private static class Entry<V> {
+        V value;
+        long expiresAt;
+    }
+}
@@ -27,6 +27,7 @@ public class KeycloakSessionCache {
     private static final String SESSION_CACHE_ATTRIBUTE = AttributeTypes.INTERNAL_ATTRIBUTE_PREFIX + "sessionCache";
     public static final String USER_CACHE = "userCache";
     public static final String USER_CONSENT_CACHE = "userConsentCache";
+    public static final String USER_CREDENTIAL_CACHE = "userCredentialCache";
     public static final String ROLE_CACHE = "roleCache";
     public static final String GROUP_CACHE = "groupCache";
     public static final String REALM_CACHE = "realmCache";
@@ -15,12 +15,14 @@
  */
 package de.arbeitsagentur.opdt.keycloak.cassandra.cache;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import de.arbeitsagentur.opdt.keycloak.common.ModelIllegalStateException;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.models.KeycloakSession;
@@ -42,6 +44,7 @@ public class L1CacheInterceptor implements InvocationHandler {
 
     private final KeycloakSession session;
     private final Object target;
+    private final CassandraMetrics metrics;
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -49,7 +52,7 @@ public class L1CacheInterceptor implements InvocationHandler {
         L1Cached cacheAnnotation = classMethod.getAnnotation(L1Cached.class);
 
         if (cacheAnnotation == null) {
-            return method.invoke(target, args);
+            return invokeTarget(method, args, isWrite(method));
         }
 
         String cacheName = cacheAnnotation.cacheName();
@@ -68,9 +71,8 @@ public class L1CacheInterceptor implements InvocationHandler {
 
             KeycloakSessionCache.reset(session, cacheName);
 
-            return method.invoke(target, args);
-        } else if (CACHE_INVALIDATION_NAMES.stream()
-                .anyMatch(name -> method.getName().toLowerCase().contains(name))) {
+            return invokeTarget(method, args, true);
+        } else if (isWrite(method)) {
             log.warnf(
                     "Method %s(%s) might need to invalidate cache but isnt annotated with @InvalidateCache",
                     method.getName(),
@@ -86,7 +88,8 @@ public class L1CacheInterceptor implements InvocationHandler {
         long timestamp = System.currentTimeMillis();
 
         if (KeycloakSessionCache.NONE == result) {
-            result = method.invoke(target, args);
+            metrics.recordL1CacheAccess(cacheName, false);
+            result = invokeTarget(method, args, false);
 
             if (log.isTraceEnabled()) {
                 log.tracef(
@@ -95,12 +98,84 @@ public class L1CacheInterceptor implements InvocationHandler {
             }
 
             KeycloakSessionCache.put(session, cacheName, cacheInvocationContext, result);
-        } else if (log.isTraceEnabled()) {
-            log.tracef(
-                    "Cached Result for Call %s - %s",
-                    cacheInvocationContext.getTargetMethod(), (System.currentTimeMillis() - timestamp) + "ms");
+        } else {
+            metrics.recordL1CacheAccess(cacheName, true);
+
+            if (log.isTraceEnabled()) {
+                log.tracef(
+                        "Cached Result for Call %s - %s",
+                        cacheInvocationContext.getTargetMethod(), (System.currentTimeMillis() - timestamp) + "ms");
+            }
         }
 
         return result;
     }
+
+    private static boolean isWrite(Method method) {
+        return CACHE_INVALIDATION_NAMES.stream()
+                .anyMatch(name -> method.getName().toLowerCase().contains(name));
+    }
+
+    private Object invokeTarget(Method method, Object[] args, boolean write) throws Throwable {
+        if (!metrics.isEnabled()) {
+            return invokeUnwrapped(method, args);
+        }
+
+        String entity = getEntityName(method);
+        long start = System.nanoTime();
+        boolean success = false;
+
+        try {
+            Object result = invokeUnwrapped(method, args);
+            success = true;
+
+            if (write) {
+                metrics.recordWriteOperation(entity);
+                return result;
+            }
+
+            return countRowsRead(entity, result);
+        } catch (ModelIllegalStateException e) {
+            metrics.recordVersionConflict(entity);
+            throw e;
+        } finally {
+            metrics.recordRepositoryCall(entity, method.getName(), System.nanoTime() - start, success);
+        }
+    }
+
+    // Callers expect the exceptions of the repository, e.g. to detect conflicting writes, not the reflection wrapper
+    private Object invokeUnwrapped(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object countRowsRead(String entity, Object result) {
+        if (result == null || result instanceof Boolean || result instanceof Number) {
+            return result;
+        }
+
+        if (result instanceof Stream<?> stream) {
+            // Streams are consumed lazily, so rows are counted while they are read
+            return stream.peek(row -> metrics.recordRowsRead(entity, 1));
+        }
+
+        if (result instanceof Collection<?> collection) {
+            metrics.recordRowsRead(entity, collection.size());
+        } else if (result instanceof Map<?, ?> map) {
+            metrics.recordRowsRead(entity, map.size());
+        } else if (!(result instanceof Optional<?> optional) || optional.isPresent()) {
+            metrics.recordRowsRead(entity, 1);
+        }
+
+        return result;
+    }
+
+    // UserSessionRepository#findUserSessionById -> userSession
+    private static String getEntityName(Method method) {
+        String repositoryName = method.getDeclaringClass().getSimpleName().replace("Repository", "");
+        return Character.toLowerCase(repositoryName.charAt(0)) + repositoryName.substring(1);
+    }
 }
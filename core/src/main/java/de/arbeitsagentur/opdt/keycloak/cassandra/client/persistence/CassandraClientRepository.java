@@ -19,6 +19,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.client.CassandraClientAdapter;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.entities.Client;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.entities.ClientSearchIndex;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.WriteMode;
 import java.util.List;
 
 public class CassandraClientRepository extends TransactionalRepository<Client, ClientDao> implements ClientRepository {
@@ -29,6 +30,10 @@ public class CassandraClientRepository extends TransactionalRepository<Client, C
         super(dao);
     }
 
+    public CassandraClientRepository(ClientDao dao, WriteMode writeMode) {
+        super(dao, writeMode);
+    }
+
     @Override
     public void insertOrUpdate(Client entity) {
         if (entity.getAttributes().containsKey(CassandraClientAdapter.CLIENT_ID)) {
@@ -42,6 +47,12 @@ public class CassandraClientRepository extends TransactionalRepository<Client, C
         super.insertOrUpdate(entity);
     }
 
+    @Override
+    protected Long readVersion(Client client) {
+        Client dbClient = dao.getClientById(client.getRealmId(), client.getId());
+        return dbClient == null ? null : dbClient.getVersion();
+    }
+
     @Override
     public void delete(Client client) {
         if (client.getAttributes().containsKey(CassandraClientAdapter.CLIENT_ID)) {
@@ -51,7 +62,7 @@ public class CassandraClientRepository extends TransactionalRepository<Client, C
                     client.getAttribute(CassandraClientAdapter.CLIENT_ID).get(0),
                     client.getId());
         }
-        dao.delete(client);
+        super.delete(client);
     }
 
     @Override
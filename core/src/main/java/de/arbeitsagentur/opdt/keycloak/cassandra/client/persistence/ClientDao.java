@@ -24,11 +24,11 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 @Dao
 public interface ClientDao extends TransactionalDao<Client> {
     @Select(customWhereClause = "realm_id = :realmId AND id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     Client getClientById(String realmId, String id);
 
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<Client> findAllClientsWithRealmId(String realmId);
 
     // Search
@@ -37,7 +37,7 @@ public interface ClientDao extends TransactionalDao<Client> {
     void insertOrUpdate(ClientSearchIndex searchIndex);
 
     @Select(customWhereClause = "realm_id = :realmId AND name = :name AND value = :value")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "lookup-read", idempotence = true)
     ClientSearchIndex findClient(String realmId, String name, String value);
 
     @Delete
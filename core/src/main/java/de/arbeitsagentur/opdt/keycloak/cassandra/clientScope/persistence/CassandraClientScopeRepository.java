@@ -39,4 +39,10 @@ public class CassandraClientScopeRepository extends TransactionalRepository<Clie
     public void removeClientScopes(String realmId) {
         dao.deleteAllClientScopes(realmId);
     }
+
+    @Override
+    protected Long readVersion(ClientScopes clientScopes) {
+        ClientScopes dbClientScopes = dao.getClientScopesByRealmId(clientScopes.getRealmId());
+        return dbClientScopes == null ? null : dbClientScopes.getVersion();
+    }
 }
@@ -22,7 +22,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 @Dao
 public interface ClientScopeDao extends TransactionalDao<ClientScopes> {
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     ClientScopes getClientScopesByRealmId(String realmId);
 
     @Delete(entityClass = ClientScopes.class, ifExists = true)
@@ -15,6 +15,14 @@
  */
 package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
 import org.keycloak.provider.ProviderFactory;
 
-public interface CassandraConnectionProviderFactory<T extends CassandraConnectionProvider> extends ProviderFactory<T> {}
+public interface CassandraConnectionProviderFactory<T extends CassandraConnectionProvider> extends ProviderFactory<T> {
+    /**
+     * Metrics of the extension, {@link CassandraMetrics#NOOP} if they are disabled.
+     */
+    default CassandraMetrics getMetrics() {
+        return CassandraMetrics.NOOP;
+    }
+}
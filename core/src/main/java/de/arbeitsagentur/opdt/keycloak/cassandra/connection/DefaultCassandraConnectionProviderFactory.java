@@ -16,8 +16,13 @@
 package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
 
 import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
 import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
 import com.datastax.oss.driver.api.querybuilder.SchemaBuilder;
 import com.datastax.oss.driver.api.querybuilder.schema.CreateKeyspace;
 import com.datastax.oss.driver.internal.core.type.codec.extras.enums.EnumNameCodec;
@@ -26,57 +31,75 @@ import com.google.auto.service.AutoService;
 import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
 import de.arbeitsagentur.opdt.keycloak.cassandra.CompositeRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.ManagedCompositeCassandraRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.AuthSessionDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.AuthSessionMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.AuthSessionMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.AuthSessionRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.CassandraAuthSessionRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.cache.L1CacheInterceptor;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.CassandraClientRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.ClientDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.ClientMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.ClientMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.ClientRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.CassandraClientScopeRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.ClientScopeDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.ClientScopeMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.ClientScopeMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.ClientScopeRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.entities.ClientScopeValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.CassandraGroupRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.GroupDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.GroupMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.GroupMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.GroupRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.entities.GroupValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.CassandraLoginFailureRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.LoginFailureDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.LoginFailureMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.LoginFailureMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.LoginFailureRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
 import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.CassandraRealmRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.RealmDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.RealmMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.RealmMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.RealmRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.CassandraRoleRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.RoleDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.RoleMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.RoleMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.RoleRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.RoleValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.CassandraSingleUseObjectRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.WriteMode;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.CassandraUserRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.CredentialValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.CassandraUserSessionRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionMapper;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionMapperBuilder;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionRepository;
-import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
 import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import lombok.extern.jbosslog.JBossLog;
 import org.cognitor.cassandra.migration.Database;
@@ -85,6 +108,7 @@ import org.cognitor.cassandra.migration.MigrationRepository;
 import org.cognitor.cassandra.migration.MigrationTask;
 import org.keycloak.Config;
 import org.keycloak.models.GroupModel;
+import org.keycloak.models.KeycloakContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.UserSessionModel;
@@ -97,8 +121,22 @@ public class DefaultCassandraConnectionProviderFactory
         implements CassandraConnectionProviderFactory<CassandraConnectionProvider>,
                 EnvironmentDependentProviderFactory {
     public static final String PROVIDER_ID = "default";
+    private static final List<String> EXECUTION_PROFILES =
+            List.of("read", "write", "session-read", "session-write", "lookup-read", "bulk-scan");
+    private static final List<String> SPECULATIVE_EXECUTION_PROFILES = List.of("read", "session-read", "lookup-read");
+    private static final List<String> SPECULATIVE_EXECUTION_MODES = List.of("none", "constant", "percentile");
+    private static final Map<String, String> REQUEST_THROTTLERS = Map.of(
+            "none", "PassThroughRequestThrottler",
+            "concurrency", "ConcurrencyLimitingRequestThrottler",
+            "rate", "RateLimitingRequestThrottler");
+    private static final List<String> COMPRESSION_ALGORITHMS = List.of("none", "lz4", "snappy");
     private CqlSession cqlSession;
     private CompositeRepository repository;
+    private boolean speculativeExecutionEnabled;
+    private CassandraMetrics metrics = CassandraMetrics.NOOP;
+    private boolean requestBudgetEnabled;
+    private int requestBudgetStatements;
+    private long requestBudgetMillis;
 
     @Override
     public CassandraConnectionProvider create(KeycloakSession session) {
@@ -110,7 +148,7 @@ public class DefaultCassandraConnectionProviderFactory
 
             @Override
             public CompositeRepository getRepository() {
-                L1CacheInterceptor intercepted = new L1CacheInterceptor(session, repository);
+                L1CacheInterceptor intercepted = new L1CacheInterceptor(session, repository, metrics);
                 return (CompositeRepository) Proxy.newProxyInstance(
                         Thread.currentThread().getContextClassLoader(),
                         new Class[] {CompositeRepository.class},
@@ -118,10 +156,50 @@ public class DefaultCassandraConnectionProviderFactory
             }
 
             @Override
-            public void close() {}
+            public void close() {
+                if (requestBudgetEnabled) {
+                    checkRequestBudget(session);
+                }
+            }
         };
     }
 
+    private void checkRequestBudget(KeycloakSession session) {
+        RequestBudget budget = RequestBudget.remove(session);
+        if (budget == null) {
+            return;
+        }
+
+        String endpoint = getEndpoint(session);
+        long cassandraMillis = budget.getCassandraNanos() / 1_000_000L;
+        metrics.recordRequestBudget(endpoint, budget.getStatements(), budget.getCassandraNanos());
+
+        if (budget.getStatements() > requestBudgetStatements || cassandraMillis > requestBudgetMillis) {
+            log.warnf(
+                    "Request %s exceeded Cassandra budget: %d statements, %dms (budget: %d statements, %dms). Top queries: %s",
+                    endpoint,
+                    budget.getStatements(),
+                    cassandraMillis,
+                    requestBudgetStatements,
+                    requestBudgetMillis,
+                    budget.getTopQueryShapes(5));
+        }
+    }
+
+    private static String getEndpoint(KeycloakSession session) {
+        try {
+            KeycloakContext context = session.getContext();
+            if (context == null || context.getHttpRequest() == null || context.getUri() == null) {
+                return RequestEndpoint.NONE;
+            }
+
+            return RequestEndpoint.of(
+                    context.getHttpRequest().getHttpMethod(), context.getUri().getPath());
+        } catch (RuntimeException e) {
+            return RequestEndpoint.NONE;
+        }
+    }
+
     @Override
     public void init(Config.Scope scope) {
         // kc.spi.cassandra-connection.default.contactPoints
@@ -141,34 +219,31 @@ public class DefaultCassandraConnectionProviderFactory
                 .map(cp -> InetSocketAddress.createUnresolved(cp, port))
                 .collect(Collectors.toList());
 
-        if (scope.getBoolean("createKeyspace", true)) {
-            log.info("Create keyspace (if not exists)...");
-            try (CqlSession createKeyspaceSession = CqlSession.builder()
-                    .addContactPoints(contactPointsList)
-                    .withAuthCredentials(username, password)
-                    .withLocalDatacenter(localDatacenter)
-                    .build()) {
-                createKeyspaceIfNotExists(createKeyspaceSession, keyspace, replicationFactor);
-            }
-        } else {
-            log.info("Skipping create keyspace, assuming keyspace already exists...");
+        String speculativeExecution = scope.get("speculativeExecution", "none").toLowerCase();
+        if (!SPECULATIVE_EXECUTION_MODES.contains(speculativeExecution)) {
+            throw new IllegalArgumentException("Unknown speculativeExecution " + speculativeExecution
+                    + ", supported values: " + SPECULATIVE_EXECUTION_MODES);
         }
+        speculativeExecutionEnabled = !speculativeExecution.equals("none");
 
-        if (scope.getBoolean("createSchema", true)) {
-            log.info("Create schema...");
-            ConsistencyLevel migrationConsistencyLevel =
-                    DefaultConsistencyLevel.valueOf(scope.get("migrationConsistencyLevel", "ALL"));
-            createDbIfNotExists(
-                    contactPointsList, username, password, localDatacenter, keyspace, migrationConsistencyLevel);
-        } else {
-            log.info("Skipping schema creation...");
+        if (scope.getBoolean("metricsEnabled", true)) {
+            metrics = CassandraMetrics.load();
+            log.infov("Metrics enabled: {0}", metrics.isEnabled());
+        }
+
+        CqlSessionBuilder sessionBuilder = CqlSession.builder();
+        if (speculativeExecutionEnabled) {
+            log.infov(
+                    "Enable {0} speculative execution for profiles {1}",
+                    speculativeExecution, SPECULATIVE_EXECUTION_PROFILES);
+            sessionBuilder.addRequestTracker(new SpeculativeExecutionTracker());
         }
 
-        cqlSession = CqlSession.builder()
+        cqlSession = sessionBuilder
+                .withConfigLoader(createConfigLoader(scope, speculativeExecution, sessionBuilder))
                 .addContactPoints(contactPointsList)
                 .withAuthCredentials(username, password)
                 .withLocalDatacenter(localDatacenter)
-                .withKeyspace(keyspace)
                 .addTypeCodecs(new EnumNameCodec<>(UserSessionModel.State.class))
                 .addTypeCodecs(new EnumNameCodec<>(GroupModel.Type.class))
                 .addTypeCodecs(new EnumNameCodec<>(UserSessionModel.SessionPersistenceState.class))
@@ -176,34 +251,192 @@ public class DefaultCassandraConnectionProviderFactory
                 .addTypeCodecs(new JsonCodec<>(RoleValue.class, CassandraJsonSerialization.getMapper()))
                 .addTypeCodecs(new JsonCodec<>(GroupValue.class, CassandraJsonSerialization.getMapper()))
                 .addTypeCodecs(new JsonCodec<>(CredentialValue.class, CassandraJsonSerialization.getMapper()))
-                .addTypeCodecs(
-                        new JsonCodec<>(AuthenticatedClientSessionValue.class, CassandraJsonSerialization.getMapper()))
                 .addTypeCodecs(new JsonCodec<>(ClientScopeValue.class, CassandraJsonSerialization.getMapper()))
                 .build();
+        metrics.bindSession(cqlSession);
 
-        repository = createRepository(cqlSession);
+        // Keyspace creation, migrations and runtime share this session instead of each opening their own connections
+        if (scope.getBoolean("createKeyspace", true)) {
+            log.info("Create keyspace (if not exists)...");
+            createKeyspaceIfNotExists(cqlSession, keyspace, replicationFactor);
+        } else {
+            log.info("Skipping create keyspace, assuming keyspace already exists...");
+        }
+
+        if (scope.getBoolean("createSchema", true)) {
+            log.info("Create schema...");
+            ConsistencyLevel migrationConsistencyLevel =
+                    DefaultConsistencyLevel.valueOf(scope.get("migrationConsistencyLevel", "ALL"));
+            createTables(cqlSession, keyspace, migrationConsistencyLevel);
+        } else {
+            log.info("Skipping schema creation...");
+        }
+
+        useKeyspace(cqlSession, keyspace);
+
+        requestBudgetEnabled = scope.getBoolean("requestBudgetEnabled", true);
+        requestBudgetStatements = scope.getInt("requestBudgetStatements", 500);
+        requestBudgetMillis = scope.getLong("requestBudgetMillis", 5000L);
+        if (requestBudgetEnabled) {
+            cqlSession = new RequestBudgetCqlSession(cqlSession);
+        }
+
+        WriteMode userWriteMode = WriteMode.parse(scope.get("userWriteMode", WriteMode.LIGHTWEIGHT_TRANSACTION.name()));
+        WriteMode clientWriteMode =
+                WriteMode.parse(scope.get("clientWriteMode", WriteMode.LIGHTWEIGHT_TRANSACTION.name()));
+        log.infov("Using write mode {0} for users and {1} for clients", userWriteMode, clientWriteMode);
+        long brokerLookupCacheTtlMillis = scope.getLong("brokerLookupCacheTtlMillis", 5000L);
+        boolean userSessionLegacyClientSessionsEnabled =
+                scope.getBoolean("userSessionLegacyClientSessionsEnabled", true);
+
+        boolean prepareStatementsInParallel = scope.getBoolean("prepareStatementsInParallel", true);
+        repository = createRepository(
+                cqlSession,
+                keyspace,
+                userWriteMode,
+                clientWriteMode,
+                brokerLookupCacheTtlMillis,
+                userSessionLegacyClientSessionsEnabled,
+                prepareStatementsInParallel);
+        repository.backfillLoginFailureRealmIndex();
     }
 
-    private void createDbIfNotExists(
-            List<InetSocketAddress> contactPointsList,
-            String username,
-            String password,
-            String localDatacenter,
-            String keyspace,
-            ConsistencyLevel migrationConsistencyLevel) {
-        try (CqlSession createKeyspaceSession = CqlSession.builder()
-                .addContactPoints(contactPointsList)
-                .withAuthCredentials(username, password)
-                .withLocalDatacenter(localDatacenter)
-                .withKeyspace(keyspace)
-                .build()) {
-            createTables(createKeyspaceSession, keyspace, migrationConsistencyLevel);
+    // Execution profiles are defined in reference.conf, single options can be overridden per profile via SPI config,
+    // e.g. kc.spi.cassandra-connection.default.sessionReadConsistency
+    private DriverConfigLoader createConfigLoader(
+            Config.Scope scope, String speculativeExecution, CqlSessionBuilder sessionBuilder) {
+        ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder = DriverConfigLoader.programmaticBuilder();
+        configureConnections(scope, configLoaderBuilder);
+
+        for (String profile : EXECUTION_PROFILES) {
+            String prefix = toCamelCase(profile);
+            String consistency = scope.get(prefix + "Consistency");
+            String serialConsistency = scope.get(prefix + "SerialConsistency");
+            Long timeoutMillis = scope.getLong(prefix + "TimeoutMillis");
+            Integer pageSize = scope.getInt(prefix + "PageSize");
+            boolean speculative = speculativeExecutionEnabled && SPECULATIVE_EXECUTION_PROFILES.contains(profile);
+
+            if (consistency == null
+                    && serialConsistency == null
+                    && timeoutMillis == null
+                    && pageSize == null
+                    && !speculative) {
+                continue;
+            }
+
+            log.debugv("Override execution profile {0} via SPI config", profile);
+            configLoaderBuilder.startProfile(profile);
+            if (consistency != null) {
+                configLoaderBuilder.withString(DefaultDriverOption.REQUEST_CONSISTENCY, consistency);
+            }
+            if (serialConsistency != null) {
+                configLoaderBuilder.withString(DefaultDriverOption.REQUEST_SERIAL_CONSISTENCY, serialConsistency);
+            }
+            if (timeoutMillis != null) {
+                configLoaderBuilder.withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(timeoutMillis));
+            }
+            if (pageSize != null) {
+                configLoaderBuilder.withInt(DefaultDriverOption.REQUEST_PAGE_SIZE, pageSize);
+            }
+            if (speculative) {
+                configLoaderBuilder
+                        .withString(
+                                DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS,
+                                ReadSpeculativeExecutionPolicy.class.getName())
+                        .withInt(
+                                DefaultDriverOption.SPECULATIVE_EXECUTION_MAX,
+                                scope.getInt("speculativeExecutionMaxExecutions", 2))
+                        .withDuration(
+                                DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY,
+                                Duration.ofMillis(scope.getLong("speculativeExecutionDelayMillis", 50L)))
+                        .withDouble(
+                                ReadSpeculativeExecutionPolicy.PERCENTILE,
+                                speculativeExecution.equals("percentile")
+                                        ? Double.parseDouble(scope.get("speculativeExecutionPercentile", "99"))
+                                        : 0);
+            }
+            configLoaderBuilder.endProfile();
+        }
+
+        metrics.configureDriver(sessionBuilder, configLoaderBuilder);
+
+        return configLoaderBuilder.build();
+    }
+
+    // Pooling, throttling and protocol options apply to the whole session, unset options keep the driver defaults
+    private void configureConnections(Config.Scope scope, ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder) {
+        Integer localPoolSize = scope.getInt("poolLocalSize");
+        if (localPoolSize != null) {
+            configLoaderBuilder.withInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE, localPoolSize);
+        }
+        Integer remotePoolSize = scope.getInt("poolRemoteSize");
+        if (remotePoolSize != null) {
+            configLoaderBuilder.withInt(DefaultDriverOption.CONNECTION_POOL_REMOTE_SIZE, remotePoolSize);
+        }
+        Integer maxRequestsPerConnection = scope.getInt("maxRequestsPerConnection");
+        if (maxRequestsPerConnection != null) {
+            configLoaderBuilder.withInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS, maxRequestsPerConnection);
+        }
+
+        String requestThrottler = scope.get("requestThrottler", "none").toLowerCase();
+        if (!REQUEST_THROTTLERS.containsKey(requestThrottler)) {
+            throw new IllegalArgumentException("Unknown requestThrottler " + requestThrottler + ", supported values: "
+                    + REQUEST_THROTTLERS.keySet());
+        }
+        if (!requestThrottler.equals("none")) {
+            log.infov("Enable {0} request throttler", requestThrottler);
+            configLoaderBuilder
+                    .withString(DefaultDriverOption.REQUEST_THROTTLER_CLASS, REQUEST_THROTTLERS.get(requestThrottler))
+                    .withInt(
+                            DefaultDriverOption.REQUEST_THROTTLER_MAX_QUEUE_SIZE,
+                            scope.getInt("requestThrottlerMaxQueueSize", 10000));
+            if (requestThrottler.equals("concurrency")) {
+                configLoaderBuilder.withInt(
+                        DefaultDriverOption.REQUEST_THROTTLER_MAX_CONCURRENT_REQUESTS,
+                        scope.getInt("requestThrottlerMaxConcurrentRequests", 10000));
+            } else {
+                configLoaderBuilder
+                        .withInt(
+                                DefaultDriverOption.REQUEST_THROTTLER_MAX_REQUESTS_PER_SECOND,
+                                scope.getInt("requestThrottlerMaxRequestsPerSecond", 10000))
+                        .withDuration(
+                                DefaultDriverOption.REQUEST_THROTTLER_DRAIN_INTERVAL,
+                                Duration.ofMillis(scope.getLong("requestThrottlerDrainIntervalMillis", 10L)));
+            }
+        }
+
+        // lz4 and snappy require org.lz4:lz4-java or org.xerial.snappy:snappy-java on the classpath
+        String compression = scope.get("compression", "none").toLowerCase();
+        if (!COMPRESSION_ALGORITHMS.contains(compression)) {
+            throw new IllegalArgumentException(
+                    "Unknown compression " + compression + ", supported values: " + COMPRESSION_ALGORITHMS);
+        }
+        configLoaderBuilder.withString(DefaultDriverOption.PROTOCOL_COMPRESSION, compression);
+
+        String protocolVersion = scope.get("protocolVersion");
+        if (protocolVersion != null) {
+            configLoaderBuilder.withString(DefaultDriverOption.PROTOCOL_VERSION, protocolVersion.toUpperCase());
         }
     }
 
+    private static String toCamelCase(String profile) {
+        String[] parts = profile.split("-");
+        StringBuilder camelCase = new StringBuilder(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            camelCase.append(Character.toUpperCase(parts[i].charAt(0))).append(parts[i].substring(1));
+        }
+
+        return camelCase.toString();
+    }
+
     @Override
     public void postInit(KeycloakSessionFactory factory) {}
 
+    @Override
+    public CassandraMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public String getId() {
         return PROVIDER_ID;
@@ -211,11 +444,22 @@ public class DefaultCassandraConnectionProviderFactory
 
     @Override
     public boolean isSupported(Config.Scope config) {
-        return true;
+        // Keycloak initializes all supported factories of an SPI, which would connect to Cassandra even if unused
+        return !InMemoryCassandraConnectionProviderFactory.PROVIDER_ID.equals(
+                Config.getProvider(CassandraConnectionSpi.NAME));
     }
 
     @Override
     public void close() {
+        if (speculativeExecutionEnabled) {
+            SpeculativeExecutionStatistics statistics = SpeculativeExecutionStatistics.forSession(cqlSession.getName());
+            log.infov(
+                    "Speculative executions: {0} sent, {1} of {2} requests answered by a speculative execution",
+                    statistics.getSpeculativeExecutions(),
+                    statistics.getSpeculativeWins(),
+                    statistics.getSpeculativeRequests());
+        }
+
         cqlSession.close();
     }
 
@@ -226,84 +470,150 @@ public class DefaultCassandraConnectionProviderFactory
                         Map.of("replication_factor", replicationFactor)); // special dc-name to activate autodiscovery
 
         cqlSession.execute(createKeyspace.build());
-        cqlSession.close();
     }
 
     private void createTables(CqlSession cqlSession, String keyspace, ConsistencyLevel migrationConsistencyLevel) {
         MigrationConfiguration mgConfig = new MigrationConfiguration().withKeyspaceName(keyspace);
-        Database database = new Database(cqlSession, mgConfig).setConsistencyLevel(migrationConsistencyLevel);
+        // The migration closes its session when done, the shared session has to stay open
+        CqlSession migrationSession = new DelegatingCqlSession(cqlSession) {
+            @Override
+            public CompletionStage<Void> closeAsync() {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public CompletionStage<Void> forceCloseAsync() {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        Database database = new Database(migrationSession, mgConfig).setConsistencyLevel(migrationConsistencyLevel);
         MigrationTask migration = new MigrationTask(database, new MigrationRepository());
         migration.migrate();
     }
 
-    private CompositeRepository createRepository(CqlSession cqlSession) {
+    // DAO statements are qualified with the keyspace, USE only keeps unqualified statements of getCqlSession() users
+    // working. The migration already switched the session unless schema creation is disabled.
+    private static void useKeyspace(CqlSession cqlSession, String keyspace) {
+        CqlIdentifier keyspaceId = CqlIdentifier.fromInternal(keyspace);
+        if (!cqlSession.getKeyspace().map(keyspaceId::equals).orElse(false)) {
+            cqlSession.execute("USE " + keyspaceId.asCql(true));
+        }
+    }
+
+    private CompositeRepository createRepository(
+            CqlSession cqlSession,
+            String keyspace,
+            WriteMode userWriteMode,
+            WriteMode clientWriteMode,
+            long brokerLookupCacheTtlMillis,
+            boolean userSessionLegacyClientSessionsEnabled,
+            boolean prepareStatementsInParallel) {
         UserMapper userMapper = new UserMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        UserRepository userRepository = new CassandraUserRepository(userMapper.userDao());
-
         RoleMapper roleMapper = new RoleMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        RoleRepository roleRepository = new CassandraRoleRepository(roleMapper.roleDao());
-
         GroupMapper groupMapper = new GroupMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        GroupRepository groupRepository = new CassandraGroupRepository(groupMapper.groupDao());
-
         RealmMapper realmMapper = new RealmMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        RealmRepository realmRepository = new CassandraRealmRepository(realmMapper.realmDao());
-
         UserSessionMapper userSessionMapper = new UserSessionMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        UserSessionRepository userSessionRepository =
-                new CassandraUserSessionRepository(userSessionMapper.userSessionDao());
-
         AuthSessionMapper authSessionMapper = new AuthSessionMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        AuthSessionRepository authSessionRepository =
-                new CassandraAuthSessionRepository(authSessionMapper.authSessionDao());
-
         LoginFailureMapper loginFailureMapper = new LoginFailureMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        LoginFailureRepository loginFailureRepository =
-                new CassandraLoginFailureRepository(loginFailureMapper.loginFailureDao());
-
         SingleUseObjectMapper singleUseObjectMapper = new SingleUseObjectMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        SingleUseObjectRepository singleUseObjectRepository =
-                new CassandraSingleUseObjectRepository(singleUseObjectMapper.singleUseObjectDao());
-
         ClientMapper clientMapper = new ClientMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        ClientRepository clientRepository = new CassandraClientRepository(clientMapper.clientDao());
-
         ClientScopeMapper clientScopeMapper = new ClientScopeMapperBuilder(cqlSession)
+                .withDefaultKeyspace(keyspace)
                 .withSchemaValidationEnabled(false)
                 .build();
-        ClientScopeRepository clientScopeRepository =
-                new CassandraClientScopeRepository(clientScopeMapper.clientScopeDao());
-
-        ManagedCompositeCassandraRepository cassandraRepository = new ManagedCompositeCassandraRepository();
-        cassandraRepository.setRoleRepository(roleRepository);
-        cassandraRepository.setGroupRepository(groupRepository);
-        cassandraRepository.setUserRepository(userRepository);
-        cassandraRepository.setRealmRepository(realmRepository);
-        cassandraRepository.setUserSessionRepository(userSessionRepository);
-        cassandraRepository.setAuthSessionRepository(authSessionRepository);
-        cassandraRepository.setLoginFailureRepository(loginFailureRepository);
-        cassandraRepository.setSingleUseObjectRepository(singleUseObjectRepository);
-        cassandraRepository.setClientRepository(clientRepository);
-        cassandraRepository.setClientScopeRepository(clientScopeRepository);
-
-        return cassandraRepository;
+
+        // Creating a DAO prepares all of its statements on all nodes. Doing this upfront (and in parallel) keeps
+        // the prepare round trips out of the first requests after a restart.
+        if (!cqlSession.checkSchemaAgreement()) {
+            log.warn("Cassandra nodes don't agree on the schema, preparing statements might fail on some nodes");
+        }
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = prepareStatementsInParallel
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newSingleThreadExecutor()) {
+            CompletableFuture<UserDao> userDao = initDao("UserDao", userMapper::userDao, executor);
+            CompletableFuture<RoleDao> roleDao = initDao("RoleDao", roleMapper::roleDao, executor);
+            CompletableFuture<GroupDao> groupDao = initDao("GroupDao", groupMapper::groupDao, executor);
+            CompletableFuture<RealmDao> realmDao = initDao("RealmDao", realmMapper::realmDao, executor);
+            CompletableFuture<UserSessionDao> userSessionDao =
+                    initDao("UserSessionDao", userSessionMapper::userSessionDao, executor);
+            CompletableFuture<AuthSessionDao> authSessionDao =
+                    initDao("AuthSessionDao", authSessionMapper::authSessionDao, executor);
+            CompletableFuture<LoginFailureDao> loginFailureDao =
+                    initDao("LoginFailureDao", loginFailureMapper::loginFailureDao, executor);
+            CompletableFuture<SingleUseObjectDao> singleUseObjectDao =
+                    initDao("SingleUseObjectDao", singleUseObjectMapper::singleUseObjectDao, executor);
+            CompletableFuture<ClientDao> clientDao = initDao("ClientDao", clientMapper::clientDao, executor);
+            CompletableFuture<ClientScopeDao> clientScopeDao =
+                    initDao("ClientScopeDao", clientScopeMapper::clientScopeDao, executor);
+
+            UserRepository userRepository =
+                    new CassandraUserRepository(userDao.join(), userWriteMode, brokerLookupCacheTtlMillis);
+            RoleRepository roleRepository = new CassandraRoleRepository(roleDao.join());
+            GroupRepository groupRepository = new CassandraGroupRepository(groupDao.join());
+            RealmRepository realmRepository = new CassandraRealmRepository(realmDao.join());
+            UserSessionRepository userSessionRepository =
+                    new CassandraUserSessionRepository(userSessionDao.join(), userSessionLegacyClientSessionsEnabled);
+            AuthSessionRepository authSessionRepository = new CassandraAuthSessionRepository(authSessionDao.join());
+            LoginFailureRepository loginFailureRepository = new CassandraLoginFailureRepository(loginFailureDao.join());
+            SingleUseObjectRepository singleUseObjectRepository =
+                    new CassandraSingleUseObjectRepository(singleUseObjectDao.join());
+            ClientRepository clientRepository = new CassandraClientRepository(clientDao.join(), clientWriteMode);
+            ClientScopeRepository clientScopeRepository = new CassandraClientScopeRepository(clientScopeDao.join());
+            log.infov("Prepared statements of all DAOs in {0}ms", (System.nanoTime() - start) / 1_000_000L);
+
+            ManagedCompositeCassandraRepository cassandraRepository = new ManagedCompositeCassandraRepository();
+            cassandraRepository.setRoleRepository(roleRepository);
+            cassandraRepository.setGroupRepository(groupRepository);
+            cassandraRepository.setUserRepository(userRepository);
+            cassandraRepository.setRealmRepository(realmRepository);
+            cassandraRepository.setUserSessionRepository(userSessionRepository);
+            cassandraRepository.setAuthSessionRepository(authSessionRepository);
+            cassandraRepository.setLoginFailureRepository(loginFailureRepository);
+            cassandraRepository.setSingleUseObjectRepository(singleUseObjectRepository);
+            cassandraRepository.setClientRepository(clientRepository);
+            cassandraRepository.setClientScopeRepository(clientScopeRepository);
+
+            return cassandraRepository;
+        }
+    }
+
+    private static <T> CompletableFuture<T> initDao(String name, Supplier<T> daoFactory, Executor executor) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    long start = System.nanoTime();
+                    T dao = daoFactory.get();
+                    log.infov("Prepared statements of {0} in {1}ms", name, (System.nanoTime() - start) / 1_000_000L);
+                    return dao;
+                },
+                executor);
     }
 }
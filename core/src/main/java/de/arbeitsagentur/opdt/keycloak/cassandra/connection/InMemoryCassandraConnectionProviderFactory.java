@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.google.auto.service.AutoService;
+import de.arbeitsagentur.opdt.keycloak.cassandra.CompositeRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.ManagedCompositeCassandraRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.L1CacheInterceptor;
+import de.arbeitsagentur.opdt.keycloak.cassandra.inmemory.*;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import java.lang.reflect.Proxy;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.Config;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.EnvironmentDependentProviderFactory;
+
+/**
+ * Keeps all data in the heap of the local node instead of Cassandra. Meant for tests and local development only: data
+ * is neither persisted nor shared between nodes. Only enabled if explicitly selected via
+ * {@code --spi-cassandra-connection-provider=in-memory}.
+ */
+@JBossLog
+@AutoService(CassandraConnectionProviderFactory.class)
+public class InMemoryCassandraConnectionProviderFactory
+        implements CassandraConnectionProviderFactory<CassandraConnectionProvider>,
+                EnvironmentDependentProviderFactory {
+    public static final String PROVIDER_ID = "in-memory";
+    private CompositeRepository repository;
+    private CassandraMetrics metrics = CassandraMetrics.NOOP;
+
+    @Override
+    public CassandraConnectionProvider create(KeycloakSession session) {
+        return new CassandraConnectionProvider() {
+            @Override
+            public CqlSession getCqlSession() {
+                throw new UnsupportedOperationException("The in-memory provider has no Cassandra session");
+            }
+
+            @Override
+            public CompositeRepository getRepository() {
+                L1CacheInterceptor intercepted = new L1CacheInterceptor(session, repository, metrics);
+                return (CompositeRepository) Proxy.newProxyInstance(
+                        Thread.currentThread().getContextClassLoader(),
+                        new Class[] {CompositeRepository.class},
+                        intercepted);
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    @Override
+    public void init(Config.Scope scope) {
+        if (scope.getBoolean("metricsEnabled", true)) {
+            metrics = CassandraMetrics.load();
+        }
+
+        ManagedCompositeCassandraRepository inMemoryRepository = new ManagedCompositeCassandraRepository();
+        inMemoryRepository.setRoleRepository(new InMemoryRoleRepository());
+        inMemoryRepository.setGroupRepository(new InMemoryGroupRepository());
+        inMemoryRepository.setUserRepository(new InMemoryUserRepository());
+        inMemoryRepository.setRealmRepository(new InMemoryRealmRepository());
+        inMemoryRepository.setUserSessionRepository(new InMemoryUserSessionRepository());
+        inMemoryRepository.setAuthSessionRepository(new InMemoryAuthSessionRepository());
+        inMemoryRepository.setLoginFailureRepository(new InMemoryLoginFailureRepository());
+        inMemoryRepository.setSingleUseObjectRepository(new InMemorySingleUseObjectRepository());
+        inMemoryRepository.setClientRepository(new InMemoryClientRepository());
+        inMemoryRepository.setClientScopeRepository(new InMemoryClientScopeRepository());
+
+        this.repository = inMemoryRepository;
+        log.warn("Using in-memory storage. Data is neither persisted nor shared between nodes.");
+    }
+
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {}
+
+    @Override
+    public CassandraMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String getId() {
+        return PROVIDER_ID;
+    }
+
+    @Override
+    public boolean isSupported(Config.Scope config) {
+        return PROVIDER_ID.equals(Config.getProvider(CassandraConnectionSpi.NAME));
+    }
+
+    @Override
+    public void close() {}
+}
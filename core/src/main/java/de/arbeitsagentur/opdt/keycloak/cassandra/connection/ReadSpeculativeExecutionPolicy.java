@@ -0,0 +1,91 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.config.DriverOption;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.specex.SpeculativeExecutionPolicy;
+
+/**
+ * Speculative execution policy for idempotent reads. The next execution is sent after the configured percentile of
+ * recent request latencies of the profile, but not before the configured delay. Without percentile (or until enough
+ * latencies were recorded) the delay is used as constant.
+ *
+ * <pre>
+ * advanced.speculative-execution-policy {
+ *   class = de.arbeitsagentur.opdt.keycloak.cassandra.connection.ReadSpeculativeExecutionPolicy
+ *   max-executions = 2
+ *   delay = 50 milliseconds
+ *   percentile = 99.0
+ * }
+ * </pre>
+ */
+public class ReadSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy {
+    public static final DriverOption PERCENTILE = () -> "advanced.speculative-execution-policy.percentile";
+
+    private final String profileName;
+    private final int maxExecutions;
+    private final long delayMillis;
+    private final double percentile;
+    private final SpeculativeExecutionStatistics statistics;
+
+    public ReadSpeculativeExecutionPolicy(DriverContext context, String profileName) {
+        DriverExecutionProfile config = context.getConfig().getProfile(profileName);
+        this.profileName = profileName;
+        this.maxExecutions = config.getInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX);
+        this.delayMillis = config.getDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY)
+                .toMillis();
+        this.percentile = config.getDouble(PERCENTILE, 0);
+        this.statistics = SpeculativeExecutionStatistics.forSession(context.getSessionName());
+
+        if (maxExecutions < 1) {
+            throw new IllegalArgumentException(
+                    "Speculative max-executions must be at least 1 in profile " + profileName);
+        }
+        if (percentile < 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Speculative percentile must be in [0, 100) in profile " + profileName);
+        }
+    }
+
+    @Override
+    public long nextExecution(Node node, CqlIdentifier keyspace, Request request, int runningExecutions) {
+        // called after each execution was sent, executions after the first one are speculative executions to node
+        if (runningExecutions > 1) {
+            statistics.recordSpeculativeExecution(request, node);
+        }
+
+        if (runningExecutions >= maxExecutions) {
+            return -1;
+        }
+
+        if (percentile > 0) {
+            long percentileMillis = statistics.getLatencyPercentileMillis(profileName, percentile);
+            if (percentileMillis >= 0) {
+                return Math.max(percentileMillis, delayMillis);
+            }
+        }
+
+        return delayMillis;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.session.Request;
+import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * Number of statements and cumulative Cassandra time of a single {@link KeycloakSession}, grouped by query shape.
+ */
+public class RequestBudget {
+    private static final String SESSION_ATTRIBUTE = AttributeTypes.INTERNAL_ATTRIBUTE_PREFIX + "cassandraRequestBudget";
+    private static final int MAX_QUERY_LENGTH = 200;
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private final AtomicLong cassandraNanos = new AtomicLong();
+    private final Map<String, QueryShape> queryShapes = new ConcurrentHashMap<>();
+
+    public static RequestBudget of(KeycloakSession session) {
+        RequestBudget budget = session.getAttribute(SESSION_ATTRIBUTE, RequestBudget.class);
+        if (budget == null) {
+            budget = new RequestBudget();
+            session.setAttribute(SESSION_ATTRIBUTE, budget);
+        }
+
+        return budget;
+    }
+
+    public static RequestBudget remove(KeycloakSession session) {
+        return (RequestBudget) session.removeAttribute(SESSION_ATTRIBUTE);
+    }
+
+    public int getStatements() {
+        return statements.get();
+    }
+
+    public long getCassandraNanos() {
+        return cassandraNanos.get();
+    }
+
+    public List<QueryShape> getTopQueryShapes(int limit) {
+        return queryShapes.values().stream()
+                .sorted(Comparator.comparingLong(QueryShape::getCount).reversed())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    void record(Request request, long nanos) {
+        statements.incrementAndGet();
+        cassandraNanos.addAndGet(nanos);
+        queryShapes.computeIfAbsent(getQuery(request), QueryShape::new).record(nanos);
+    }
+
+    private static String getQuery(Request request) {
+        String query;
+        if (request instanceof BoundStatement boundStatement) {
+            query = boundStatement.getPreparedStatement().getQuery();
+        } else if (request instanceof SimpleStatement simpleStatement) {
+            query = simpleStatement.getQuery();
+        } else if (request instanceof BatchStatement batchStatement) {
+            query = "BATCH of " + batchStatement.size();
+        } else {
+            query = request.getClass().getSimpleName();
+        }
+
+        return query.length() > MAX_QUERY_LENGTH ? query.substring(0, MAX_QUERY_LENGTH) + "..." : query;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class QueryShape {
+        private final String query;
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        void record(long nanos) {
+            executions.increment();
+            this.nanos.add(nanos);
+        }
+
+        public long getCount() {
+            return executions.sum();
+        }
+
+        public long getMillis() {
+            return nanos.sum() / 1_000_000L;
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + "x " + getMillis() + "ms " + query;
+        }
+    }
+}
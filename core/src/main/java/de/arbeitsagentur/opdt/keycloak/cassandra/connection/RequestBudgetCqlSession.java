@@ -0,0 +1,60 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.type.reflect.GenericType;
+import java.util.concurrent.CompletionStage;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.utils.KeycloakSessionUtil;
+
+/**
+ * Accounts every statement to the {@link RequestBudget} of the {@link KeycloakSession} bound to the calling thread.
+ * Driver callbacks (e.g. request trackers) run on I/O threads, so the statement has to be attributed here.
+ */
+public class RequestBudgetCqlSession extends DelegatingCqlSession {
+    public RequestBudgetCqlSession(CqlSession delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public <RequestT extends Request, ResultT> ResultT execute(RequestT request, GenericType<ResultT> resultType) {
+        KeycloakSession session = KeycloakSessionUtil.getKeycloakSession();
+        if (session == null || !(request instanceof Statement)) {
+            return delegate.execute(request, resultType);
+        }
+
+        RequestBudget budget = RequestBudget.of(session);
+        long start = System.nanoTime();
+        ResultT result;
+        try {
+            result = delegate.execute(request, resultType);
+        } catch (RuntimeException e) {
+            budget.record(request, System.nanoTime() - start);
+            throw e;
+        }
+
+        if (result instanceof CompletionStage<?> stage) {
+            stage.whenComplete((r, e) -> budget.record(request, System.nanoTime() - start));
+        } else {
+            budget.record(request, System.nanoTime() - start);
+        }
+
+        return result;
+    }
+}
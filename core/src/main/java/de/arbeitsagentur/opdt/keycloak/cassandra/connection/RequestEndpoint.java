@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps request paths to a fixed set of route templates, e.g. {@code POST /realms/{realm}/protocol/openid-connect/token}.
+ * Path segments like realm names, user ids or client ids never end up in a template, so the templates can be used as
+ * metric tags without unbounded cardinality.
+ */
+public final class RequestEndpoint {
+    public static final String NONE = "none";
+    public static final String OTHER = "other";
+
+    private static final String ANY = "**";
+    private static final Set<String> METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+    private static final List<String> ADMIN_RESOURCES = List.of(
+            "users",
+            "clients",
+            "client-scopes",
+            "groups",
+            "roles",
+            "roles-by-id",
+            "identity-provider",
+            "organizations",
+            "components",
+            "authentication",
+            "attack-detection",
+            "sessions",
+            "events",
+            "admin-events");
+
+    // Checked in order, the first matching template wins. Placeholders match a single segment, ** any remainder.
+    private static final List<String[]> TEMPLATES = createTemplates();
+
+    private RequestEndpoint() {}
+
+    public static String of(String method, String path) {
+        if (method == null || path == null) {
+            return NONE;
+        }
+
+        String normalizedMethod = method.toUpperCase();
+        if (!METHODS.contains(normalizedMethod)) {
+            return OTHER;
+        }
+
+        String[] segments = path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+        for (String[] template : TEMPLATES) {
+            if (matches(template, segments)) {
+                return normalizedMethod + " /" + String.join("/", template);
+            }
+        }
+
+        return normalizedMethod + " " + OTHER;
+    }
+
+    private static boolean matches(String[] template, String[] segments) {
+        for (int i = 0; i < template.length; i++) {
+            if (template[i].equals(ANY)) {
+                return segments.length > i;
+            }
+
+            if (segments.length <= i) {
+                return false;
+            }
+
+            boolean placeholder = template[i].startsWith("{");
+            if (!placeholder && !template[i].equals(segments[i])) {
+                return false;
+            }
+        }
+
+        return template.length == segments.length;
+    }
+
+    private static List<String[]> createTemplates() {
+        List<String> templates = new ArrayList<>();
+
+        for (String endpoint : List.of(
+                "auth",
+                "auth/device",
+                "token",
+                "token/introspect",
+                "userinfo",
+                "logout",
+                "certs",
+                "revoke",
+                "login-status-iframe.html",
+                "ext/par/request",
+                "ext/ciba/auth")) {
+            templates.add("realms/{realm}/protocol/openid-connect/" + endpoint);
+        }
+        templates.add("realms/{realm}/protocol/openid-connect/**");
+        templates.add("realms/{realm}/protocol/saml");
+        templates.add("realms/{realm}/protocol/saml/**");
+
+        for (String action : List.of(
+                "authenticate",
+                "required-action",
+                "registration",
+                "reset-credentials",
+                "action-token",
+                "first-broker-login",
+                "post-broker-login",
+                "consent",
+                "restart")) {
+            templates.add("realms/{realm}/login-actions/" + action);
+        }
+        templates.add("realms/{realm}/login-actions/**");
+
+        templates.add("realms/{realm}/broker/{alias}/endpoint");
+        templates.add("realms/{realm}/broker/{alias}/login");
+        templates.add("realms/{realm}/broker/**");
+        templates.add("realms/{realm}/.well-known/**");
+        templates.add("realms/{realm}/account");
+        templates.add("realms/{realm}/account/**");
+        templates.add("realms/{realm}");
+        templates.add("realms/{realm}/**");
+
+        for (String resource : ADMIN_RESOURCES) {
+            templates.add("admin/realms/{realm}/" + resource);
+            templates.add("admin/realms/{realm}/" + resource + "/{id}");
+            templates.add("admin/realms/{realm}/" + resource + "/{id}/**");
+        }
+        templates.add("admin/realms/{realm}");
+        templates.add("admin/realms/{realm}/**");
+        templates.add("admin/realms");
+        templates.add("admin/**");
+
+        return templates.stream().map(template -> template.split("/")).toList();
+    }
+}
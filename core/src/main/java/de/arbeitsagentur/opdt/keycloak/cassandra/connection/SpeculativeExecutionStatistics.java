@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.session.Request;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and speculative execution counters of a single {@link com.datastax.oss.driver.api.core.CqlSession}, shared
+ * between {@link ReadSpeculativeExecutionPolicy} (instantiated by the driver) and {@link SpeculativeExecutionTracker}.
+ */
+public class SpeculativeExecutionStatistics {
+    private static final Map<String, SpeculativeExecutionStatistics> SESSIONS = new ConcurrentHashMap<>();
+    private static final int MAX_TRACKED_REQUESTS = 10_000;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    // Node of the first speculative execution per running request. Only requests for which a speculative execution was
+    // actually sent are tracked, so the common path of reads answered in time doesn't touch the map.
+    private final Map<Request, Node> speculativeNodes = new ConcurrentHashMap<>();
+    private final LongAdder speculativeExecutions = new LongAdder();
+    private final LongAdder speculativeRequests = new LongAdder();
+    private final LongAdder speculativeWins = new LongAdder();
+
+    public static SpeculativeExecutionStatistics forSession(String sessionName) {
+        return SESSIONS.computeIfAbsent(sessionName, name -> new SpeculativeExecutionStatistics());
+    }
+
+    static void remove(String sessionName) {
+        SESSIONS.remove(sessionName);
+    }
+
+    /**
+     * Number of speculative executions which were actually sent.
+     */
+    public long getSpeculativeExecutions() {
+        return speculativeExecutions.sum();
+    }
+
+    /**
+     * Number of completed requests for which a speculative execution was sent.
+     */
+    public long getSpeculativeRequests() {
+        return speculativeRequests.sum();
+    }
+
+    /**
+     * Number of requests which were answered by the node of their speculative execution. Retries of the driver are not
+     * speculative executions and never count as win.
+     */
+    public long getSpeculativeWins() {
+        return speculativeWins.sum();
+    }
+
+    long getLatencyPercentileMillis(String profileName, double percentile) {
+        LatencyWindow window = latencies.get(profileName);
+        return window == null ? -1 : window.getPercentileMillis(percentile);
+    }
+
+    void recordSpeculativeExecution(Request request, Node node) {
+        speculativeExecutions.increment();
+        if (speculativeNodes.size() < MAX_TRACKED_REQUESTS) {
+            speculativeNodes.putIfAbsent(request, node);
+        }
+    }
+
+    void recordSuccess(Request request, String profileName, Node node, long latencyNanos) {
+        latencies.computeIfAbsent(profileName, name -> new LatencyWindow()).add(latencyNanos);
+        recordCompletion(request, node);
+    }
+
+    void recordCompletion(Request request, Node node) {
+        if (speculativeNodes.isEmpty()) {
+            return;
+        }
+
+        Node speculativeNode = speculativeNodes.remove(request);
+        if (speculativeNode != null) {
+            speculativeRequests.increment();
+            if (speculativeNode.equals(node)) {
+                speculativeWins.increment();
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of the most recent latencies. Percentiles are recalculated at most every 100ms.
+     */
+    private static class LatencyWindow {
+        private static final int SIZE = 1024;
+        private static final int MIN_SAMPLES = 100;
+        private static final long RECALCULATION_INTERVAL_NANOS = 100_000_000L;
+
+        private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private volatile long calculatedAt;
+        private volatile double calculatedPercentile;
+        private volatile long calculatedValueMillis = -1;
+
+        void add(long latencyNanos) {
+            samples.set((int) (count.getAndIncrement() % SIZE), latencyNanos);
+        }
+
+        long getPercentileMillis(double percentile) {
+            long sampleCount = Math.min(count.get(), SIZE);
+            if (sampleCount < MIN_SAMPLES) {
+                return -1;
+            }
+
+            long now = System.nanoTime();
+            if (percentile != calculatedPercentile || now - calculatedAt > RECALCULATION_INTERVAL_NANOS) {
+                long[] sorted = new long[(int) sampleCount];
+                for (int i = 0; i < sorted.length; i++) {
+                    sorted[i] = samples.get(i);
+                }
+                Arrays.sort(sorted);
+
+                int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+                calculatedValueMillis = sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000L;
+                calculatedPercentile = percentile;
+                calculatedAt = now;
+            }
+
+            return calculatedValueMillis;
+        }
+    }
+}
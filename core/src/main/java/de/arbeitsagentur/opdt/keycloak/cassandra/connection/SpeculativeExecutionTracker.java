@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.session.Session;
+import com.datastax.oss.driver.api.core.tracker.RequestTracker;
+
+/**
+ * Feeds request latencies and outcomes into the {@link SpeculativeExecutionStatistics} of the session.
+ */
+public class SpeculativeExecutionTracker implements RequestTracker {
+    private volatile SpeculativeExecutionStatistics statistics;
+    private volatile String sessionName;
+
+    @Override
+    public void onSessionReady(Session session) {
+        sessionName = session.getName();
+        statistics = SpeculativeExecutionStatistics.forSession(sessionName);
+    }
+
+    @Override
+    public void onSuccess(
+            Request request,
+            long latencyNanos,
+            DriverExecutionProfile executionProfile,
+            Node node,
+            String requestLogPrefix) {
+        if (statistics != null) {
+            statistics.recordSuccess(request, executionProfile.getName(), node, latencyNanos);
+        }
+    }
+
+    @Override
+    public void onError(
+            Request request,
+            Throwable error,
+            long latencyNanos,
+            DriverExecutionProfile executionProfile,
+            Node node,
+            String requestLogPrefix) {
+        if (statistics != null) {
+            statistics.recordCompletion(request, null);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (sessionName != null) {
+            SpeculativeExecutionStatistics.remove(sessionName);
+        }
+    }
+}
@@ -22,4 +22,10 @@ public class CassandraGroupRepository extends TransactionalRepository<Groups, Gr
     public void deleteRealmGroups(String realmId) {
         dao.deleteAllRealmGroups(realmId);
     }
+
+    @Override
+    protected Long readVersion(Groups groups) {
+        Groups dbGroups = dao.getGroupsByRealmId(groups.getRealmId());
+        return dbGroups == null ? null : dbGroups.getVersion();
+    }
 }
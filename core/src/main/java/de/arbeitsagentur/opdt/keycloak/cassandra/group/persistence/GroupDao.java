@@ -7,7 +7,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 @Dao
 public interface GroupDao extends TransactionalDao<Groups> {
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     Groups getGroupsByRealmId(String realmId);
 
     @Delete(entityClass = Groups.class, ifExists = true)
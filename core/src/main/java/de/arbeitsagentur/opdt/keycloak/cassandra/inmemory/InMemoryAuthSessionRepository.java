@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.AuthSessionRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entities.AuthenticationSession;
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.persistence.entities.RootAuthenticationSession;
+import java.util.List;
+
+public class InMemoryAuthSessionRepository implements AuthSessionRepository {
+    private final InMemoryTable<RootAuthenticationSession> rootSessions =
+            new InMemoryTable<>(RootAuthenticationSession.class);
+    private final InMemoryTable<AuthenticationSession> authSessions = new InMemoryTable<>(AuthenticationSession.class);
+
+    @Override
+    public void insertOrUpdate(RootAuthenticationSession session) {
+        boolean refreshChildren = AuthSessionRepository.extendChildrenExpiration(session);
+        rootSessions.put(
+                session.getId(),
+                InMemoryTable.NO_CLUSTERING_KEY,
+                session,
+                InMemoryTable.ttlUntil(session.getExpiration()));
+
+        if (refreshChildren) {
+            findAuthSessionsByParentSessionId(session.getId()).forEach(s -> insertOrUpdate(s, session));
+        }
+    }
+
+    @Override
+    public void insertOrUpdate(AuthenticationSession session, RootAuthenticationSession parent) {
+        authSessions.put(
+                session.getParentSessionId(),
+                session.getTabId(),
+                session,
+                InMemoryTable.ttlUntil(
+                        parent.getExpiration() == null ? null : AuthSessionRepository.getChildExpiration(parent)));
+    }
+
+    @Override
+    public void deleteRootAuthSession(String sessionId) {
+        rootSessions.remove(sessionId);
+        deleteAuthSessions(sessionId);
+    }
+
+    @Override
+    public void deleteRootAuthSession(RootAuthenticationSession session) {
+        deleteRootAuthSession(session.getId());
+    }
+
+    @Override
+    public void deleteAuthSession(AuthenticationSession session) {
+        authSessions.remove(session.getParentSessionId(), session.getTabId());
+    }
+
+    @Override
+    public void deleteAuthSessions(String parentSessionId) {
+        authSessions.removePartition(parentSessionId);
+    }
+
+    @Override
+    public List<AuthenticationSession> findAuthSessionsByParentSessionId(String parentSessionId) {
+        return authSessions.getPartition(parentSessionId);
+    }
+
+    @Override
+    public RootAuthenticationSession findRootAuthSessionById(String id) {
+        return rootSessions.get(id);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.CassandraClientAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.ClientRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.entities.Client;
+import java.util.List;
+
+public class InMemoryClientRepository extends InMemoryTransactionalRepository<Client> implements ClientRepository {
+    // realmId, clientId -> id
+    private final InMemoryTable<String> clientIdIndex = new InMemoryTable<>(String.class);
+
+    public InMemoryClientRepository() {
+        super(Client.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(Client client) {
+        return client.getRealmId();
+    }
+
+    @Override
+    protected String getClusteringKey(Client client) {
+        return client.getId();
+    }
+
+    @Override
+    public void insertOrUpdate(Client client) {
+        if (client.getAttributes().containsKey(CassandraClientAdapter.CLIENT_ID)) {
+            String clientId =
+                    client.getAttribute(CassandraClientAdapter.CLIENT_ID).get(0);
+            clientIdIndex.put(List.of(client.getRealmId(), clientId), client.getId(), client.getId());
+        }
+
+        super.insertOrUpdate(client);
+    }
+
+    @Override
+    public void delete(Client client) {
+        if (client.getAttributes().containsKey(CassandraClientAdapter.CLIENT_ID)) {
+            String clientId =
+                    client.getAttribute(CassandraClientAdapter.CLIENT_ID).get(0);
+            clientIdIndex.remove(List.of(client.getRealmId(), clientId), client.getId());
+        }
+
+        super.delete(client);
+    }
+
+    @Override
+    public Client getClientById(String realmId, String id) {
+        return table.get(realmId, id);
+    }
+
+    @Override
+    public Client findByClientId(String realmId, String clientId) {
+        List<String> ids = clientIdIndex.getPartition(List.of(realmId, clientId));
+        if (ids.isEmpty()) {
+            return null;
+        }
+
+        return getClientById(realmId, ids.get(0));
+    }
+
+    @Override
+    public long countClientsByRealm(String realmId) {
+        return table.getPartition(realmId).size();
+    }
+
+    @Override
+    public List<Client> findAllClientsWithRealmId(String realmId) {
+        return table.getPartition(realmId);
+    }
+}
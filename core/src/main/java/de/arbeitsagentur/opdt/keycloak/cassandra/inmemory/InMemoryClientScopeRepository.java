@@ -0,0 +1,46 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.ClientScopeRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.clientScope.persistence.entities.ClientScopes;
+
+public class InMemoryClientScopeRepository extends InMemoryTransactionalRepository<ClientScopes>
+        implements ClientScopeRepository {
+    public InMemoryClientScopeRepository() {
+        super(ClientScopes.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(ClientScopes entity) {
+        return entity.getRealmId();
+    }
+
+    @Override
+    public ClientScopes getClientScopesByRealmId(String realmId) {
+        ClientScopes entity = table.get(realmId);
+        if (entity == null) {
+            entity = ClientScopes.builder().realmId(realmId).build();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public void removeClientScopes(String realmId) {
+        table.remove(realmId);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.GroupRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.group.persistence.entities.Groups;
+
+public class InMemoryGroupRepository extends InMemoryTransactionalRepository<Groups> implements GroupRepository {
+    public InMemoryGroupRepository() {
+        super(Groups.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(Groups entity) {
+        return entity.getRealmId();
+    }
+
+    @Override
+    public Groups getGroupsByRealmId(String realmId) {
+        Groups entity = table.get(realmId);
+        if (entity == null) {
+            entity = Groups.builder().realmId(realmId).build();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public void deleteRealmGroups(String realmId) {
+        table.remove(realmId);
+    }
+}
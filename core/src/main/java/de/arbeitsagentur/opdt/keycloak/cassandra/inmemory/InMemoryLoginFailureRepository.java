@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.LoginFailureRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities.LoginFailure;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class InMemoryLoginFailureRepository implements LoginFailureRepository {
+    private final InMemoryTable<LoginFailure> table = new InMemoryTable<>(LoginFailure.class);
+
+    @Override
+    public void insertOrUpdate(LoginFailure loginFailure) {
+        table.put(loginFailure.getUserId(), loginFailure.getId(), loginFailure);
+    }
+
+    @Override
+    public LoginFailure insertIfNotExists(LoginFailure loginFailure) {
+        return table.putIfAbsentOrGet(loginFailure.getUserId(), loginFailure.getId(), loginFailure);
+    }
+
+    @Override
+    public void updateFailureDetails(LoginFailure loginFailure) {
+        table.update(loginFailure.getUserId(), loginFailure.getId(), current -> {
+            current.setFailedLoginNotBefore(loginFailure.getFailedLoginNotBefore());
+            current.setLastFailure(loginFailure.getLastFailure());
+            current.setLastIpFailure(loginFailure.getLastIpFailure());
+            return current;
+        });
+    }
+
+    @Override
+    public int incrementNumFailures(LoginFailure loginFailure) {
+        return increment(loginFailure, LoginFailure::getNumFailures, LoginFailure::setNumFailures);
+    }
+
+    @Override
+    public int incrementNumTemporaryLockouts(LoginFailure loginFailure) {
+        return increment(loginFailure, LoginFailure::getNumTemporaryLockouts, LoginFailure::setNumTemporaryLockouts);
+    }
+
+    @Override
+    public void clearFailures(LoginFailure loginFailure) {
+        table.update(loginFailure.getUserId(), loginFailure.getId(), current -> {
+            current.setFailedLoginNotBefore(null);
+            current.setNumFailures(null);
+            current.setLastFailure(null);
+            current.setLastIpFailure(null);
+            return current;
+        });
+    }
+
+    @Override
+    public List<LoginFailure> findLoginFailuresByUserId(String userId) {
+        return table.getPartition(userId);
+    }
+
+    @Override
+    public void deleteLoginFailure(LoginFailure loginFailure) {
+        table.remove(loginFailure.getUserId(), loginFailure.getId());
+    }
+
+    @Override
+    public void deleteLoginFailureByUserId(String realmId, String userId) {
+        table.removePartition(userId);
+    }
+
+    @Override
+    public void deleteLoginFailuresByRealmId(String realmId) {
+        table.getAll()
+                .filter(loginFailure -> realmId.equals(loginFailure.getRealmId()))
+                .forEach(this::deleteLoginFailure);
+    }
+
+    @Override
+    public List<LoginFailure> findAllLoginFailures() {
+        return table.getAll().collect(Collectors.toList());
+    }
+
+    private int increment(
+            LoginFailure loginFailure,
+            Function<LoginFailure, Integer> getter,
+            BiConsumer<LoginFailure, Integer> setter) {
+        LoginFailure updated = table.update(loginFailure.getUserId(), loginFailure.getId(), current -> {
+            Integer value = getter.apply(current);
+            setter.accept(current, value == null ? 1 : value + 1);
+            return current;
+        });
+
+        if (updated == null) {
+            // removed in the meantime, like the conditional update in Cassandra the row isn't recreated
+            Integer value = getter.apply(loginFailure);
+            return value == null ? 1 : value + 1;
+        }
+
+        return getter.apply(updated);
+    }
+
+    @Override
+    public void backfillLoginFailureRealmIndex() {
+        // There are no login failures written by older versions in memory
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.RealmRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.entities.ClientInitialAccess;
+import de.arbeitsagentur.opdt.keycloak.cassandra.realm.persistence.entities.Realm;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class InMemoryRealmRepository extends InMemoryTransactionalRepository<Realm> implements RealmRepository {
+    // name -> id
+    private final InMemoryTable<String> nameToRealm = new InMemoryTable<>(String.class);
+    private final InMemoryTable<ClientInitialAccess> clientInitialAccesses =
+            new InMemoryTable<>(ClientInitialAccess.class);
+
+    public InMemoryRealmRepository() {
+        super(Realm.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(Realm realm) {
+        return realm.getId();
+    }
+
+    @Override
+    public void insertOrUpdate(Realm realm) {
+        super.insertOrUpdate(realm);
+        nameToRealm.put(realm.getName(), realm.getId());
+    }
+
+    @Override
+    public Realm getRealmById(String id) {
+        return table.get(id);
+    }
+
+    @Override
+    public List<Realm> getAllRealms() {
+        return table.getAll().collect(Collectors.toList());
+    }
+
+    @Override
+    public void createRealm(Realm realm) {
+        realm.setVersion(1L);
+        table.putIfAbsent(realm.getId(), InMemoryTable.NO_CLUSTERING_KEY, realm);
+        nameToRealm.put(realm.getName(), realm.getId());
+    }
+
+    @Override
+    public void deleteRealm(Realm realm) {
+        delete(realm);
+        clientInitialAccesses.removePartition(realm.getId());
+        nameToRealm.remove(realm.getName());
+    }
+
+    @Override
+    public Realm findRealmByName(String name) {
+        String id = nameToRealm.get(name);
+        if (id == null) {
+            return null;
+        }
+
+        return getRealmById(id);
+    }
+
+    @Override
+    public void deleteNameToRealm(String name) {
+        nameToRealm.remove(name);
+    }
+
+    // ClientInitialAccessModel
+    @Override
+    public void insertOrUpdate(ClientInitialAccess model) {
+        clientInitialAccesses.put(
+                model.getRealmId(), model.getId(), model, InMemoryTable.ttlUntil(model.getExpiration()));
+    }
+
+    @Override
+    public List<ClientInitialAccess> getAllClientInitialAccessesByRealmId(String realmId) {
+        return clientInitialAccesses.getPartition(realmId);
+    }
+
+    @Override
+    public List<ClientInitialAccess> getAllClientInitialAccesses() {
+        return clientInitialAccesses.getAll().collect(Collectors.toList());
+    }
+
+    @Override
+    public ClientInitialAccess getClientInitialAccess(String realmId, String id) {
+        return clientInitialAccesses.get(realmId, id);
+    }
+
+    @Override
+    public void deleteClientInitialAccess(ClientInitialAccess access) {
+        clientInitialAccesses.remove(access.getRealmId(), access.getId());
+    }
+
+    @Override
+    public void deleteClientInitialAccess(String realmId, String id) {
+        clientInitialAccesses.remove(realmId, id);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.RoleRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.role.persistence.entities.Roles;
+
+public class InMemoryRoleRepository extends InMemoryTransactionalRepository<Roles> implements RoleRepository {
+    public InMemoryRoleRepository() {
+        super(Roles.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(Roles entity) {
+        return entity.getRealmId();
+    }
+
+    @Override
+    public Roles getRolesByRealmId(String realmId) {
+        Roles entity = table.get(realmId);
+        if (entity == null) {
+            entity = Roles.builder().realmId(realmId).build();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public void deleteRealmRoles(String realmId) {
+        table.remove(realmId);
+    }
+}
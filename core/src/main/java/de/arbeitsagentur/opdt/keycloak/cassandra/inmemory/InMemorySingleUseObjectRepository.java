@@ -0,0 +1,48 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.entities.SingleUseObject;
+
+public class InMemorySingleUseObjectRepository implements SingleUseObjectRepository {
+    private final InMemoryTable<SingleUseObject> table = new InMemoryTable<>(SingleUseObject.class);
+
+    @Override
+    public SingleUseObject findSingleUseObjectByKey(String key) {
+        return table.get(key);
+    }
+
+    @Override
+    public void insertOrUpdate(SingleUseObject singleUseObject, int ttl) {
+        table.put(singleUseObject.getKey(), InMemoryTable.NO_CLUSTERING_KEY, singleUseObject, ttl);
+    }
+
+    @Override
+    public void insertOrUpdate(SingleUseObject singleUseObject) {
+        table.put(singleUseObject.getKey(), singleUseObject);
+    }
+
+    @Override
+    public boolean insertIfNotExists(SingleUseObject singleUseObject, int ttl) {
+        return table.putIfAbsent(singleUseObject.getKey(), InMemoryTable.NO_CLUSTERING_KEY, singleUseObject, ttl);
+    }
+
+    @Override
+    public boolean deleteSingleUseObjectByKey(String key) {
+        return table.remove(key);
+    }
+}
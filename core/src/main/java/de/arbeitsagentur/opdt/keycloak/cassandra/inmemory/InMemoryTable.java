@@ -0,0 +1,297 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
+import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Value;
+import org.keycloak.common.util.Time;
+
+/**
+ * Emulates a Cassandra table: rows are grouped by partition key, ordered by clustering key and expire like rows
+ * written with a TTL. Rows are copied on write and on read, so callers never share state with the table, just like
+ * entities read from Cassandra. Like Cassandra, rows expire by wall clock time, independent of Keycloak's time offset.
+ */
+public class InMemoryTable<T> {
+    public static final String NO_CLUSTERING_KEY = "";
+
+    private static final ObjectMapper MAPPER =
+            CassandraJsonSerialization.getMapper().copy().registerModule(new JavaTimeModule());
+    private static final int PURGE_INTERVAL_WRITES = 10_000;
+
+    private final Class<T> type;
+    private final Map<Object, ConcurrentSkipListMap<String, Row<T>>> partitions = new ConcurrentHashMap<>();
+    private final AtomicLong writes = new AtomicLong();
+
+    public InMemoryTable(Class<T> type) {
+        this.type = type;
+    }
+
+    public T get(Object partitionKey) {
+        return get(partitionKey, NO_CLUSTERING_KEY);
+    }
+
+    public T get(Object partitionKey, String clusteringKey) {
+        Map<String, Row<T>> partition = partitions.get(partitionKey);
+        if (partition == null) {
+            return null;
+        }
+
+        Row<T> row = partition.get(clusteringKey);
+        return row == null || row.isExpired(System.currentTimeMillis()) ? null : copy(row.getValue());
+    }
+
+    /**
+     * @return all rows of the partition ordered by clustering key
+     */
+    public List<T> getPartition(Object partitionKey) {
+        Map<String, Row<T>> partition = partitions.get(partitionKey);
+        if (partition == null) {
+            return new ArrayList<>();
+        }
+
+        long now = System.currentTimeMillis();
+        return partition.values().stream()
+                .filter(row -> !row.isExpired(now))
+                .map(row -> copy(row.getValue()))
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /**
+     * Full table scan, use for the same (rare) operations which would scan the table in Cassandra.
+     */
+    public Stream<T> getAll() {
+        long now = System.currentTimeMillis();
+        return partitions.values().stream()
+                .flatMap(partition -> partition.values().stream())
+                .filter(row -> !row.isExpired(now))
+                .map(row -> copy(row.getValue()));
+    }
+
+    public void put(Object partitionKey, T value) {
+        put(partitionKey, NO_CLUSTERING_KEY, value, 0);
+    }
+
+    public void put(Object partitionKey, String clusteringKey, T value) {
+        put(partitionKey, clusteringKey, value, 0);
+    }
+
+    /**
+     * @param ttl time to live in seconds, 0 means the row doesn't expire
+     */
+    public void put(Object partitionKey, String clusteringKey, T value, int ttl) {
+        Row<T> row = new Row<>(copy(value), expiresAt(ttl));
+        partitions.compute(partitionKey, (key, partition) -> {
+            ConcurrentSkipListMap<String, Row<T>> result =
+                    partition == null ? new ConcurrentSkipListMap<>() : partition;
+            result.put(clusteringKey, row);
+            return result;
+        });
+        afterWrite();
+    }
+
+    /**
+     * Equivalent of {@code INSERT ... IF NOT EXISTS}.
+     *
+     * @return true if the row was inserted
+     */
+    public boolean putIfAbsent(Object partitionKey, String clusteringKey, T value) {
+        return putIfAbsent(partitionKey, clusteringKey, value, 0);
+    }
+
+    /**
+     * Equivalent of {@code INSERT ... IF NOT EXISTS USING TTL}.
+     *
+     * @param ttl time to live in seconds, 0 means the row doesn't expire
+     * @return true if the row was inserted
+     */
+    public boolean putIfAbsent(Object partitionKey, String clusteringKey, T value, int ttl) {
+        return putIf(partitionKey, clusteringKey, value, ttl, current -> current == null);
+    }
+
+    /**
+     * Equivalent of {@code INSERT ... IF NOT EXISTS} returning the existing row like a rejected LWT does, checked and
+     * written atomically.
+     *
+     * @return null if the row was inserted, the existing row otherwise
+     */
+    public T putIfAbsentOrGet(Object partitionKey, String clusteringKey, T value) {
+        Row<T> row = new Row<>(copy(value), 0);
+        List<T> existing = new ArrayList<>(1);
+        partitions.compute(partitionKey, (key, partition) -> {
+            ConcurrentSkipListMap<String, Row<T>> result =
+                    partition == null ? new ConcurrentSkipListMap<>() : partition;
+            Row<T> current = result.get(clusteringKey);
+            if (current == null || current.isExpired(System.currentTimeMillis())) {
+                result.put(clusteringKey, row);
+            } else {
+                existing.add(copy(current.getValue()));
+            }
+
+            return result;
+        });
+        afterWrite();
+
+        return existing.isEmpty() ? null : existing.get(0);
+    }
+
+    /**
+     * Equivalent of a conditional {@code UPDATE ... IF}: the row is written only if the condition holds for the
+     * current row (null if it doesn't exist), checked and written atomically.
+     *
+     * @return true if the row was written
+     */
+    public boolean putIf(Object partitionKey, String clusteringKey, T value, Predicate<T> condition) {
+        return putIf(partitionKey, clusteringKey, value, 0, condition);
+    }
+
+    private boolean putIf(Object partitionKey, String clusteringKey, T value, int ttl, Predicate<T> condition) {
+        Row<T> row = new Row<>(copy(value), expiresAt(ttl));
+        boolean[] applied = new boolean[1];
+        partitions.compute(partitionKey, (key, partition) -> {
+            ConcurrentSkipListMap<String, Row<T>> result =
+                    partition == null ? new ConcurrentSkipListMap<>() : partition;
+            Row<T> current = result.get(clusteringKey);
+            T currentValue =
+                    current == null || current.isExpired(System.currentTimeMillis()) ? null : current.getValue();
+
+            if (condition.test(currentValue)) {
+                result.put(clusteringKey, row);
+                applied[0] = true;
+            }
+
+            return result.isEmpty() ? null : result;
+        });
+        afterWrite();
+
+        return applied[0];
+    }
+
+    /**
+     * Equivalent of an {@code UPDATE ... IF EXISTS} computing the new row from the current one: the update is applied
+     * atomically and keeps the time to live of the row.
+     *
+     * @return the updated row, null if the row doesn't exist
+     */
+    public T update(Object partitionKey, String clusteringKey, UnaryOperator<T> update) {
+        List<T> updated = new ArrayList<>(1);
+        partitions.computeIfPresent(partitionKey, (key, partition) -> {
+            Row<T> current = partition.get(clusteringKey);
+            if (current != null && !current.isExpired(System.currentTimeMillis())) {
+                T value = copy(update.apply(copy(current.getValue())));
+                partition.put(clusteringKey, new Row<>(value, current.getExpiresAt()));
+                updated.add(copy(value));
+            }
+
+            return partition;
+        });
+        afterWrite();
+
+        return updated.isEmpty() ? null : updated.get(0);
+    }
+
+    public boolean remove(Object partitionKey) {
+        return remove(partitionKey, NO_CLUSTERING_KEY);
+    }
+
+    /**
+     * @return true if a row which wasn't expired yet has been removed
+     */
+    public boolean remove(Object partitionKey, String clusteringKey) {
+        boolean[] removed = new boolean[1];
+        partitions.computeIfPresent(partitionKey, (key, partition) -> {
+            Row<T> row = partition.remove(clusteringKey);
+            removed[0] = row != null && !row.isExpired(System.currentTimeMillis());
+            return partition.isEmpty() ? null : partition;
+        });
+
+        return removed[0];
+    }
+
+    public void removePartition(Object partitionKey) {
+        partitions.remove(partitionKey);
+    }
+
+    public void clear() {
+        partitions.clear();
+    }
+
+    /**
+     * TTL in seconds for rows expiring at the given time, computed the same way as by the Cassandra repositories.
+     *
+     * @param expiration expiration in milliseconds or null if the row doesn't expire
+     */
+    public static int ttlUntil(Long expiration) {
+        if (expiration == null) {
+            return 0;
+        }
+
+        return TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
+                TimeAdapter.fromMilliSecondsToSeconds(expiration - Time.currentTimeMillis()));
+    }
+
+    private T copy(T value) {
+        if (value == null || value instanceof String) {
+            return value;
+        }
+
+        return MAPPER.convertValue(value, type);
+    }
+
+    private static long expiresAt(int ttl) {
+        if (ttl < 0) {
+            // Cassandra rejects negative TTLs as well
+            throw new IllegalArgumentException("TTL must not be negative: " + ttl);
+        }
+
+        return ttl == 0 ? 0 : System.currentTimeMillis() + ttl * 1000L;
+    }
+
+    // Expired rows which are never read again would otherwise stay forever
+    private void afterWrite() {
+        if (writes.incrementAndGet() % PURGE_INTERVAL_WRITES == 0) {
+            long now = System.currentTimeMillis();
+            partitions
+                    .keySet()
+                    .forEach(partitionKey -> partitions.computeIfPresent(partitionKey, (key, partition) -> {
+                        partition.values().removeIf(row -> row.isExpired(now));
+                        return partition.isEmpty() ? null : partition;
+                    }));
+        }
+    }
+
+    @Value
+    private static class Row<T> {
+        T value;
+        long expiresAt;
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && expiresAt <= now;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalEntity;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalRepository;
+
+/**
+ * Optimistic locking as done by {@link TransactionalRepository} with lightweight transactions: new entities are
+ * inserted if they don't exist yet, updates are only applied if the stored version still matches.
+ */
+public abstract class InMemoryTransactionalRepository<TEntity extends TransactionalEntity> {
+    protected final InMemoryTable<TEntity> table;
+
+    protected InMemoryTransactionalRepository(Class<TEntity> type) {
+        this.table = new InMemoryTable<>(type);
+    }
+
+    protected abstract Object getPartitionKey(TEntity entity);
+
+    protected String getClusteringKey(TEntity entity) {
+        return InMemoryTable.NO_CLUSTERING_KEY;
+    }
+
+    public void insertOrUpdate(TEntity entity) {
+        Object partitionKey = getPartitionKey(entity);
+        String clusteringKey = getClusteringKey(entity);
+
+        if (entity.getVersion() == null) {
+            entity.setVersion(1L);
+            if (!table.putIfAbsent(partitionKey, clusteringKey, entity)) {
+                throw TransactionalRepository.alreadyExists();
+            }
+        } else {
+            Long currentVersion = entity.getVersion();
+            entity.incrementVersion();
+
+            boolean applied = table.putIf(
+                    partitionKey,
+                    clusteringKey,
+                    entity,
+                    stored -> stored != null && currentVersion.equals(stored.getVersion()));
+
+            if (!applied) {
+                TEntity stored = table.get(partitionKey, clusteringKey);
+                throw TransactionalRepository.versionMismatch(
+                        currentVersion, stored == null ? null : stored.getVersion());
+            }
+        }
+    }
+
+    protected void delete(TEntity entity) {
+        table.remove(getPartitionKey(entity), getClusteringKey(entity));
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
+import de.arbeitsagentur.opdt.keycloak.cassandra.StreamExtensions;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.jbosslog.JBossLog;
+
+@JBossLog
+public class InMemoryUserRepository extends InMemoryTransactionalRepository<User> implements UserRepository {
+    private static final String USERNAME = "username";
+    private static final String USERNAME_CASE_INSENSITIVE = "usernameCaseInsensitive";
+    private static final String EMAIL = "email";
+    private static final String SERVICE_ACCOUNT_LINK = "serviceAccountLink";
+    private static final String FEDERATION_LINK = "federationLink";
+
+    // realmId, index name, value -> userId
+    private final InMemoryTable<String> searchIndex = new InMemoryTable<>(String.class);
+    private final InMemoryTable<RealmToUserMapping> realmToUser = new InMemoryTable<>(RealmToUserMapping.class);
+    private final InMemoryTable<FederatedIdentity> federatedIdentities = new InMemoryTable<>(FederatedIdentity.class);
+    private final InMemoryTable<FederatedIdentityToUserMapping> federatedIdentityToUser =
+            new InMemoryTable<>(FederatedIdentityToUserMapping.class);
+    private final InMemoryTable<UserConsent> consents = new InMemoryTable<>(UserConsent.class);
+    private final InMemoryTable<UserCredential> credentials = new InMemoryTable<>(UserCredential.class);
+
+    public InMemoryUserRepository() {
+        super(User.class);
+    }
+
+    @Override
+    protected Object getPartitionKey(User user) {
+        return List.of(user.getRealmId(), user.getId());
+    }
+
+    @Override
+    public Stream<User> findAllUsers() {
+        return table.getAll();
+    }
+
+    @Override
+    public User findUserById(String realmId, String id) {
+        return table.get(List.of(realmId, id));
+    }
+
+    @Override
+    public User findUserByEmail(String realmId, String email) {
+        return findUniqueUser(realmId, EMAIL, email);
+    }
+
+    @Override
+    public User findUserByUsername(String realmId, String username) {
+        return findUniqueUser(realmId, USERNAME, username);
+    }
+
+    @Override
+    public User findUserByUsernameCaseInsensitive(String realmId, String username) {
+        return findUniqueUser(realmId, USERNAME_CASE_INSENSITIVE, username);
+    }
+
+    @Override
+    public User findUserByServiceAccountLink(String realmId, String serviceAccountLink) {
+        if (serviceAccountLink == null) {
+            return null;
+        }
+
+        return findUserIds(realmId, SERVICE_ACCOUNT_LINK, serviceAccountLink).stream()
+                .findFirst()
+                .map(userId -> findUserById(realmId, userId))
+                .orElse(null);
+    }
+
+    @Override
+    public Stream<User> findUsersByFederationLink(String realmId, String federationLink) {
+        if (federationLink == null) {
+            return null;
+        }
+
+        return findUsers(realmId, FEDERATION_LINK, federationLink);
+    }
+
+    @Override
+    public Stream<User> findUsersByIndexedAttribute(String realmId, String attributeName, String attributeValue) {
+        if (attributeName == null
+                || attributeValue == null
+                || !attributeName.startsWith(AttributeTypes.INDEXED_ATTRIBUTE_PREFIX)) {
+            return Stream.empty();
+        }
+
+        return findUsers(realmId, attributeName, attributeValue);
+    }
+
+    @Override
+    public void deleteUsernameSearchIndex(String realmId, User user) {
+        deleteIndex(realmId, USERNAME, user.getUsername(), user.getId());
+        deleteIndex(realmId, USERNAME_CASE_INSENSITIVE, user.getUsernameCaseInsensitive(), user.getId());
+    }
+
+    @Override
+    public void deleteEmailSearchIndex(String realmId, User user) {
+        deleteIndex(realmId, EMAIL, user.getEmail(), user.getId());
+    }
+
+    @Override
+    public void deleteFederationLinkSearchIndex(String realmId, User user) {
+        deleteIndex(realmId, FEDERATION_LINK, user.getFederationLink(), user.getId());
+    }
+
+    @Override
+    public void deleteServiceAccountLinkSearchIndex(String realmId, User user) {
+        deleteIndex(realmId, SERVICE_ACCOUNT_LINK, user.getServiceAccountClientLink(), user.getId());
+    }
+
+    @Override
+    public void deleteAttributeSearchIndex(String realmId, User user, String attrName) {
+        if (attrName != null && attrName.startsWith(AttributeTypes.INDEXED_ATTRIBUTE_PREFIX)) {
+            user.getAttribute(attrName).forEach(value -> deleteIndex(realmId, attrName, value, user.getId()));
+        }
+    }
+
+    @Override
+    public void insertOrUpdate(User user) {
+        User previous = user.getPersistedState();
+        super.insertOrUpdate(user);
+        user.markPersisted();
+
+        if (previous == null || previous.isServiceAccount() != user.isServiceAccount()) {
+            insertRealmToUserMapping(user);
+        }
+
+        updateIndex(user, USERNAME, previous == null ? null : previous.getUsername(), user.getUsername());
+        updateIndex(
+                user,
+                USERNAME_CASE_INSENSITIVE,
+                previous == null ? null : previous.getUsernameCaseInsensitive(),
+                user.getUsernameCaseInsensitive());
+        updateIndex(user, EMAIL, previous == null ? null : previous.getEmail(), user.getEmail());
+        updateIndex(
+                user,
+                SERVICE_ACCOUNT_LINK,
+                previous == null ? null : previous.getServiceAccountClientLink(),
+                user.getServiceAccountClientLink());
+        updateIndex(
+                user,
+                FEDERATION_LINK,
+                previous == null ? null : previous.getFederationLink(),
+                user.getFederationLink());
+
+        Map<String, List<String>> previousIndexedAttributes =
+                previous == null ? Map.of() : previous.getIndexedAttributes();
+        Map<String, List<String>> indexedAttributes = user.getIndexedAttributes();
+
+        for (Map.Entry<String, List<String>> entry : previousIndexedAttributes.entrySet()) {
+            List<String> currentValues = indexedAttributes.getOrDefault(entry.getKey(), List.of());
+            entry.getValue().stream()
+                    .filter(value -> !currentValues.contains(value))
+                    .forEach(value -> deleteIndex(user.getRealmId(), entry.getKey(), value, user.getId()));
+        }
+
+        for (Map.Entry<String, List<String>> entry : indexedAttributes.entrySet()) {
+            List<String> previousValues = previousIndexedAttributes.getOrDefault(entry.getKey(), List.of());
+            entry.getValue().stream()
+                    .filter(value -> !previousValues.contains(value))
+                    .forEach(value -> insertIndex(user.getRealmId(), entry.getKey(), value, user.getId()));
+        }
+    }
+
+    @Override
+    public boolean deleteUser(String realmId, String userId) {
+        User user = findUserById(realmId, userId);
+
+        if (user == null) {
+            return false;
+        }
+
+        delete(user);
+        realmToUser.remove(realmId, getRealmToUserClusteringKey(user.isServiceAccount(), userId));
+        credentials.removePartition(List.of(realmId, userId));
+
+        deleteUsernameSearchIndex(realmId, user);
+        deleteEmailSearchIndex(realmId, user);
+        deleteServiceAccountLinkSearchIndex(realmId, user);
+        deleteFederationLinkSearchIndex(realmId, user);
+
+        for (Map.Entry<String, List<String>> entry : user.getIndexedAttributes().entrySet()) {
+            entry.getValue().forEach(value -> deleteIndex(realmId, entry.getKey(), value, userId));
+        }
+
+        return true;
+    }
+
+    @Override
+    public void makeUserServiceAccount(User user, String realmId) {
+        user.setServiceAccount(true);
+        super.insertOrUpdate(user);
+        user.markPersisted();
+
+        realmToUser.remove(realmId, getRealmToUserClusteringKey(false, user.getId()));
+        insertRealmToUserMapping(user);
+        insertIndex(realmId, SERVICE_ACCOUNT_LINK, user.getServiceAccountClientLink(), user.getId());
+    }
+
+    @Override
+    public FederatedIdentity findFederatedIdentity(String userId, String identityProvider) {
+        return federatedIdentities.get(userId, identityProvider);
+    }
+
+    @Override
+    public FederatedIdentity findFederatedIdentityByBrokerUserId(String brokerUserId, String identityProvider) {
+        FederatedIdentityToUserMapping mapping = federatedIdentityToUser.get(List.of(brokerUserId, identityProvider));
+        return mapping == null ? null : mapping.toFederatedIdentity();
+    }
+
+    @Override
+    public List<FederatedIdentity> findFederatedIdentities(String userId) {
+        return federatedIdentities.getPartition(userId);
+    }
+
+    @Override
+    public void createOrUpdateFederatedIdentity(FederatedIdentity federatedIdentity) {
+        federatedIdentities.put(
+                federatedIdentity.getUserId(), federatedIdentity.getIdentityProvider(), federatedIdentity);
+        federatedIdentityToUser.put(
+                List.of(federatedIdentity.getBrokerUserId(), federatedIdentity.getIdentityProvider()),
+                FederatedIdentityToUserMapping.fromFederatedIdentity(federatedIdentity));
+    }
+
+    @Override
+    public boolean deleteFederatedIdentity(String userId, String identityProvider) {
+        FederatedIdentity federatedIdentity = findFederatedIdentity(userId, identityProvider);
+
+        if (federatedIdentity == null) {
+            return false;
+        }
+
+        federatedIdentities.remove(userId, identityProvider);
+        federatedIdentityToUser.remove(List.of(federatedIdentity.getBrokerUserId(), identityProvider));
+        return true;
+    }
+
+    @Override
+    public boolean deleteFederatedIdentitiesByUserId(String userId) {
+        findFederatedIdentities(userId)
+                .forEach(identity -> federatedIdentityToUser.remove(
+                        List.of(identity.getBrokerUserId(), identity.getIdentityProvider())));
+        federatedIdentities.removePartition(userId);
+
+        return true;
+    }
+
+    @Override
+    public Set<String> findUserIdsByRealmId(String realmId, int first, int max) {
+        return StreamExtensions.paginated(realmToUser.getPartition(realmId), first, max)
+                .map(RealmToUserMapping::getUserId)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public long countUsersByRealmId(String realmId, boolean includeServiceAccounts) {
+        return realmToUser.getPartition(realmId).stream()
+                .filter(mapping -> includeServiceAccounts || !mapping.isServiceAccount())
+                .count();
+    }
+
+    @Override
+    public void createOrUpdateUserConsent(UserConsent consent) {
+        consents.put(List.of(consent.getRealmId(), consent.getUserId()), consent.getClientId(), consent);
+    }
+
+    // Unconditional deletes are always applied in Cassandra
+    @Override
+    public boolean deleteUserConsent(String realmId, String userId, String clientId) {
+        consents.remove(List.of(realmId, userId), clientId);
+        return true;
+    }
+
+    @Override
+    public boolean deleteUserConsentsByUserId(String realmId, String userId) {
+        consents.removePartition(List.of(realmId, userId));
+        return true;
+    }
+
+    @Override
+    public UserConsent findUserConsent(String realmId, String userId, String clientId) {
+        return consents.get(List.of(realmId, userId), clientId);
+    }
+
+    @Override
+    public List<UserConsent> findUserConsentsByUserId(String realmId, String userId) {
+        return consents.getPartition(List.of(realmId, userId));
+    }
+
+    @Override
+    public List<UserConsent> findUserConsentsByRealmId(String realmId) {
+        return consents.getAll()
+                .filter(consent -> realmId.equals(consent.getRealmId()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<UserCredential> findCredentials(String realmId, String userId) {
+        return credentials.getPartition(List.of(realmId, userId));
+    }
+
+    @Override
+    public List<UserCredential> migrateLegacyCredentials(User user) {
+        // There is no legacy storage in memory
+        user.setCredentialsMigrated(true);
+        return new ArrayList<>();
+    }
+
+    @Override
+    public void createOrUpdateCredential(UserCredential credential) {
+        credentials.put(List.of(credential.getRealmId(), credential.getUserId()), credential.getId(), credential);
+    }
+
+    @Override
+    public boolean deleteCredential(String realmId, String userId, String credentialId) {
+        credentials.remove(List.of(realmId, userId), credentialId);
+        return true;
+    }
+
+    private User findUniqueUser(String realmId, String indexName, String value) {
+        if (value == null) {
+            return null;
+        }
+
+        List<User> users = findUsers(realmId, indexName, value).collect(Collectors.toList());
+
+        if (users.size() > 1) {
+            log.warnf("Found multiple users with %s: %s", indexName, value);
+            return null;
+        }
+
+        return users.isEmpty() ? null : users.getFirst();
+    }
+
+    private Stream<User> findUsers(String realmId, String indexName, String value) {
+        return findUserIds(realmId, indexName, value).stream()
+                .map(userId -> findUserById(realmId, userId))
+                .filter(Objects::nonNull);
+    }
+
+    private List<String> findUserIds(String realmId, String indexName, String value) {
+        return searchIndex.getPartition(List.of(realmId, indexName, value));
+    }
+
+    private void updateIndex(User user, String indexName, String previousValue, String value) {
+        if (value != null && !Objects.equals(previousValue, value)) {
+            insertIndex(user.getRealmId(), indexName, value, user.getId());
+        }
+    }
+
+    private void insertIndex(String realmId, String indexName, String value, String userId) {
+        if (value != null) {
+            searchIndex.put(List.of(realmId, indexName, value), userId, userId);
+        }
+    }
+
+    private void deleteIndex(String realmId, String indexName, String value, String userId) {
+        if (value != null) {
+            searchIndex.remove(List.of(realmId, indexName, value), userId);
+        }
+    }
+
+    private void insertRealmToUserMapping(User user) {
+        realmToUser.put(
+                user.getRealmId(),
+                getRealmToUserClusteringKey(user.isServiceAccount(), user.getId()),
+                new RealmToUserMapping(user.getRealmId(), user.isServiceAccount(), user.getId()));
+    }
+
+    // Same order as the clustering columns (service_account, user_id)
+    private static String getRealmToUserClusteringKey(boolean serviceAccount, String userId) {
+        return (serviceAccount ? "1:" : "0:") + userId;
+    }
+}
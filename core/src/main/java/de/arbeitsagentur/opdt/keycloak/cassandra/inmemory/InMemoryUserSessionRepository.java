@@ -0,0 +1,295 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.inmemory;
+
+import static org.keycloak.models.UserSessionModel.CORRESPONDING_SESSION_ID;
+import static org.keycloak.models.UserSessionModel.SessionPersistenceState.PERSISTENT;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.StreamExtensions;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSessionToAttributeMapping;
+import java.util.*;
+import java.util.stream.Collectors;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.common.util.MultivaluedHashMap;
+import org.keycloak.models.RealmModel;
+
+@JBossLog
+public class InMemoryUserSessionRepository implements UserSessionRepository {
+    private static final String CLIENT_IDS = "clientIds";
+    private static final String USER_ID = "userId";
+    private static final String BROKER_USER_ID = "brokerUserId";
+    private static final String BROKER_SESSION_ID = "brokerSessionId";
+
+    private final InMemoryTable<UserSession> sessions = new InMemoryTable<>(UserSession.class);
+    private final InMemoryTable<AuthenticatedClientSessionValue> clientSessions =
+            new InMemoryTable<>(AuthenticatedClientSessionValue.class);
+    private final InMemoryTable<UserSessionToAttributeMapping> attributes =
+            new InMemoryTable<>(UserSessionToAttributeMapping.class);
+    // attributeName, attributeValue -> userSessionId
+    private final InMemoryTable<String> attributeToSession = new InMemoryTable<>(String.class);
+
+    @Override
+    public void insert(RealmModel realm, UserSession session) {
+        insertOrUpdate(session);
+
+        // all these attributes cannot be changed afterwards so they are only set during "insert"
+        if (session.getNotes().containsKey(CORRESPONDING_SESSION_ID)) {
+            insertOrUpdate(
+                    realm,
+                    session,
+                    new UserSessionToAttributeMapping(
+                            session.getId(),
+                            CORRESPONDING_SESSION_ID,
+                            List.of(session.getNotes().get(CORRESPONDING_SESSION_ID))));
+        }
+
+        if (session.getUserId() != null) {
+            insertOrUpdate(
+                    realm,
+                    session,
+                    new UserSessionToAttributeMapping(session.getId(), USER_ID, List.of(session.getUserId())));
+        }
+
+        if (session.getBrokerUserId() != null) {
+            insertOrUpdate(
+                    realm,
+                    session,
+                    new UserSessionToAttributeMapping(
+                            session.getId(), BROKER_USER_ID, List.of(session.getBrokerUserId())));
+        }
+
+        if (session.getBrokerSessionId() != null) {
+            insertOrUpdate(
+                    realm,
+                    session,
+                    new UserSessionToAttributeMapping(
+                            session.getId(), BROKER_SESSION_ID, List.of(session.getBrokerSessionId())));
+        }
+    }
+
+    @Override
+    public void update(UserSession session) {
+        insertOrUpdate(session);
+    }
+
+    @Override
+    public void addClientSession(RealmModel realm, UserSession session, AuthenticatedClientSessionValue clientSession) {
+        boolean newClient = !session.getClientSessions().containsKey(clientSession.getClientId());
+        clientSession.setUserSessionId(session.getId());
+        session.getClientSessions().put(clientSession.getClientId(), clientSession);
+
+        if (isPersistent(session)) {
+            insertOrUpdate(clientSession);
+        }
+
+        if (newClient) {
+            int ttl = InMemoryTable.ttlUntil(session.getExpiration());
+            UserSessionToAttributeMapping clientIds = attributes.get(session.getId(), CLIENT_IDS);
+            if (clientIds == null) {
+                clientIds = new UserSessionToAttributeMapping(session.getId(), CLIENT_IDS, new ArrayList<>());
+            }
+
+            clientIds.getAttributeValues().add(clientSession.getClientId());
+            attributes.put(session.getId(), CLIENT_IDS, clientIds, ttl);
+            attributeToSession.put(
+                    List.of(CLIENT_IDS, clientSession.getClientId()), session.getId(), session.getId(), ttl);
+        }
+    }
+
+    @Override
+    public void updateClientSession(UserSession session, AuthenticatedClientSessionValue clientSession) {
+        if (isPersistent(session)) {
+            clientSession.setUserSessionId(session.getId());
+            insertOrUpdate(clientSession);
+        }
+    }
+
+    @Override
+    public void removeClientSession(UserSession session, String clientId) {
+        clientSessions.remove(session.getId(), clientId);
+    }
+
+    @Override
+    public UserSession findUserSessionById(String id) {
+        return withClientSessions(sessions.get(id));
+    }
+
+    @Override
+    public List<UserSession> findAll() {
+        return sessions.getAll().map(this::withClientSessions).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<UserSession> findUserSessionsByBrokerSession(String brokerSessionId) {
+        return findUserSessionsByAttribute(BROKER_SESSION_ID, brokerSessionId);
+    }
+
+    @Override
+    public List<UserSession> findUserSessionsByUserId(String userId) {
+        return findUserSessionsByAttribute(USER_ID, userId);
+    }
+
+    @Override
+    public List<UserSession> findUserSessionsByClientId(String clientId) {
+        return findUserSessionsByAttribute(CLIENT_IDS, clientId);
+    }
+
+    @Override
+    public List<UserSession> findUserSessionsByBrokerUserId(String brokerUserId) {
+        return findUserSessionsByAttribute(BROKER_USER_ID, brokerUserId);
+    }
+
+    @Override
+    public void deleteUserSession(UserSession session) {
+        if (session == null) {
+            return;
+        }
+
+        sessions.remove(session.getId());
+        clientSessions.removePartition(session.getId());
+
+        // The corresponding session id is kept to enable cross-session lookups even after deletion
+        for (UserSessionToAttributeMapping attribute : attributes.getPartition(session.getId())) {
+            if (!attribute.getAttributeName().equals(CORRESPONDING_SESSION_ID)) {
+                attribute
+                        .getAttributeValues()
+                        .forEach(value -> attributeToSession.remove(
+                                List.of(attribute.getAttributeName(), value), session.getId()));
+                attributes.remove(session.getId(), attribute.getAttributeName());
+            }
+        }
+    }
+
+    @Override
+    public void deleteUserSession(String id) {
+        deleteUserSession(findUserSessionById(id));
+    }
+
+    @Override
+    public void deleteCorrespondingUserSession(UserSession session) {
+        if (!session.getNotes().containsKey(CORRESPONDING_SESSION_ID)) {
+            return;
+        }
+
+        deleteUserSession(session.getNotes().get(CORRESPONDING_SESSION_ID));
+    }
+
+    // Attributes
+    @Override
+    public Set<String> findUserSessionIdsByAttribute(String name, String value, int firstResult, int maxResult) {
+        return StreamExtensions.paginated(attributeToSession.getPartition(List.of(name, value)), firstResult, maxResult)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<UserSession> findUserSessionsByAttribute(String name, String value) {
+        return attributeToSession.getPartition(List.of(name, value)).stream()
+                .map(sessions::get)
+                .filter(Objects::nonNull)
+                .map(this::withClientSessions)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public UserSession findFirstUserSessionByAttribute(String name, String value) {
+        List<UserSession> userSessions = findUserSessionsByAttribute(name, value);
+
+        if (userSessions.size() > 1) {
+            log.warnf(
+                    "Found more than one userSession with attributeName '%s' and value '%s'. Using newest one.",
+                    name, value);
+        } else if (userSessions.isEmpty()) {
+            return null;
+        }
+
+        return userSessions.stream()
+                .max(Comparator.comparing(UserSession::getTimestamp))
+                .orElse(null);
+    }
+
+    @Override
+    public MultivaluedHashMap<String, String> findAllUserSessionAttributes(String userSessionId) {
+        MultivaluedHashMap<String, String> result = new MultivaluedHashMap<>();
+        attributes
+                .getPartition(userSessionId)
+                .forEach(mapping -> result.addAll(mapping.getAttributeName(), mapping.getAttributeValues()));
+
+        return result;
+    }
+
+    @Override
+    public UserSessionToAttributeMapping findUserSessionAttribute(String userSessionId, String attributeName) {
+        return attributes.get(userSessionId, attributeName);
+    }
+
+    private UserSession withClientSessions(UserSession session) {
+        if (session != null) {
+            clientSessions.getPartition(session.getId()).forEach(clientSession -> session.getClientSessions()
+                    .put(clientSession.getClientId(), clientSession));
+        }
+
+        return session;
+    }
+
+    private boolean isPersistent(UserSession session) {
+        return Boolean.TRUE.equals(session.getOffline()) || PERSISTENT.equals(session.getPersistenceState());
+    }
+
+    private void insertOrUpdate(UserSession session) {
+        if (isPersistent(session)) {
+            // client sessions are stored separately, like in Cassandra
+            sessions.put(
+                    session.getId(),
+                    InMemoryTable.NO_CLUSTERING_KEY,
+                    session.toBuilder().clientSessions(new HashMap<>()).build(),
+                    InMemoryTable.ttlUntil(session.getExpiration()));
+        }
+    }
+
+    private void insertOrUpdate(AuthenticatedClientSessionValue clientSession) {
+        int ttl = clientSession.getExpiration() == null
+                ? 0
+                : Math.max(1, InMemoryTable.ttlUntil(clientSession.getExpiration()));
+        clientSessions.put(clientSession.getUserSessionId(), clientSession.getClientId(), clientSession, ttl);
+    }
+
+    private void insertOrUpdate(RealmModel realm, UserSession session, UserSessionToAttributeMapping mapping) {
+        int ttl = mapping.getAttributeName().equals(CORRESPONDING_SESSION_ID)
+                ? realm.getOfflineSessionMaxLifespan() * 2 // Housekeeping
+                : InMemoryTable.ttlUntil(session.getExpiration());
+
+        UserSessionToAttributeMapping oldAttribute =
+                attributes.get(mapping.getUserSessionId(), mapping.getAttributeName());
+        attributes.put(mapping.getUserSessionId(), mapping.getAttributeName(), mapping, ttl);
+
+        if (oldAttribute != null) {
+            oldAttribute
+                    .getAttributeValues()
+                    .forEach(value -> attributeToSession.remove(
+                            List.of(oldAttribute.getAttributeName(), value), oldAttribute.getUserSessionId()));
+        }
+
+        mapping.getAttributeValues()
+                .forEach(value -> attributeToSession.put(
+                        List.of(mapping.getAttributeName(), value),
+                        mapping.getUserSessionId(),
+                        mapping.getUserSessionId(),
+                        ttl));
+    }
+}
@@ -51,7 +51,7 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
     @Override
     public void setFailedLoginNotBefore(int notBefore) {
         entity.setFailedLoginNotBefore(TimeAdapter.fromIntegerWithTimeInSecondsToLongWithTimeAsInSeconds(notBefore));
-        loginFailureRepository.insertOrUpdate(entity);
+        loginFailureRepository.updateFailureDetails(entity);
     }
 
     @Override
@@ -62,8 +62,7 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
 
     @Override
     public void incrementFailures() {
-        entity.setNumFailures(getNumFailures() + 1);
-        loginFailureRepository.insertOrUpdate(entity);
+        entity.setNumFailures(loginFailureRepository.incrementNumFailures(entity));
     }
 
     @Override
@@ -73,8 +72,7 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
 
     @Override
     public void incrementTemporaryLockouts() {
-        entity.setNumTemporaryLockouts(getNumTemporaryLockouts() + 1);
-        loginFailureRepository.insertOrUpdate(entity);
+        entity.setNumTemporaryLockouts(loginFailureRepository.incrementNumTemporaryLockouts(entity));
     }
 
     @Override
@@ -83,7 +81,7 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
         entity.setNumFailures(null);
         entity.setLastFailure(null);
         entity.setLastIpFailure(null);
-        loginFailureRepository.insertOrUpdate(entity);
+        loginFailureRepository.clearFailures(entity);
     }
 
     @Override
@@ -95,7 +93,7 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
     @Override
     public void setLastFailure(long lastFailure) {
         entity.setLastFailure(lastFailure);
-        loginFailureRepository.insertOrUpdate(entity);
+        loginFailureRepository.updateFailureDetails(entity);
     }
 
     @Override
@@ -106,6 +104,6 @@ public class CassandraLoginFailureAdapter implements UserLoginFailureModel {
     @Override
     public void setLastIPFailure(String ip) {
         entity.setLastIpFailure(ip);
-        loginFailureRepository.insertOrUpdate(entity);
+        loginFailureRepository.updateFailureDetails(entity);
     }
 }
@@ -25,7 +25,6 @@ import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserLoginFailureModel;
 import org.keycloak.models.UserLoginFailureProvider;
-import org.keycloak.models.utils.KeycloakModelUtils;
 
 @JBossLog
 @RequiredArgsConstructor
@@ -57,13 +56,15 @@ public class CassandraLoginFailureProvider implements UserLoginFailureProvider {
                 .orElse(null);
 
         if (userLoginFailureEntity == null) {
-            userLoginFailureEntity = LoginFailure.builder()
+            // The realm id is the key within the user's partition, so concurrent first failures end up in one row
+            LoginFailure newEntity = LoginFailure.builder()
                     .userId(userId)
                     .realmId(realm.getId())
-                    .id(KeycloakModelUtils.generateId())
+                    .id(realm.getId())
                     .build();
 
-            loginFailureRepository.insertOrUpdate(userLoginFailureEntity);
+            LoginFailure existingEntity = loginFailureRepository.insertIfNotExists(newEntity);
+            userLoginFailureEntity = existingEntity == null ? newEntity : existingEntity;
         }
 
         return entityToAdapterFunc(realm).apply(userLoginFailureEntity);
@@ -73,12 +74,14 @@ public class CassandraLoginFailureProvider implements UserLoginFailureProvider {
     public void removeUserLoginFailure(RealmModel realm, String userId) {
         log.tracef("removeUserLoginFailure(%s, %s)%s", realm, userId, getShortStackTrace());
 
-        loginFailureRepository.deleteLoginFailureByUserId(userId);
+        loginFailureRepository.deleteLoginFailureByUserId(realm.getId(), userId);
     }
 
     @Override
     public void removeAllUserLoginFailures(RealmModel realm) {
-        loginFailureRepository.findAllLoginFailures().forEach(loginFailureRepository::deleteLoginFailure);
+        log.tracef("removeAllUserLoginFailures(%s)%s", realm, getShortStackTrace());
+
+        loginFailureRepository.deleteLoginFailuresByRealmId(realm.getId());
     }
 
     @Override
@@ -15,19 +15,100 @@
  */
 package de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence;
 
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.servererrors.WriteTimeoutException;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities.LoginFailure;
+import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities.LoginFailureRealmIndex;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.models.ModelException;
 
+@JBossLog
 @RequiredArgsConstructor
 public class CassandraLoginFailureRepository implements LoginFailureRepository {
+    // Number of partitions the login failures of a realm are spread over in the realm index
+    static final int REALM_INDEX_BUCKETS = 16;
+    static final String REALM_INDEX_BACKFILL = "login_failures_by_realm_backfill";
+    private static final int MAX_CONCURRENT_WRITES = 32;
+    private static final int MAX_INCREMENT_ATTEMPTS = 10;
+    private static final long INCREMENT_BACKOFF_BASE_MILLIS = 5;
+    private static final long INCREMENT_BACKOFF_MAX_MILLIS = 200;
+    private static final int INCREMENT_LOCK_STRIPES = 64;
+    private static final long INCREMENT_LOCK_TIMEOUT_MILLIS = 2000;
+
     private final LoginFailureDao dao;
 
+    // Increments of the same user are serialized on this node, so the compare-and-set only contends across nodes
+    private final Lock[] incrementLocks = createLocks();
+
     @Override
     public void insertOrUpdate(LoginFailure loginFailure) {
+        dao.insertOrUpdate(toRealmIndex(loginFailure));
         dao.insertOrUpdate(loginFailure);
     }
 
+    @Override
+    public LoginFailure insertIfNotExists(LoginFailure loginFailure) {
+        // Index first: an index entry without login failure is skipped by the realm-wide deletion, the opposite would
+        // leave the login failure behind
+        dao.insertOrUpdate(toRealmIndex(loginFailure));
+        return dao.insertIfNotExists(loginFailure);
+    }
+
+    @Override
+    public void updateFailureDetails(LoginFailure loginFailure) {
+        // conditional, so an update racing with a deletion doesn't recreate the row without its realm index entry
+        dao.updateFailureDetails(
+                loginFailure.getUserId(),
+                loginFailure.getId(),
+                loginFailure.getFailedLoginNotBefore(),
+                loginFailure.getLastFailure(),
+                loginFailure.getLastIpFailure());
+    }
+
+    @Override
+    public int incrementNumFailures(LoginFailure loginFailure) {
+        return increment(
+                loginFailure.getUserId(),
+                loginFailure.getNumFailures(),
+                "num_failures",
+                expected -> dao.compareAndSetNumFailures(
+                        loginFailure.getUserId(),
+                        loginFailure.getId(),
+                        loginFailure.getRealmId(),
+                        expected,
+                        increment(expected)));
+    }
+
+    @Override
+    public int incrementNumTemporaryLockouts(LoginFailure loginFailure) {
+        return increment(
+                loginFailure.getUserId(),
+                loginFailure.getNumTemporaryLockouts(),
+                "num_temporary_lockouts",
+                expected -> dao.compareAndSetNumTemporaryLockouts(
+                        loginFailure.getUserId(),
+                        loginFailure.getId(),
+                        loginFailure.getRealmId(),
+                        expected,
+                        increment(expected)));
+    }
+
+    @Override
+    public void clearFailures(LoginFailure loginFailure) {
+        dao.clearFailures(loginFailure.getUserId(), loginFailure.getId());
+    }
+
     @Override
     public List<LoginFailure> findLoginFailuresByUserId(String userId) {
         return dao.findByUserId(userId).all();
@@ -36,15 +117,174 @@ public class CassandraLoginFailureRepository implements LoginFailureRepository {
     @Override
     public void deleteLoginFailure(LoginFailure loginFailure) {
         dao.delete(loginFailure);
+        dao.deleteRealmIndex(
+                loginFailure.getRealmId(), getRealmIndexBucket(loginFailure.getUserId()), loginFailure.getUserId());
     }
 
     @Override
-    public void deleteLoginFailureByUserId(String userId) {
+    public void deleteLoginFailureByUserId(String realmId, String userId) {
         dao.deleteByUserId(userId);
+        dao.deleteRealmIndex(realmId, getRealmIndexBucket(userId), userId);
+    }
+
+    @Override
+    public void deleteLoginFailuresByRealmId(String realmId) {
+        // The index is paged through, at most MAX_CONCURRENT_WRITES deletions are in flight at any time
+        for (int bucket = 0; bucket < REALM_INDEX_BUCKETS; bucket++) {
+            forEachAsync(
+                    dao.findRealmIndex(realmId, bucket), index -> dao.deleteAsync(index.getUserId(), index.getId()));
+            dao.deleteRealmIndex(realmId, bucket);
+        }
+    }
+
+    @Override
+    public void backfillLoginFailureRealmIndex() {
+        if (dao.findDataMigration(REALM_INDEX_BACKFILL).one() != null) {
+            return;
+        }
+
+        // Nodes starting concurrently may both backfill, the index entries are written idempotently
+        log.info("Adding login failures written by older versions to the realm index...");
+        long start = System.nanoTime();
+        forEachAsync(
+                dao.findAll(),
+                loginFailure ->
+                        loginFailure.getRealmId() == null ? null : dao.insertOrUpdateAsync(toRealmIndex(loginFailure)));
+        dao.completeDataMigration(REALM_INDEX_BACKFILL);
+        log.infov("Backfilled the realm index of login failures in {0}ms", (System.nanoTime() - start) / 1_000_000L);
+    }
+
+    private <T> void forEachAsync(Iterable<T> rows, Function<T, CompletionStage<Void>> operation) {
+        Semaphore inFlight = new Semaphore(MAX_CONCURRENT_WRITES);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (T row : rows) {
+            if (failure.get() != null) {
+                break;
+            }
+
+            inFlight.acquireUninterruptibly();
+            CompletionStage<Void> done = operation.apply(row);
+            if (done == null) {
+                inFlight.release();
+                continue;
+            }
+
+            done.whenComplete((result, error) -> {
+                if (error != null) {
+                    failure.compareAndSet(null, error);
+                }
+                inFlight.release();
+            });
+        }
+
+        inFlight.acquireUninterruptibly(MAX_CONCURRENT_WRITES);
+        if (failure.get() != null) {
+            throw new IllegalStateException("Failed to write login failures", failure.get());
+        }
     }
 
     @Override
     public List<LoginFailure> findAllLoginFailures() {
         return dao.findAll().all();
     }
+
+    // Compare-and-set loop: a rejected update returns the current value, which is expected by the next attempt.
+    // Contended attempts back off with jitter, so concurrent increments of the same user (e.g. during a brute force
+    // attack) spread out instead of colliding again.
+    private int increment(
+            String userId, Integer expectedValue, String column, Function<Integer, ResultSet> compareAndSet) {
+        Lock lock = incrementLocks[Math.floorMod(userId.hashCode(), INCREMENT_LOCK_STRIPES)];
+        boolean locked = false;
+        try {
+            // without the lock the increment is still correct, only more likely to contend
+            locked = lock.tryLock(INCREMENT_LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return increment(expectedValue, column, compareAndSet);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelException("Interrupted while incrementing login failures", e);
+        } finally {
+            if (locked) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private int increment(Integer expectedValue, String column, Function<Integer, ResultSet> compareAndSet) {
+        Integer expected = expectedValue;
+        boolean timedOut = false;
+        for (int attempt = 0; attempt < MAX_INCREMENT_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                backoff(attempt);
+            }
+
+            ResultSet resultSet;
+            try {
+                resultSet = compareAndSet.apply(expected);
+            } catch (WriteTimeoutException e) {
+                // the outcome is unknown, the next attempt either applies or reveals the value written by this one
+                log.debugf(e, "Timeout incrementing %s, retrying", column);
+                timedOut = true;
+                continue;
+            }
+
+            if (resultSet.wasApplied()) {
+                return increment(expected);
+            }
+
+            Row row = resultSet.one();
+            if (row == null || row.isNull("realm_id")) {
+                // the login failure has been removed in the meantime, there is nothing left to count on
+                return increment(expected);
+            }
+
+            Integer current = row.isNull(column) ? null : row.getInt(column);
+            if (timedOut && current != null && current == increment(expected)) {
+                // the timed out attempt has been applied
+                return current;
+            }
+
+            timedOut = false;
+            expected = current;
+        }
+
+        throw new ModelException(
+                "Could not increment " + column + " after " + MAX_INCREMENT_ATTEMPTS + " attempts due to contention");
+    }
+
+    private static void backoff(int attempt) {
+        long maxMillis = Math.min(INCREMENT_BACKOFF_MAX_MILLIS, INCREMENT_BACKOFF_BASE_MILLIS << attempt);
+        try {
+            TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(maxMillis + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ModelException("Interrupted while incrementing login failures", e);
+        }
+    }
+
+    private static Lock[] createLocks() {
+        Lock[] locks = new Lock[INCREMENT_LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock(true);
+        }
+
+        return locks;
+    }
+
+    private static LoginFailureRealmIndex toRealmIndex(LoginFailure loginFailure) {
+        return LoginFailureRealmIndex.builder()
+                .realmId(loginFailure.getRealmId())
+                .bucket(getRealmIndexBucket(loginFailure.getUserId()))
+                .userId(loginFailure.getUserId())
+                .id(loginFailure.getId())
+                .build();
+    }
+
+    private static int getRealmIndexBucket(String userId) {
+        return Math.floorMod(userId.hashCode(), REALM_INDEX_BUCKETS);
+    }
+
+    private static int increment(Integer value) {
+        return value == null ? 1 : value + 1;
+    }
 }
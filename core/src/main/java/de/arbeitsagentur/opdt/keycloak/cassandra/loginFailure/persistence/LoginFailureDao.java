@@ -16,29 +16,97 @@
 package de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence;
 
 import com.datastax.oss.driver.api.core.PagingIterable;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.mapper.annotations.*;
 import de.arbeitsagentur.opdt.keycloak.cassandra.BaseDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities.LoginFailure;
+import de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities.LoginFailureRealmIndex;
+import java.util.concurrent.CompletionStage;
 
 @Dao
 public interface LoginFailureDao extends BaseDao {
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(LoginFailure loginFailure);
 
+    @Insert(ifNotExists = true)
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    LoginFailure insertIfNotExists(LoginFailure loginFailure);
+
+    @Query("UPDATE ${keyspaceId}.login_failures SET failed_login_not_before = :failedLoginNotBefore, "
+            + "last_failure = :lastFailure, last_ip_failure = :lastIpFailure WHERE user_id = :userId AND id = :id "
+            + "IF EXISTS")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    void updateFailureDetails(
+            String userId, String id, Long failedLoginNotBefore, Long lastFailure, String lastIpFailure);
+
+    @Query("UPDATE ${keyspaceId}.login_failures SET num_failures = :newValue WHERE user_id = :userId AND id = :id "
+            + "IF realm_id = :realmId AND num_failures = :expectedValue")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    ResultSet compareAndSetNumFailures(
+            String userId, String id, String realmId, Integer expectedValue, Integer newValue);
+
+    @Query(
+            "UPDATE ${keyspaceId}.login_failures SET num_temporary_lockouts = :newValue WHERE user_id = :userId AND id = :id "
+                    + "IF realm_id = :realmId AND num_temporary_lockouts = :expectedValue")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    ResultSet compareAndSetNumTemporaryLockouts(
+            String userId, String id, String realmId, Integer expectedValue, Integer newValue);
+
+    @Query(
+            "UPDATE ${keyspaceId}.login_failures SET failed_login_not_before = null, num_failures = null, last_failure = null, "
+                    + "last_ip_failure = null WHERE user_id = :userId AND id = :id IF EXISTS")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    void clearFailures(String userId, String id);
+
     @Select(customWhereClause = "user_id = :userId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     PagingIterable<LoginFailure> findByUserId(String userId);
 
     @Select
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<LoginFailure> findAll();
 
     @Delete
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void delete(LoginFailure loginFailure);
 
     @Delete(entityClass = LoginFailure.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void deleteByUserId(String userId);
+
+    @Delete(entityClass = LoginFailure.class)
+    @StatementAttributes(executionProfileName = "session-write")
+    CompletionStage<Void> deleteAsync(String userId, String id);
+
+    // Realm index
+    @Insert
+    @StatementAttributes(executionProfileName = "session-write")
+    void insertOrUpdate(LoginFailureRealmIndex realmIndex);
+
+    @Insert
+    @StatementAttributes(executionProfileName = "session-write")
+    CompletionStage<Void> insertOrUpdateAsync(LoginFailureRealmIndex realmIndex);
+
+    @Select(customWhereClause = "realm_id = :realmId AND bucket = :bucket")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
+    PagingIterable<LoginFailureRealmIndex> findRealmIndex(String realmId, int bucket);
+
+    @Delete(entityClass = LoginFailureRealmIndex.class, customWhereClause = "realm_id = :realmId AND bucket = :bucket")
+    @StatementAttributes(executionProfileName = "session-write")
+    void deleteRealmIndex(String realmId, int bucket);
+
+    @Delete(
+            entityClass = LoginFailureRealmIndex.class,
+            customWhereClause = "realm_id = :realmId AND bucket = :bucket AND user_id = :userId")
+    @StatementAttributes(executionProfileName = "session-write")
+    void deleteRealmIndex(String realmId, int bucket, String userId);
+
+    @Query("SELECT completed_at FROM ${keyspaceId}.data_migrations WHERE name = :name")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
+    ResultSet findDataMigration(String name);
+
+    @Query("INSERT INTO ${keyspaceId}.data_migrations (name, completed_at) VALUES (:name, toTimestamp(now()))")
+    @StatementAttributes(executionProfileName = "write")
+    void completeDataMigration(String name);
 }
@@ -21,11 +21,53 @@ import java.util.List;
 public interface LoginFailureRepository {
     void insertOrUpdate(LoginFailure loginFailure);
 
+    /**
+     * Inserts the login failure unless a row with the same key exists, atomically across nodes.
+     *
+     * @return null if the login failure has been inserted, the existing one otherwise
+     */
+    LoginFailure insertIfNotExists(LoginFailure loginFailure);
+
+    /**
+     * Writes failedLoginNotBefore, lastFailure and lastIpFailure of the login failure, leaving the counters untouched.
+     */
+    void updateFailureDetails(LoginFailure loginFailure);
+
+    /**
+     * Atomically increments the number of failures, concurrent increments are never lost.
+     *
+     * @return the number of failures after the increment
+     */
+    int incrementNumFailures(LoginFailure loginFailure);
+
+    /**
+     * Atomically increments the number of temporary lockouts, concurrent increments are never lost.
+     *
+     * @return the number of temporary lockouts after the increment
+     */
+    int incrementNumTemporaryLockouts(LoginFailure loginFailure);
+
+    /**
+     * Resets the number of failures and the details of the last failure, ordered with concurrent increments.
+     */
+    void clearFailures(LoginFailure loginFailure);
+
     List<LoginFailure> findLoginFailuresByUserId(String userId);
 
     void deleteLoginFailure(LoginFailure loginFailure);
 
-    void deleteLoginFailureByUserId(String userId);
+    void deleteLoginFailureByUserId(String realmId, String userId);
+
+    /**
+     * Deletes the login failures of all users of the realm, login failures of other realms are left untouched.
+     */
+    void deleteLoginFailuresByRealmId(String realmId);
 
     List<LoginFailure> findAllLoginFailures();
+
+    /**
+     * Adds login failures written before the realm index existed to the index, so that realm-wide deletions find
+     * them. Only does work once per keyspace.
+     */
+    void backfillLoginFailureRealmIndex();
 }
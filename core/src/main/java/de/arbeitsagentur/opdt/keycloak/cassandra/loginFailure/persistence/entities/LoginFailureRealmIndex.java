@@ -0,0 +1,47 @@
+/*
+ * Copyright 2022 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.loginFailure.persistence.entities;
+
+import com.datastax.oss.driver.api.mapper.annotations.ClusteringColumn;
+import com.datastax.oss.driver.api.mapper.annotations.CqlName;
+import com.datastax.oss.driver.api.mapper.annotations.Entity;
+import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import lombok.*;
+
+/**
+ * Login failures of a realm, spread over a fixed number of buckets so that no partition grows with the number of
+ * users of a realm.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@CqlName("login_failures_by_realm")
+public class LoginFailureRealmIndex {
+    @PartitionKey(0)
+    private String realmId;
+
+    @PartitionKey(1)
+    private Integer bucket;
+
+    @ClusteringColumn(0)
+    private String userId;
+
+    @ClusteringColumn(1)
+    private String id;
+}
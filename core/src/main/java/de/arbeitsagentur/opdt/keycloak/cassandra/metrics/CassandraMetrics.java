@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.metrics;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+import java.util.ServiceLoader;
+
+/**
+ * Hook for instrumentation of the extension. Implementations are discovered via {@link ServiceLoader}, e.g. from the
+ * keycloak-cassandra-extension-metrics module. Without an implementation on the classpath nothing is recorded.
+ */
+public interface CassandraMetrics {
+    CassandraMetrics NOOP = new CassandraMetrics() {};
+
+    static CassandraMetrics load() {
+        return ServiceLoader.load(CassandraMetrics.class, CassandraMetrics.class.getClassLoader())
+                .findFirst()
+                .orElse(NOOP);
+    }
+
+    default boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Called before the session is built, e.g. to register a metric registry and enable driver metrics.
+     */
+    default void configureDriver(
+            CqlSessionBuilder sessionBuilder, ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder) {}
+
+    default void bindSession(CqlSession session) {}
+
+    default void recordRepositoryCall(String entity, String operation, long durationNanos, boolean success) {}
+
+    default void recordRowsRead(String entity, long rows) {}
+
+    /**
+     * A repository call which writes, e.g. an insert, update or delete. Bulk operations count once, whatever the number
+     * of rows they affect.
+     */
+    default void recordWriteOperation(String entity) {}
+
+    /**
+     * An optimistic lock (LWT or client-side version check) rejected a write.
+     */
+    default void recordVersionConflict(String entity) {}
+
+    default void recordL1CacheAccess(String cacheName, boolean hit) {}
+
+    /**
+     * Lookup in the node-local public key cache. A miss includes expired keys.
+     */
+    default void recordPublicKeyCacheAccess(boolean hit) {}
+
+    /**
+     * Load of public keys from their source, e.g. the JWKS endpoint of a client or an identity provider.
+     */
+    default void recordPublicKeyLoad(long durationNanos, boolean success) {}
+
+    /**
+     * Statements and cumulative Cassandra time of a single Keycloak request.
+     */
+    default void recordRequestBudget(String endpoint, int statements, long cassandraNanos) {}
+}
@@ -64,7 +64,7 @@ public class CassandraRealmRepository extends TransactionalRepository<Realm, Rea
 
     @Override
     public void deleteRealm(Realm realm) {
-        dao.delete(realm);
+        delete(realm);
         dao.deleteAllClientInitialAccessModels(realm.getId());
         dao.deleteNameToRealm(realm.getName());
     }
@@ -109,4 +109,10 @@ public class CassandraRealmRepository extends TransactionalRepository<Realm, Rea
     public ClientInitialAccess getClientInitialAccess(String realmId, String id) {
         return dao.getClientInitialAccessModelById(realmId, id);
     }
+
+    @Override
+    protected Long readVersion(Realm realm) {
+        Realm dbRealm = dao.getRealmById(realm.getId());
+        return dbRealm == null ? null : dbRealm.getVersion();
+    }
 }
@@ -25,15 +25,15 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 @Dao
 public interface RealmDao extends TransactionalDao<Realm> {
     @Select(customWhereClause = "id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     Realm getRealmById(String id);
 
     @Select
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<Realm> findAll();
 
     @Select(customWhereClause = "name = :name")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "lookup-read", idempotence = true)
     NameToRealm findByName(String name);
 
     @Delete(entityClass = NameToRealm.class)
@@ -47,15 +47,15 @@ public interface RealmDao extends TransactionalDao<Realm> {
     // ClientInitialAccessModel
 
     @Select(customWhereClause = "realm_id = :realmId AND id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     ClientInitialAccess getClientInitialAccessModelById(String realmId, String id);
 
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     PagingIterable<ClientInitialAccess> getClientInitialAccesses(String realmId);
 
     @Select
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<ClientInitialAccess> getAllClientInitialAccesses();
 
     @Update
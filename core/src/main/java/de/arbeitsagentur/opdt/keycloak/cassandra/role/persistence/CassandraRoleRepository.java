@@ -38,4 +38,10 @@ public class CassandraRoleRepository extends TransactionalRepository<Roles, Role
     public void deleteRealmRoles(String realmId) {
         dao.deleteAllRealmRoles(realmId);
     }
+
+    @Override
+    protected Long readVersion(Roles roles) {
+        Roles dbRoles = dao.getRolesByRealmId(roles.getRealmId());
+        return dbRoles == null ? null : dbRoles.getVersion();
+    }
 }
@@ -22,7 +22,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 @Dao
 public interface RoleDao extends TransactionalDao<Roles> {
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     Roles getRolesByRealmId(String realmId);
 
     @Delete(entityClass = Roles.class, ifExists = true)
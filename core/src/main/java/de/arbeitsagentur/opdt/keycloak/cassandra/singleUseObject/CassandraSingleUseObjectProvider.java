@@ -17,6 +17,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject;
 
 import static org.keycloak.common.util.StackUtil.getShortStackTrace;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.SingleUseObjectRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.entities.SingleUseObject;
 import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
@@ -35,30 +36,35 @@ public class CassandraSingleUseObjectProvider implements SingleUseObjectProvider
 
     private final SingleUseObjectRepository repository;
 
+    // Node-local cache of keys recently found missing, answers the common miss path of get without a read. Positive
+    // results are never cached. contains (revoked tokens, replay checks), remove and putIfAbsent always go to
+    // Cassandra,
+    // as a key written on another node is not invalidated here.
+    private final ExpiringCache<String, Boolean> missingKeys;
+
     @Override
     public void put(String key, long lifespanSeconds, Map<String, String> notes) {
         log.tracef("put(%s)%s", key, getShortStackTrace());
 
-        SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
-
-        if (singleUseEntity != null) {
-            throw new ModelDuplicateException("Single-use object entity exists: " + singleUseEntity.getKey());
-        }
-
-        singleUseEntity = SingleUseObject.builder()
+        SingleUseObject singleUseEntity = SingleUseObject.builder()
                 .key(key)
                 .notes(getInternalNotes(notes))
                 .build();
 
         int ttl = TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(lifespanSeconds);
-        repository.insertOrUpdate(singleUseEntity, ttl);
+        missingKeys.invalidate(key);
+        boolean inserted = repository.insertIfNotExists(singleUseEntity, ttl);
+        missingKeys.invalidate(key);
+        if (!inserted) {
+            throw new ModelDuplicateException("Single-use object entity exists: " + key);
+        }
     }
 
     @Override
     public Map<String, String> get(String key) {
         log.tracef("get(%s)%s", key, getShortStackTrace());
 
-        SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
+        SingleUseObject singleUseEntity = findSingleUseObject(key);
         if (singleUseEntity != null) {
             return getExternalNotes(singleUseEntity.getNotes());
         }
@@ -72,12 +78,11 @@ public class CassandraSingleUseObjectProvider implements SingleUseObjectProvider
 
         SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
 
-        if (singleUseEntity != null) {
-            Map<String, String> notes = singleUseEntity.getNotes();
-            if (repository.deleteSingleUseObjectByKey(key)) {
-                return getExternalNotes(notes);
-            }
+        // Only one of concurrent removals of the same key succeeds with the conditional delete
+        if (singleUseEntity != null && repository.deleteSingleUseObjectByKey(key)) {
+            return getExternalNotes(singleUseEntity.getNotes());
         }
+
         // the single-use entity expired or someone else already used and deleted it
         return null;
     }
@@ -89,7 +94,9 @@ public class CassandraSingleUseObjectProvider implements SingleUseObjectProvider
         SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
         if (singleUseEntity != null) {
             singleUseEntity.setNotes(getInternalNotes(notes));
+            missingKeys.invalidate(key);
             repository.insertOrUpdate(singleUseEntity);
+            missingKeys.invalidate(key);
             return true;
         }
 
@@ -100,28 +107,22 @@ public class CassandraSingleUseObjectProvider implements SingleUseObjectProvider
     public boolean putIfAbsent(String key, long lifespanInSeconds) {
         log.tracef("putIfAbsent(%s)%s", key, getShortStackTrace());
 
-        SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
-        if (singleUseEntity != null) {
-            return false;
-        } else {
-            singleUseEntity = SingleUseObject.builder()
-                    .key(key)
-                    .notes(getInternalNotes(null))
-                    .build();
-
-            int ttl = TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(lifespanInSeconds);
-            repository.insertOrUpdate(singleUseEntity, ttl);
-            return true;
-        }
+        SingleUseObject singleUseEntity =
+                SingleUseObject.builder().key(key).notes(getInternalNotes(null)).build();
+
+        int ttl = TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(lifespanInSeconds);
+        missingKeys.invalidate(key);
+        boolean inserted = repository.insertIfNotExists(singleUseEntity, ttl);
+        missingKeys.invalidate(key);
+
+        return inserted;
     }
 
     @Override
     public boolean contains(String key) {
         log.tracef("contains(%s)%s", key, getShortStackTrace());
 
-        SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
-
-        return singleUseEntity != null;
+        return repository.findSingleUseObjectByKey(key) != null;
     }
 
     @Override
@@ -129,6 +130,21 @@ public class CassandraSingleUseObjectProvider implements SingleUseObjectProvider
         // Nothing to do
     }
 
+    private SingleUseObject findSingleUseObject(String key) {
+        if (missingKeys.get(key) != null) {
+            return null;
+        }
+
+        // writes invalidate the key before and after they are applied, a miss read concurrently is not cached
+        long generation = missingKeys.generation(key);
+        SingleUseObject singleUseEntity = repository.findSingleUseObjectByKey(key);
+        if (singleUseEntity == null) {
+            missingKeys.put(key, Boolean.TRUE, generation);
+        }
+
+        return singleUseEntity;
+    }
+
     private Map<String, String> getInternalNotes(Map<String, String> notes) {
         Map<String, String> result = notes == null
                 ? new HashMap<>()
@@ -22,6 +22,7 @@ import static de.arbeitsagentur.opdt.keycloak.common.ProviderHelpers.createProvi
 import static org.keycloak.userprofile.DeclarativeUserProfileProviderFactory.PROVIDER_PRIORITY;
 
 import com.google.auto.service.AutoService;
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
 import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
@@ -33,22 +34,29 @@ import org.keycloak.provider.EnvironmentDependentProviderFactory;
 public class CassandraSingleUseObjectProviderFactory
         implements SingleUseObjectProviderFactory<CassandraSingleUseObjectProvider>,
                 EnvironmentDependentProviderFactory {
+    private ExpiringCache<String, Boolean> missingKeys = new ExpiringCache<>(0, 0);
 
     @Override
     public CassandraSingleUseObjectProvider create(KeycloakSession session) {
         CassandraConnectionProvider cassandraConnectionProvider =
                 createProviderCached(session, CassandraConnectionProvider.class);
-        return new CassandraSingleUseObjectProvider(cassandraConnectionProvider.getRepository());
+        return new CassandraSingleUseObjectProvider(cassandraConnectionProvider.getRepository(), missingKeys);
     }
 
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        // Disabled by default: inserts on other nodes stay invisible to this node for up to the time to live
+        missingKeys = new ExpiringCache<>(
+                config.getLong("negativeCacheTtlMillis", 0L), config.getInt("negativeCacheMaxSize", 100000));
+    }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {}
 
     @Override
-    public void close() {}
+    public void close() {
+        missingKeys.clear();
+    }
 
     @Override
     public String getId() {
@@ -37,6 +37,11 @@ public class CassandraSingleUseObjectRepository implements SingleUseObjectReposi
         dao.insertOrUpdate(singleUseObject);
     }
 
+    @Override
+    public boolean insertIfNotExists(SingleUseObject singleUseObject, int ttl) {
+        return dao.insertIfNotExists(singleUseObject, ttl);
+    }
+
     @Override
     public boolean deleteSingleUseObjectByKey(String key) {
         return dao.delete(key);
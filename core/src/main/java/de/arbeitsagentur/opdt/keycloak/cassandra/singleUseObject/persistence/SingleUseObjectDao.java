@@ -22,18 +22,22 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.persistence.ent
 @Dao
 public interface SingleUseObjectDao extends BaseDao {
     @Select(customWhereClause = "key = :key")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     SingleUseObject findByKey(String key);
 
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(SingleUseObject singleUseObject);
 
     @Update(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(SingleUseObject singleUseObject, int ttl);
 
-    @Delete(entityClass = SingleUseObject.class)
-    @StatementAttributes(executionProfileName = "write")
+    @Insert(ifNotExists = true, ttl = ":ttl")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    boolean insertIfNotExists(SingleUseObject singleUseObject, int ttl);
+
+    @Delete(entityClass = SingleUseObject.class, ifExists = true)
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
     boolean delete(String key);
 }
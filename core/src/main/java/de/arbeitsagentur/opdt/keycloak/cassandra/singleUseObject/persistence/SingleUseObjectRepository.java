@@ -24,5 +24,17 @@ public interface SingleUseObjectRepository {
 
     void insertOrUpdate(SingleUseObject singleUseObject);
 
+    /**
+     * Inserts the object atomically if no object with the same key exists.
+     *
+     * @return true if the object has been inserted
+     */
+    boolean insertIfNotExists(SingleUseObject singleUseObject, int ttl);
+
+    /**
+     * Deletes the object atomically, concurrent deletes of the same key succeed only once.
+     *
+     * @return true if the object existed and has been deleted by this call
+     */
     boolean deleteSingleUseObjectByKey(String key);
 }
@@ -26,13 +26,25 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.BaseDao;
 public interface TransactionalDao<T extends TransactionalEntity> extends BaseDao {
     @Insert(ifNotExists = true)
     @StatementAttributes(executionProfileName = "write")
-    void insert(T entity);
+    ResultSet insert(T entity);
+
+    @Insert
+    @StatementAttributes(executionProfileName = "write")
+    void insertUnconditionally(T entity);
 
     @Update(customIfClause = "version = :expectedVersion")
     @StatementAttributes(executionProfileName = "write")
     ResultSet update(T entity, long expectedVersion);
 
+    @Update
+    @StatementAttributes(executionProfileName = "write")
+    void updateUnconditionally(T entity);
+
     @Delete(ifExists = true)
     @StatementAttributes(executionProfileName = "write")
     void delete(T entity);
+
+    @Delete
+    @StatementAttributes(executionProfileName = "write")
+    void deleteUnconditionally(T entity);
 }
@@ -41,6 +41,17 @@ public abstract class TransactionalModelAdapter<T extends TransactionalEntity> i
         return entity.getId();
     }
 
+    /**
+     * @return the version of the entity as last read or written, not reflecting changes pending in this transaction
+     */
+    public Long getVersion() {
+        return entity.getVersion();
+    }
+
+    public boolean isUpdated() {
+        return updated;
+    }
+
     public void markUpdated() {
         updated = true;
     }
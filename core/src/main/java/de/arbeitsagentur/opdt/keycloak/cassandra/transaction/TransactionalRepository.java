@@ -18,31 +18,97 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.transaction;
 
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import de.arbeitsagentur.opdt.keycloak.common.ModelIllegalStateException;
+import org.keycloak.models.ModelDuplicateException;
 
 public abstract class TransactionalRepository<
         TEntity extends TransactionalEntity, TDao extends TransactionalDao<TEntity>> {
     protected final TDao dao;
+    private final WriteMode writeMode;
 
     public TransactionalRepository(TDao dao) {
+        this(dao, WriteMode.LIGHTWEIGHT_TRANSACTION);
+    }
+
+    public TransactionalRepository(TDao dao, WriteMode writeMode) {
         this.dao = dao;
+        this.writeMode = writeMode;
     }
 
     public void insertOrUpdate(TEntity entity) {
         if (entity.getVersion() == null) {
             entity.setVersion(1L);
-            dao.insert(entity);
+
+            if (writeMode.isConditional()) {
+                ResultSet result = dao.insert(entity);
+
+                if (!result.wasApplied()) {
+                    throw alreadyExists();
+                }
+            } else {
+                dao.insertUnconditionally(entity);
+            }
         } else {
             Long currentVersion = entity.getVersion();
+
+            if (writeMode == WriteMode.QUORUM_READ_VERIFY) {
+                Long dbVersion = readVersion(entity);
+                if (!currentVersion.equals(dbVersion)) {
+                    throw versionMismatch(currentVersion, dbVersion);
+                }
+            }
+
             entity.incrementVersion();
 
-            ResultSet result = dao.update(entity, currentVersion);
+            if (writeMode.isConditional()) {
+                ResultSet result = update(entity, currentVersion);
 
-            if (!result.wasApplied()) {
-                Long dbVersion = result.one().getLong("version");
-                throw new ModelIllegalStateException("Entity couldn't be updated because its version "
-                        + currentVersion
-                        + " doesn't match the version in the database (" + dbVersion + ")");
+                if (!result.wasApplied()) {
+                    throw versionMismatch(currentVersion, result.one().getLong("version"));
+                }
+            } else {
+                updateUnconditionally(entity);
             }
         }
     }
+
+    protected WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    protected ResultSet update(TEntity entity, long expectedVersion) {
+        return dao.update(entity, expectedVersion);
+    }
+
+    protected void updateUnconditionally(TEntity entity) {
+        dao.updateUnconditionally(entity);
+    }
+
+    /**
+     * Deletes the entity with IF EXISTS in {@link WriteMode#LIGHTWEIGHT_TRANSACTION} mode and with a plain delete
+     * otherwise, so that conditional and unconditional writes are never mixed on the same partition.
+     */
+    public void delete(TEntity entity) {
+        if (writeMode.isConditional()) {
+            dao.delete(entity);
+        } else {
+            dao.deleteUnconditionally(entity);
+        }
+    }
+
+    /**
+     * Reads the version currently stored for the entity. Required for {@link WriteMode#QUORUM_READ_VERIFY}.
+     *
+     * @return the stored version or null if the entity doesn't exist (anymore)
+     */
+    protected abstract Long readVersion(TEntity entity);
+
+    public static ModelDuplicateException alreadyExists() {
+        return new ModelDuplicateException("Entity couldn't be inserted because it already exists in the database");
+    }
+
+    public static ModelIllegalStateException versionMismatch(Long expectedVersion, Long dbVersion) {
+        return new ModelIllegalStateException("Entity couldn't be updated because its version "
+                + expectedVersion
+                + " doesn't match the version in the database (" + dbVersion + ")");
+    }
 }
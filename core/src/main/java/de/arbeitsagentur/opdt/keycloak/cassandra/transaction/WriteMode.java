@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.transaction;
+
+import java.util.Arrays;
+
+/**
+ * Determines how a {@link TransactionalRepository} writes its entities.
+ */
+public enum WriteMode {
+    /**
+     * Inserts use IF NOT EXISTS and updates use IF version = ? (Paxos round trips at SERIAL consistency).
+     */
+    LIGHTWEIGHT_TRANSACTION,
+
+    /**
+     * Plain writes with the consistency of the write profile. Concurrent updates are resolved by last-write-wins.
+     */
+    QUORUM,
+
+    /**
+     * Like {@link #QUORUM}, but the version is read before each update and compared on the client side. Conflicting
+     * writes are detected unless they happen between the read and the write.
+     */
+    QUORUM_READ_VERIFY;
+
+    /**
+     * Parses a write mode case-insensitively, e.g. {@code quorum} or {@code QUORUM}.
+     *
+     * @throws IllegalArgumentException if the value doesn't name a write mode
+     */
+    public static WriteMode parse(String value) {
+        for (WriteMode writeMode : values()) {
+            if (writeMode.name().equalsIgnoreCase(value == null ? null : value.trim())) {
+                return writeMode;
+            }
+        }
+
+        throw new IllegalArgumentException(
+                "Unknown write mode '" + value + "', valid values are " + Arrays.toString(values()));
+    }
+
+    public boolean isConditional() {
+        return this == LIGHTWEIGHT_TRANSACTION;
+    }
+}
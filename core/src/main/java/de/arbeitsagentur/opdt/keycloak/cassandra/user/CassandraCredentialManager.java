@@ -16,11 +16,12 @@
 package de.arbeitsagentur.opdt.keycloak.cassandra.user;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository;
-import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.CredentialValue;
-import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserCredential;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.jbosslog.JBossLog;
@@ -37,7 +38,6 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
     private final RealmModel realm;
     private final UserRepository userRepository;
     private final UserModel user;
-    private final User userEntity;
 
     @Override
     public boolean isValid(List<CredentialInput> inputs) {
@@ -63,32 +63,35 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
     @Override
     public void updateStoredCredential(CredentialModel cred) {
         throwExceptionIfInvalidUser(user);
-        CredentialValue credential = fromModel(cred);
-        userEntity.getCredentials().remove(credential);
-        userEntity.getCredentials().add(credential);
-        userRepository.insertOrUpdate(userEntity);
+        UserCredential existing = findCredential(cred.getId());
+        UserCredential credential = fromModel(cred);
+
+        if (existing != null) {
+            credential.setPriority(existing.getPriority());
+        }
+
+        userRepository.createOrUpdateCredential(credential);
     }
 
     @Override
     public CredentialModel createStoredCredential(CredentialModel cred) {
         throwExceptionIfInvalidUser(user);
-        boolean existsAlready = userEntity.hasCredential(cred.getId());
+        List<UserCredential> credentials = getSortedCredentials();
+        boolean existsAlready = cred.getId() != null
+                && credentials.stream().anyMatch(c -> c.getId().equals(cred.getId()));
 
         if (existsAlready) {
             throw new ModelDuplicateException("A CredentialModel with given id already exists");
         }
 
-        CredentialValue credential = fromModel(cred);
+        UserCredential credential = fromModel(cred);
 
-        List<CredentialValue> credentials = userEntity.getSortedCredentials();
         int priority = credentials.isEmpty()
                 ? PRIORITY_DIFFERENCE
                 : credentials.get(credentials.size() - 1).getPriority() + PRIORITY_DIFFERENCE;
         credential.setPriority(priority);
 
-        userEntity.getCredentials().remove(credential);
-        userEntity.getCredentials().add(credential);
-        userRepository.insertOrUpdate(userEntity);
+        userRepository.createOrUpdateCredential(credential);
 
         return toModel(credential);
     }
@@ -97,24 +100,16 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
     public boolean removeStoredCredentialById(String id) {
         throwExceptionIfInvalidUser(user);
 
-        boolean removed = userEntity
-                .getCredentials()
-                .remove(CredentialValue.builder().id(id).build());
-
-        if (!removed) {
+        if (findCredential(id) == null) {
             return false;
         }
 
-        userRepository.insertOrUpdate(userEntity);
-        return true;
+        return userRepository.deleteCredential(realm.getId(), user.getId(), id);
     }
 
     @Override
     public CredentialModel getStoredCredentialById(String id) {
-        CredentialValue credential = userEntity.getCredentials().stream()
-                .filter(c -> c.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        UserCredential credential = findCredential(id);
 
         if (credential == null) {
             return null;
@@ -124,7 +119,7 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
 
     @Override
     public Stream<CredentialModel> getStoredCredentialsStream() {
-        return userEntity.getSortedCredentials().stream().map(this::toModel);
+        return getSortedCredentials().stream().map(this::toModel);
     }
 
     @Override
@@ -144,15 +139,15 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
     public boolean moveStoredCredentialTo(String credentialId, String newPreviousCredentialId) {
         throwExceptionIfInvalidUser(user);
 
-        // 1 - Get all credentials from the entity.
-        List<CredentialValue> credentialsList = userEntity.getSortedCredentials();
+        // 1 - Get all credentials of the user.
+        List<UserCredential> credentialsList = getSortedCredentials();
 
         // 2 - Find indexes of our and newPrevious credential
         int ourCredentialIndex = -1;
         int newPreviousCredentialIndex = -1;
-        CredentialValue ourCredential = null;
+        UserCredential ourCredential = null;
         int i = 0;
-        for (CredentialValue credential : credentialsList) {
+        for (UserCredential credential : credentialsList) {
             if (credentialId.equals(credential.getId())) {
                 ourCredentialIndex = i;
                 ourCredential = credential;
@@ -184,7 +179,7 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
         // 5 - newList contains credentials in requested order now. Iterate through whole list and
         // change priorities accordingly.
         int expectedPriority = 0;
-        for (CredentialValue credential : credentialsList) {
+        for (UserCredential credential : credentialsList) {
             expectedPriority += PRIORITY_DIFFERENCE;
             if (credential.getPriority() != expectedPriority) {
                 credential.setPriority(expectedPriority);
@@ -193,9 +188,7 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
                         "Priority of credential [%s] of user [%s] changed to [%d]",
                         credential.getId(), user.getUsername(), expectedPriority);
 
-                userEntity.getCredentials().remove(credential);
-                userEntity.getCredentials().add(credential);
-                userRepository.insertOrUpdate(userEntity);
+                userRepository.createOrUpdateCredential(credential);
             }
         }
 
@@ -285,8 +278,37 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
         }
     }
 
-    private CredentialValue fromModel(CredentialModel model) {
-        return CredentialValue.builder()
+    // Loaded only when credentials are actually needed, cached per request by the repository
+    private List<UserCredential> loadCredentials() {
+        // Decided by the flag of the users row, an empty list may also mean that all credentials were removed
+        if (user instanceof CassandraUserAdapter cassandraUser && !cassandraUser.isCredentialsMigrated()) {
+            cassandraUser.migrateLegacyCredentials();
+        }
+
+        return userRepository.findCredentials(realm.getId(), user.getId());
+    }
+
+    private List<UserCredential> getSortedCredentials() {
+        return loadCredentials().stream()
+                .sorted(Comparator.comparing(UserCredential::getPriority))
+                .collect(Collectors.toList());
+    }
+
+    private UserCredential findCredential(String id) {
+        if (id == null) {
+            return null;
+        }
+
+        return loadCredentials().stream()
+                .filter(c -> c.getId().equals(id))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private UserCredential fromModel(CredentialModel model) {
+        return UserCredential.builder()
+                .realmId(realm.getId())
+                .userId(user.getId())
                 .id(model.getId() == null ? KeycloakModelUtils.generateId() : model.getId())
                 .created(model.getCreatedDate())
                 .userLabel(model.getUserLabel())
@@ -296,7 +318,7 @@ public class CassandraCredentialManager implements SubjectCredentialManager {
                 .build();
     }
 
-    private CredentialModel toModel(CredentialValue entity) {
+    private CredentialModel toModel(UserCredential entity) {
         CredentialModel credentialModel = new CredentialModel();
         credentialModel.setId(entity.getId());
         credentialModel.setCreatedDate(entity.getCreated());
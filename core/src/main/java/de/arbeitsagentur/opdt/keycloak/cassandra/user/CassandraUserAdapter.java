@@ -19,6 +19,7 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalModelAdapter;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserCredential;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -55,12 +56,33 @@ public abstract class CassandraUserAdapter extends TransactionalModelAdapter<Use
         this.session = session;
         this.realm = realm;
         this.userRepository = userRepository;
+
+        if (entity.getVersion() != null && entity.getPersistedState() == null) {
+            entity.markPersisted();
+        }
     }
 
     public RealmModel getRealm() {
         return realm;
     }
 
+    /**
+     * Moves credentials still stored in the users row to user_credentials, only reads the row once per user.
+     *
+     * @return the migrated credentials
+     */
+    public List<UserCredential> migrateLegacyCredentials() {
+        if (isCredentialsMigrated()) {
+            return new ArrayList<>();
+        }
+
+        return userRepository.migrateLegacyCredentials(entity);
+    }
+
+    public boolean isCredentialsMigrated() {
+        return Boolean.TRUE.equals(entity.getCredentialsMigrated());
+    }
+
     @Override
     public String getId() {
         return entity.getId();
@@ -284,10 +306,7 @@ public abstract class CassandraUserAdapter extends TransactionalModelAdapter<Use
         String valueToSet = values != null && !values.isEmpty() ? values.get(0) : null;
         if (setSpecialAttributeValue(name, valueToSet)) return;
 
-        User userCopy = entity.toBuilder().build();
         super.setAttribute(name, values);
-
-        addPostUpdateTask(() -> userRepository.deleteAttributeSearchIndex(realm.getId(), userCopy, name));
     }
 
     @Override
@@ -298,10 +317,7 @@ public abstract class CassandraUserAdapter extends TransactionalModelAdapter<Use
 
         if (setSpecialAttributeValue(name, value)) return;
 
-        User userCopy = entity.toBuilder().build();
         super.setAttribute(name, value);
-
-        addPostUpdateTask(() -> userRepository.deleteAttributeSearchIndex(realm.getId(), userCopy, name));
     }
 
     @Override
@@ -311,10 +327,8 @@ public abstract class CassandraUserAdapter extends TransactionalModelAdapter<Use
 
     @Override
     public void removeAttribute(String name) {
-        User userCopy = entity.toBuilder().build();
+        // Search index of changed attributes is maintained by the repository on flush
         super.removeAttribute(name);
-
-        addPostUpdateTask(() -> userRepository.deleteAttributeSearchIndex(realm.getId(), userCopy, name));
     }
 
     @Override
@@ -74,7 +74,7 @@ public class CassandraUserProvider extends TransactionalProvider<User, Cassandra
 
             @Override
             public SubjectCredentialManager credentialManager() {
-                return new CassandraCredentialManager(session, realm, userRepository, this, entity);
+                return new CassandraCredentialManager(session, realm, userRepository, this);
             }
 
             @Override
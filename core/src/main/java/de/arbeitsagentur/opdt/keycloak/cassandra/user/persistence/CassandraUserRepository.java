@@ -15,17 +15,24 @@
  */
 package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence;
 
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
 import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
 import de.arbeitsagentur.opdt.keycloak.cassandra.StreamExtensions;
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.WriteMode;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import lombok.Value;
 import lombok.extern.jbosslog.JBossLog;
 
 @JBossLog
@@ -36,8 +43,21 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
     private static final String SERVICE_ACCOUNT_LINK = "serviceAccountLink";
     private static final String FEDERATION_LINK = "federationLink";
 
+    private static final int BROKER_LOOKUP_CACHE_MAX_SIZE = 10_000;
+
+    private final ExpiringCache<BrokerLookupKey, FederatedIdentityToUserMapping> brokerLookupCache;
+
     public CassandraUserRepository(UserDao dao) {
-        super(dao);
+        this(dao, WriteMode.LIGHTWEIGHT_TRANSACTION, 0);
+    }
+
+    public CassandraUserRepository(UserDao dao, WriteMode writeMode) {
+        this(dao, writeMode, 0);
+    }
+
+    public CassandraUserRepository(UserDao dao, WriteMode writeMode, long brokerLookupCacheTtlMillis) {
+        super(dao, writeMode);
+        this.brokerLookupCache = new ExpiringCache<>(brokerLookupCacheTtlMillis, BROKER_LOOKUP_CACHE_MAX_SIZE);
     }
 
     @Override
@@ -205,40 +225,88 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
 
     @Override
     public void insertOrUpdate(User user) {
+        User previous = user.getPersistedState();
         super.insertOrUpdate(user);
+        user.markPersisted();
 
-        dao.insert(new RealmToUserMapping(user.getRealmId(), user.isServiceAccount(), user.getId()));
+        if (previous == null || previous.isServiceAccount() != user.isServiceAccount()) {
+            dao.insert(new RealmToUserMapping(user.getRealmId(), user.isServiceAccount(), user.getId()));
+        }
 
-        if (user.getUsername() != null) {
+        if (user.getUsername() != null
+                && (previous == null || !Objects.equals(previous.getUsername(), user.getUsername()))) {
             dao.insertOrUpdate(new UserSearchIndex(user.getRealmId(), USERNAME, user.getUsername(), user.getId()));
         }
 
-        if (user.getUsernameCaseInsensitive() != null) {
+        if (user.getUsernameCaseInsensitive() != null
+                && (previous == null
+                        || !Objects.equals(previous.getUsernameCaseInsensitive(), user.getUsernameCaseInsensitive()))) {
             dao.insertOrUpdate(new UserSearchIndex(
                     user.getRealmId(), USERNAME_CASE_INSENSITIVE, user.getUsernameCaseInsensitive(), user.getId()));
         }
 
-        if (user.getEmail() != null && user.getHasEmailChanged()) {
+        if (user.getEmail() != null && (previous == null || !Objects.equals(previous.getEmail(), user.getEmail()))) {
             dao.insertOrUpdate(new UserSearchIndex(user.getRealmId(), EMAIL, user.getEmail(), user.getId()));
         }
 
-        if (user.getServiceAccountClientLink() != null && user.getHasServiceAccountClientLinkChanged()) {
+        if (user.getServiceAccountClientLink() != null
+                && (previous == null
+                        || !Objects.equals(
+                                previous.getServiceAccountClientLink(), user.getServiceAccountClientLink()))) {
             dao.insertOrUpdate(new UserSearchIndex(
                     user.getRealmId(), SERVICE_ACCOUNT_LINK, user.getServiceAccountClientLink(), user.getId()));
         }
 
-        if (user.getFederationLink() != null && user.getHasFederationLinkChanged()) {
+        if (user.getFederationLink() != null
+                && (previous == null || !Objects.equals(previous.getFederationLink(), user.getFederationLink()))) {
             dao.insertOrUpdate(
                     new UserSearchIndex(user.getRealmId(), FEDERATION_LINK, user.getFederationLink(), user.getId()));
         }
 
-        for (Map.Entry<String, List<String>> entry : user.getIndexedAttributes().entrySet()) {
-            entry.getValue()
+        Map<String, List<String>> previousIndexedAttributes =
+                previous == null ? Map.of() : previous.getIndexedAttributes();
+        Map<String, List<String>> indexedAttributes = user.getIndexedAttributes();
+
+        for (Map.Entry<String, List<String>> entry : previousIndexedAttributes.entrySet()) {
+            List<String> currentValues = indexedAttributes.getOrDefault(entry.getKey(), List.of());
+            entry.getValue().stream()
+                    .filter(value -> !currentValues.contains(value))
+                    .forEach(value -> dao.deleteIndex(user.getRealmId(), entry.getKey(), value, user.getId()));
+        }
+
+        for (Map.Entry<String, List<String>> entry : indexedAttributes.entrySet()) {
+            List<String> previousValues = previousIndexedAttributes.getOrDefault(entry.getKey(), List.of());
+            entry.getValue().stream()
+                    .filter(value -> !previousValues.contains(value))
                     .forEach(value -> dao.insertOrUpdate(
                             new UserSearchIndex(user.getRealmId(), entry.getKey(), value, user.getId())));
         }
     }
 
+    @Override
+    protected ResultSet update(User user, long expectedVersion) {
+        if (user.getPersistedState() == null) {
+            return super.update(user, expectedVersion);
+        }
+
+        return dao.updateChangedColumns(user, expectedVersion);
+    }
+
+    @Override
+    protected void updateUnconditionally(User user) {
+        if (user.getPersistedState() == null) {
+            super.updateUnconditionally(user);
+        } else {
+            dao.updateChangedColumnsUnconditionally(user);
+        }
+    }
+
+    @Override
+    protected Long readVersion(User user) {
+        User dbUser = dao.findById(user.getRealmId(), user.getId());
+        return dbUser == null ? null : dbUser.getVersion();
+    }
+
     @Override
     public boolean deleteUser(String realmId, String userId) {
         User user = findUserById(realmId, userId);
@@ -247,8 +315,9 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
             return false;
         }
 
-        dao.delete(user);
+        delete(user);
         dao.deleteRealmToUserMapping(realmId, user.isServiceAccount(), user.getId());
+        dao.deleteCredentialsByUserId(realmId, user.getId());
 
         deleteUsernameSearchIndex(realmId, user);
         deleteEmailSearchIndex(realmId, user);
@@ -266,6 +335,7 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
     public void makeUserServiceAccount(User user, String realmId) {
         user.setServiceAccount(true);
         super.insertOrUpdate(user);
+        user.markPersisted();
 
         dao.deleteRealmToUserMapping(realmId, false, user.getId());
         dao.insert(new RealmToUserMapping(realmId, user.isServiceAccount(), user.getId()));
@@ -281,14 +351,36 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
 
     @Override
     public FederatedIdentity findFederatedIdentityByBrokerUserId(String brokerUserId, String identityProvider) {
-        FederatedIdentityToUserMapping identityToUserMapping =
-                dao.findFederatedIdentityByBrokerUserId(brokerUserId, identityProvider);
+        BrokerLookupKey cacheKey = new BrokerLookupKey(brokerUserId, identityProvider);
+        FederatedIdentityToUserMapping identityToUserMapping = brokerLookupCache.get(cacheKey);
 
         if (identityToUserMapping == null) {
-            return null;
+            long generation = brokerLookupCache.generation(cacheKey);
+            identityToUserMapping = dao.findFederatedIdentityByBrokerUserId(brokerUserId, identityProvider);
+
+            if (identityToUserMapping == null) {
+                return null;
+            }
+
+            if (!identityToUserMapping.isDenormalized()) {
+                FederatedIdentity federatedIdentity =
+                        findFederatedIdentity(identityToUserMapping.getUserId(), identityProvider);
+
+                if (federatedIdentity == null) {
+                    return null;
+                }
+
+                log.debugf(
+                        "Denormalize federated identity mapping for broker user %s of %s",
+                        brokerUserId, identityProvider);
+                identityToUserMapping = FederatedIdentityToUserMapping.fromFederatedIdentity(federatedIdentity);
+                dao.update(identityToUserMapping);
+            }
+
+            brokerLookupCache.put(cacheKey, identityToUserMapping, generation);
         }
 
-        return findFederatedIdentity(identityToUserMapping.getUserId(), identityProvider);
+        return identityToUserMapping.toFederatedIdentity();
     }
 
     @Override
@@ -299,11 +391,9 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
     @Override
     public void createOrUpdateFederatedIdentity(FederatedIdentity federatedIdentity) {
         dao.update(federatedIdentity);
-        FederatedIdentityToUserMapping identityToUserMapping = new FederatedIdentityToUserMapping(
-                federatedIdentity.getBrokerUserId(),
-                federatedIdentity.getIdentityProvider(),
-                federatedIdentity.getUserId());
-        dao.update(identityToUserMapping);
+        dao.update(FederatedIdentityToUserMapping.fromFederatedIdentity(federatedIdentity));
+        brokerLookupCache.invalidate(
+                new BrokerLookupKey(federatedIdentity.getBrokerUserId(), federatedIdentity.getIdentityProvider()));
     }
 
     @Override
@@ -314,11 +404,9 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
             return false;
         }
 
-        FederatedIdentityToUserMapping identityToUserMapping =
-                dao.findFederatedIdentityByBrokerUserId(federatedIdentity.getBrokerUserId(), identityProvider);
-
         dao.delete(federatedIdentity);
-        dao.delete(identityToUserMapping);
+        dao.deleteFederatedIdentityToUserMapping(federatedIdentity.getBrokerUserId(), identityProvider);
+        brokerLookupCache.invalidate(new BrokerLookupKey(federatedIdentity.getBrokerUserId(), identityProvider));
         return true;
     }
 
@@ -356,9 +444,17 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
 
     @Override
     public boolean deleteFederatedIdentitiesByUserId(String userId) {
-        for (FederatedIdentity identity : dao.findFederatedIdentities(userId)) {
-            dao.deleteFederatedIdentityToUserMapping(identity.getBrokerUserId(), identity.getIdentityProvider());
-        }
+        // Delete mappings concurrently instead of one round trip after another
+        CompletableFuture<?>[] mappingDeletions = dao.findFederatedIdentities(userId).all().stream()
+                .map(identity -> {
+                    brokerLookupCache.invalidate(
+                            new BrokerLookupKey(identity.getBrokerUserId(), identity.getIdentityProvider()));
+                    return dao.deleteFederatedIdentityToUserMappingAsync(
+                                    identity.getBrokerUserId(), identity.getIdentityProvider())
+                            .toCompletableFuture();
+                })
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(mappingDeletions).join();
 
         return dao.deleteFederatedIdentitiesByUserId(userId);
     }
@@ -377,4 +473,93 @@ public class CassandraUserRepository extends TransactionalRepository<User, UserD
     public List<UserConsent> findUserConsentsByRealmId(String realmId) {
         return dao.findUserConsentsByRealmId(realmId).all();
     }
+
+    @Override
+    public List<UserCredential> findCredentials(String realmId, String userId) {
+        return dao.findCredentials(realmId, userId).all();
+    }
+
+    @Override
+    public void createOrUpdateCredential(UserCredential credential) {
+        dao.insertOrUpdate(credential);
+    }
+
+    @Override
+    public boolean deleteCredential(String realmId, String userId, String credentialId) {
+        return dao.deleteCredential(realmId, userId, credentialId);
+    }
+
+    // Credentials used to be stored as json-set inside the users-table. Move them to user_credentials on first access.
+    @Override
+    public List<UserCredential> migrateLegacyCredentials(User user) {
+        String realmId = user.getRealmId();
+        String userId = user.getId();
+        LegacyUserCredentials legacyCredentials = dao.findLegacyCredentials(realmId, userId);
+
+        List<UserCredential> credentials = new ArrayList<>();
+        if (legacyCredentials != null && legacyCredentials.getCredentials() != null) {
+            log.debugf(
+                    "Migrate %d legacy credentials of user %s in realm %s",
+                    legacyCredentials.getCredentials().size(), userId, realmId);
+
+            // A previous attempt may have been interrupted after copying, credentials changed since are kept
+            Set<String> copied = dao.findCredentials(realmId, userId).all().stream()
+                    .map(UserCredential::getId)
+                    .collect(Collectors.toSet());
+            legacyCredentials.getCredentials().stream()
+                    .map(value -> UserCredential.fromLegacyValue(realmId, userId, value))
+                    .filter(credential -> !copied.contains(credential.getId()))
+                    .forEach(credentials::add);
+            credentials.forEach(dao::insertOrUpdate);
+        }
+
+        user.setCredentialsMigrated(true);
+        if (user.getPersistedState() != null) {
+            user.getPersistedState().setCredentialsMigrated(true);
+        }
+
+        // Clearing the legacy column is a versioned update of the users row like any other, so it can't overwrite
+        // concurrent changes and concurrent updates based on the previous version fail
+        long currentVersion = user.getVersion();
+        if (!getWriteMode().isConditional()) {
+            dao.markCredentialsMigratedUnconditionally(realmId, userId, currentVersion + 1);
+            setVersion(user, currentVersion + 1);
+            return credentials;
+        }
+
+        ResultSet result = dao.markCredentialsMigrated(realmId, userId, currentVersion + 1, currentVersion);
+        if (result.wasApplied()) {
+            setVersion(user, currentVersion + 1);
+            return credentials;
+        }
+
+        // The row was modified concurrently. The column is cleared in the same statement as the flag is set, so a
+        // retry based on the current version can't lose changes. The entity keeps its version, so that updates based
+        // on it still fail like for any other concurrent modification.
+        while (!result.wasApplied()) {
+            Row row = result.one();
+            if (row == null || row.isNull("version")) {
+                log.debugf("User %s in realm %s was deleted concurrently, migration not completed", userId, realmId);
+                return credentials;
+            }
+
+            long version = row.getLong("version");
+            result = dao.markCredentialsMigrated(realmId, userId, version + 1, version);
+        }
+
+        return credentials;
+    }
+
+    private static void setVersion(User user, long version) {
+        user.setVersion(version);
+        if (user.getPersistedState() != null) {
+            user.getPersistedState().setVersion(version);
+        }
+    }
+
+    @Value
+    private static class BrokerLookupKey {
+        String brokerUserId;
+        String identityProvider;
+    }
 }
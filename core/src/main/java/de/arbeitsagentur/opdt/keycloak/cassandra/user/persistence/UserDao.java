@@ -16,13 +16,24 @@
 package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence;
 
 import com.datastax.oss.driver.api.core.PagingIterable;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.mapper.annotations.*;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.*;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 @Dao
 public interface UserDao extends TransactionalDao<User> {
+    @QueryProvider(providerClass = UserUpdateQueryProvider.class, entityHelpers = User.class)
+    ResultSet updateChangedColumns(User user, long expectedVersion);
+
+    @QueryProvider(
+            providerClass = UserUpdateQueryProvider.class,
+            entityHelpers = User.class,
+            providerMethod = "updateChangedColumnsUnconditionally")
+    void updateChangedColumnsUnconditionally(User user);
+
     @Update
     @StatementAttributes(executionProfileName = "write")
     void update(FederatedIdentity federatedIdentity);
@@ -36,31 +47,31 @@ public interface UserDao extends TransactionalDao<User> {
     void insert(RealmToUserMapping realmToUserMapping);
 
     @Select
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<User> findAll();
 
     @Select(customWhereClause = "realm_id = :realmId AND id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     User findById(String realmId, String id);
 
     @Select(customWhereClause = "realm_id = :realmId AND id IN :ids")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     PagingIterable<User> findByIds(String realmId, List<String> ids);
 
     @Select(customWhereClause = "user_id = :userId AND identity_provider = :identityProvider")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     FederatedIdentity findFederatedIdentity(String userId, String identityProvider);
 
     @Select(customWhereClause = "broker_user_id = :brokerUserId AND identity_provider = :identityProvider")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "lookup-read", idempotence = true)
     FederatedIdentityToUserMapping findFederatedIdentityByBrokerUserId(String brokerUserId, String identityProvider);
 
     @Select(customWhereClause = "user_id = :userId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     PagingIterable<FederatedIdentity> findFederatedIdentities(String userId);
 
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<RealmToUserMapping> findUsersByRealmId(String realmId);
 
     @Delete
@@ -76,7 +87,7 @@ public interface UserDao extends TransactionalDao<User> {
     boolean deleteRealmToUserMapping(String realmId, boolean serviceAccount, String userId);
 
     @Select(customWhereClause = "realm_id = :realmId AND service_account = false")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<RealmToUserMapping> findNonServiceAccountUsersByRealmId(String realmId);
 
     // Search
@@ -85,7 +96,7 @@ public interface UserDao extends TransactionalDao<User> {
     void insertOrUpdate(UserSearchIndex searchIndex);
 
     @Select(customWhereClause = "realm_id = :realmId AND name = :name AND value = :value")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "lookup-read", idempotence = true)
     PagingIterable<UserSearchIndex> findUsers(String realmId, String name, String value);
 
     @Delete
@@ -120,19 +131,54 @@ public interface UserDao extends TransactionalDao<User> {
     @StatementAttributes(executionProfileName = "write")
     boolean deleteFederatedIdentityToUserMapping(String brokerUserId, String identityProvider);
 
+    @Delete(entityClass = FederatedIdentityToUserMapping.class)
+    @StatementAttributes(executionProfileName = "write")
+    CompletionStage<Void> deleteFederatedIdentityToUserMappingAsync(String brokerUserId, String identityProvider);
+
     @Delete(entityClass = FederatedIdentity.class)
     @StatementAttributes(executionProfileName = "write")
     boolean deleteFederatedIdentity(String userId, String identityProvider);
 
     @Select(customWhereClause = "realm_id = :realmId AND user_id = :userId AND client_id = :clientId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     UserConsent findUserConsent(String realmId, String userId, String clientId);
 
     @Select(customWhereClause = "realm_id = :realmId AND user_id = :userId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
     PagingIterable<UserConsent> findUserConsentsByUserId(String realmId, String userId);
 
     @Select(customWhereClause = "realm_id = :realmId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<UserConsent> findUserConsentsByRealmId(String realmId);
+
+    // Credentials
+    @Insert
+    @StatementAttributes(executionProfileName = "write")
+    void insertOrUpdate(UserCredential credential);
+
+    @Select(customWhereClause = "realm_id = :realmId AND user_id = :userId")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
+    PagingIterable<UserCredential> findCredentials(String realmId, String userId);
+
+    @Delete(entityClass = UserCredential.class)
+    @StatementAttributes(executionProfileName = "write")
+    boolean deleteCredential(String realmId, String userId, String id);
+
+    @Delete(entityClass = UserCredential.class, customWhereClause = "realm_id = :realmId AND user_id = :userId")
+    @StatementAttributes(executionProfileName = "write")
+    void deleteCredentialsByUserId(String realmId, String userId);
+
+    @Select(customWhereClause = "realm_id = :realmId AND id = :id")
+    @StatementAttributes(executionProfileName = "read", idempotence = true)
+    LegacyUserCredentials findLegacyCredentials(String realmId, String id);
+
+    @Query("UPDATE ${keyspaceId}.users SET credentials = null, credentials_migrated = true, version = :version "
+            + "WHERE realm_id = :realmId AND id = :id IF version = :expectedVersion")
+    @StatementAttributes(executionProfileName = "write")
+    ResultSet markCredentialsMigrated(String realmId, String id, long version, long expectedVersion);
+
+    @Query("UPDATE ${keyspaceId}.users SET credentials = null, credentials_migrated = true, version = :version "
+            + "WHERE realm_id = :realmId AND id = :id")
+    @StatementAttributes(executionProfileName = "write")
+    void markCredentialsMigratedUnconditionally(String realmId, String id, long version);
 }
@@ -18,6 +18,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.FederatedIdentity;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserConsent;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.UserCredential;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -57,6 +58,10 @@ public interface UserRepository {
 
     FederatedIdentity findFederatedIdentity(String userId, String identityProvider);
 
+    /**
+     * Resolves the user a brokered identity is linked to. The result may be cached and doesn't include the identity
+     * token, use {@link #findFederatedIdentity(String, String)} to read it.
+     */
     FederatedIdentity findFederatedIdentityByBrokerUserId(String brokerUserId, String identityProvider);
 
     List<FederatedIdentity> findFederatedIdentities(String userId);
@@ -82,4 +87,12 @@ public interface UserRepository {
     List<UserConsent> findUserConsentsByUserId(String realmId, String userId);
 
     List<UserConsent> findUserConsentsByRealmId(String realmId);
+
+    List<UserCredential> findCredentials(String realmId, String userId);
+
+    List<UserCredential> migrateLegacyCredentials(User user);
+
+    void createOrUpdateCredential(UserCredential credential);
+
+    boolean deleteCredential(String realmId, String userId, String credentialId);
 }
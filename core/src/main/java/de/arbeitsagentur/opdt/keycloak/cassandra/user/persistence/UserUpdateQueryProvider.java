@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence;
+
+import static com.datastax.oss.driver.api.querybuilder.QueryBuilder.bindMarker;
+import static de.arbeitsagentur.opdt.keycloak.cassandra.ChangedColumns.*;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.mapper.MapperContext;
+import com.datastax.oss.driver.api.mapper.entity.EntityHelper;
+import com.datastax.oss.driver.api.querybuilder.QueryBuilder;
+import com.datastax.oss.driver.api.querybuilder.update.Assignment;
+import com.datastax.oss.driver.api.querybuilder.update.Update;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
+import java.util.*;
+
+/**
+ * Builds an update statement containing only the columns of a {@link User} which differ from its persisted state.
+ * Collections are updated with add / remove operations instead of being rewritten completely.
+ */
+public class UserUpdateQueryProvider {
+    private final CqlSession session;
+    private final EntityHelper<User> userHelper;
+
+    public UserUpdateQueryProvider(MapperContext context, EntityHelper<User> userHelper) {
+        this.session = context.getSession();
+        this.userHelper = userHelper;
+    }
+
+    public ResultSet updateChangedColumns(User user, long expectedVersion) {
+        return execute(user, expectedVersion);
+    }
+
+    public void updateChangedColumnsUnconditionally(User user) {
+        execute(user, null);
+    }
+
+    private ResultSet execute(User user, Long expectedVersion) {
+        User persisted = user.getPersistedState();
+        List<Assignment> assignments = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+
+        assignments.add(Assignment.setColumn("version", bindMarker()));
+        values.add(user.getVersion());
+
+        setIfChanged("username", persisted.getUsername(), user.getUsername(), assignments, values);
+        setIfChanged("email", persisted.getEmail(), user.getEmail(), assignments, values);
+        setIfChanged("first_name", persisted.getFirstName(), user.getFirstName(), assignments, values);
+        setIfChanged("last_name", persisted.getLastName(), user.getLastName(), assignments, values);
+        setIfChanged(
+                "username_case_insensitive",
+                persisted.getUsernameCaseInsensitive(),
+                user.getUsernameCaseInsensitive(),
+                assignments,
+                values);
+        setIfChanged(
+                "service_account_client_link",
+                persisted.getServiceAccountClientLink(),
+                user.getServiceAccountClientLink(),
+                assignments,
+                values);
+        setIfChanged("federation_link", persisted.getFederationLink(), user.getFederationLink(), assignments, values);
+        setIfChanged("enabled", persisted.getEnabled(), user.getEnabled(), assignments, values);
+        setIfChanged("email_verified", persisted.getEmailVerified(), user.getEmailVerified(), assignments, values);
+        setIfChanged("service_account", persisted.isServiceAccount(), user.isServiceAccount(), assignments, values);
+        setIfChanged(
+                "created_timestamp", persisted.getCreatedTimestamp(), user.getCreatedTimestamp(), assignments, values);
+
+        updateSet("realm_roles", persisted.getRealmRoles(), user.getRealmRoles(), assignments, values);
+        updateSet("required_actions", persisted.getRequiredActions(), user.getRequiredActions(), assignments, values);
+        updateSet(
+                "groups_membership", persisted.getGroupsMembership(), user.getGroupsMembership(), assignments, values);
+
+        updateMap("client_roles", persisted.getClientRoles(), user.getClientRoles(), assignments, values);
+        updateMap("attributes", persisted.getAttributes(), user.getAttributes(), assignments, values);
+
+        Update update = QueryBuilder.update(userHelper.getKeyspaceId(), userHelper.getTableId())
+                .set(assignments)
+                .whereColumn("realm_id")
+                .isEqualTo(bindMarker())
+                .whereColumn("id")
+                .isEqualTo(bindMarker());
+        values.add(user.getRealmId());
+        values.add(user.getId());
+
+        if (expectedVersion != null) {
+            update = update.ifColumn("version").isEqualTo(bindMarker());
+            values.add(expectedVersion);
+        }
+
+        // The driver caches prepared statements, so every distinct combination of changed columns is prepared once
+        PreparedStatement preparedStatement = session.prepare(update.build());
+        return session.execute(preparedStatement.bind(values.toArray()).setExecutionProfileName("write"));
+    }
+}
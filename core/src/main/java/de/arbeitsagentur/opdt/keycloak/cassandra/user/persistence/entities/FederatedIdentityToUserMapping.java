@@ -18,6 +18,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities;
 import com.datastax.oss.driver.api.mapper.annotations.CqlName;
 import com.datastax.oss.driver.api.mapper.annotations.Entity;
 import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import java.time.Instant;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -37,4 +38,39 @@ public class FederatedIdentityToUserMapping {
     private String identityProvider;
 
     private String userId;
+
+    // Denormalized from federated_identities to resolve brokered logins with a single read, the token is not copied
+    private String realmId;
+    private String brokerUserName;
+
+    private Instant createdTimestamp;
+
+    public static FederatedIdentityToUserMapping fromFederatedIdentity(FederatedIdentity federatedIdentity) {
+        return FederatedIdentityToUserMapping.builder()
+                .brokerUserId(federatedIdentity.getBrokerUserId())
+                .identityProvider(federatedIdentity.getIdentityProvider())
+                .userId(federatedIdentity.getUserId())
+                .realmId(federatedIdentity.getRealmId())
+                .brokerUserName(federatedIdentity.getBrokerUserName())
+                .createdTimestamp(federatedIdentity.getCreatedTimestamp())
+                .build();
+    }
+
+    /**
+     * Mappings written before the identity fields were denormalized only contain the user id.
+     */
+    public boolean isDenormalized() {
+        return createdTimestamp != null;
+    }
+
+    public FederatedIdentity toFederatedIdentity() {
+        return FederatedIdentity.builder()
+                .userId(userId)
+                .identityProvider(identityProvider)
+                .brokerUserId(brokerUserId)
+                .realmId(realmId)
+                .brokerUserName(brokerUserName)
+                .createdTimestamp(createdTimestamp)
+                .build();
+    }
 }
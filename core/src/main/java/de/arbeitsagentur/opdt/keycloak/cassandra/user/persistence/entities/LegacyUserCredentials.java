@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities;
+
+import com.datastax.oss.driver.api.mapper.annotations.CqlName;
+import com.datastax.oss.driver.api.mapper.annotations.Entity;
+import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.*;
+
+/**
+ * Projection of the legacy {@code credentials} column of the {@code users} table. Credentials are stored in {@link
+ * UserCredential} rows now, this entity is only used to migrate remaining inline credentials on first access.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@CqlName("users")
+public class LegacyUserCredentials {
+    @PartitionKey(0)
+    private String realmId;
+
+    @PartitionKey(1)
+    private String id;
+
+    @Builder.Default
+    private Set<CredentialValue> credentials = new HashSet<>();
+}
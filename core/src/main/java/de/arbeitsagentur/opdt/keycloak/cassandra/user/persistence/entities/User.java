@@ -19,6 +19,7 @@ import com.datastax.oss.driver.api.mapper.annotations.CqlName;
 import com.datastax.oss.driver.api.mapper.annotations.Entity;
 import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
 import com.datastax.oss.driver.api.mapper.annotations.Transient;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.HasAttributes;
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalEntity;
@@ -46,23 +47,12 @@ public class User implements TransactionalEntity, HasAttributes {
 
     private String username;
     private String email;
-
-    @Transient
-    private Boolean hasEmailChanged = true;
-
     private String firstName;
     private String lastName;
     private String usernameCaseInsensitive;
     private String serviceAccountClientLink;
-
-    @Transient
-    private Boolean hasServiceAccountClientLinkChanged = true;
-
     private String federationLink;
 
-    @Transient
-    private Boolean hasFederationLinkChanged = true;
-
     @Builder.Default
     private Boolean enabled = true;
 
@@ -75,9 +65,6 @@ public class User implements TransactionalEntity, HasAttributes {
     @Builder.Default
     private Instant createdTimestamp = Instant.now();
 
-    @Builder.Default
-    private Set<CredentialValue> credentials = new HashSet<>();
-
     @Builder.Default
     private Set<String> requiredActions = new HashSet<>();
 
@@ -93,6 +80,16 @@ public class User implements TransactionalEntity, HasAttributes {
     @Builder.Default
     private Map<String, List<String>> attributes = new HashMap<>();
 
+    // Users created before credentials were moved to user_credentials have null and are migrated on first access
+    @Builder.Default
+    private Boolean credentialsMigrated = true;
+
+    // State as last read from / written to the database, used to determine changed columns on update
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    private User persistedState;
+
     public Map<String, List<String>> getAttributes() {
         if (attributes == null) {
             attributes = new HashMap<>();
@@ -135,23 +132,6 @@ public class User implements TransactionalEntity, HasAttributes {
         return requiredActions;
     }
 
-    public Set<CredentialValue> getCredentials() {
-        if (credentials == null) {
-            credentials = new HashSet<>();
-        }
-        return credentials;
-    }
-
-    public List<CredentialValue> getSortedCredentials() {
-        return getCredentials().stream()
-                .sorted(Comparator.comparing(CredentialValue::getPriority))
-                .collect(Collectors.toList());
-    }
-
-    public boolean hasCredential(String id) {
-        return getCredentials().stream().anyMatch(c -> c.getId().equals(id));
-    }
-
     public Set<String> getGroupsMembership() {
         return this.groupsMembership;
     }
@@ -169,19 +149,17 @@ public class User implements TransactionalEntity, HasAttributes {
         this.groupsMembership.remove(groupId);
     }
 
-    public void setEmail(String email) {
-        this.hasEmailChanged = !Objects.equals(this.email, email);
-        this.email = email;
-    }
-
-    public void setServiceAccountClientLink(String serviceAccountClientLink) {
-        this.hasServiceAccountClientLinkChanged =
-                !Objects.equals(this.serviceAccountClientLink, serviceAccountClientLink);
-        this.serviceAccountClientLink = serviceAccountClientLink;
-    }
-
-    public void setFederationLink(String federationLink) {
-        this.hasFederationLinkChanged = !Objects.equals(this.federationLink, federationLink);
-        this.federationLink = federationLink;
+    public void markPersisted() {
+        this.persistedState = this.toBuilder()
+                .persistedState(null)
+                .requiredActions(new HashSet<>(getRequiredActions()))
+                .groupsMembership(new HashSet<>(getGroupsMembership()))
+                .realmRoles(new HashSet<>(getRealmRoles()))
+                .clientRoles(getClientRoles().entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> new HashSet<>(e.getValue()))))
+                .attributes(getAttributes().entrySet().stream()
+                        .filter(e -> e.getValue() != null)
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> new ArrayList<>(e.getValue()))))
+                .build();
     }
 }
@@ -60,8 +60,11 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
         clientSessionEntity.setTimestamp(TimeAdapter.fromSecondsToMilliseconds(timestamp));
 
         // whenever the timestamp is changed recompute the expiration time
-        setClientSessionExpiration(clientSessionEntity, userSession.getSessionExpirationData(), getClient());
-        userSession.markAsUpdated();
+        setClientSessionExpiration(
+                clientSessionEntity,
+                userSession.getSessionExpirationData(),
+                userSession.getClientExpirationPolicy(getClient()));
+        userSession.markClientSessionAsRefreshed(clientSessionEntity.getClientId());
     }
 
     @Override
@@ -117,7 +120,7 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
                 || !clientSessionEntity.getNotes().get(name).equals(value)) {
             clientSessionEntity.getNotes().put(name, value);
 
-            userSession.markAsUpdated();
+            userSession.markClientSessionAsUpdated(clientSessionEntity.getClientId());
         }
     }
 
@@ -125,7 +128,7 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
     public void removeNote(String name) {
         if (clientSessionEntity.getNotes().containsKey(name)) {
             clientSessionEntity.getNotes().remove(name);
-            userSession.markAsUpdated();
+            userSession.markClientSessionAsUpdated(clientSessionEntity.getClientId());
         }
     }
 
@@ -144,7 +147,7 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
         if (clientSessionEntity.getRedirectUri() == null
                 || !clientSessionEntity.getRedirectUri().equals(uri)) {
             clientSessionEntity.setRedirectUri(uri);
-            userSession.markAsUpdated();
+            userSession.markClientSessionAsUpdated(clientSessionEntity.getClientId());
         }
     }
 
@@ -168,7 +171,7 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
         if (clientSessionEntity.getAction() == null
                 || !clientSessionEntity.getAction().equals(action)) {
             clientSessionEntity.setAction(action);
-            userSession.markAsUpdated();
+            userSession.markClientSessionAsUpdated(clientSessionEntity.getClientId());
         }
     }
 
@@ -182,7 +185,7 @@ public abstract class CassandraAuthenticatedClientSessionAdapter implements Auth
         if (clientSessionEntity.getAuthMethod() == null
                 || !clientSessionEntity.getAuthMethod().equals(method)) {
             clientSessionEntity.setAuthMethod(method);
-            userSession.markAsUpdated();
+            userSession.markClientSessionAsUpdated(clientSessionEntity.getClientId());
         }
     }
 }
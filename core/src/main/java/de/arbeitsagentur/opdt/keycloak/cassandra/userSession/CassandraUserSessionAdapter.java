@@ -20,6 +20,8 @@ import static de.arbeitsagentur.opdt.keycloak.common.ExpirationUtils.isExpired;
 import static org.keycloak.models.Constants.SESSION_NOTE_LIGHTWEIGHT_USER;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.AttributeTypes;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ClientExpirationPolicy;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ExpirationPolicies;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.SessionExpirationData;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
@@ -68,19 +70,38 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
     private final RealmModel realm;
     private final UserSession userSessionEntity;
     private final UserSessionRepository userSessionRepository;
+    private final long refreshWriteWindowMillis;
+    private final ExpirationPolicies expirationPolicies;
 
     private boolean updated = false;
+    private boolean refreshed = false;
     private boolean deleted = false;
+    private Long persistedLastSessionRefresh;
+    private Long persistedExpiration;
+
+    // Client sessions are stored in rows of their own, so only the touched ones are written
+    private final Set<String> updatedClientSessions = new HashSet<>();
+    private final Set<String> refreshedClientSessions = new HashSet<>();
+    private final Set<String> removedClientSessions = new HashSet<>();
+    private final Map<String, Long> persistedClientSessionTimestamps = new HashMap<>();
+    private final Map<String, Long> persistedClientSessionExpirations = new HashMap<>();
 
     public CassandraUserSessionAdapter(
             KeycloakSession session,
             RealmModel realm,
             UserSession userSessionEntity,
-            UserSessionRepository userSessionRepository) {
+            UserSessionRepository userSessionRepository,
+            long refreshWriteWindowMillis,
+            ExpirationPolicies expirationPolicies) {
         this.session = session;
         this.realm = realm;
         this.userSessionEntity = userSessionEntity;
         this.userSessionRepository = userSessionRepository;
+        this.refreshWriteWindowMillis = refreshWriteWindowMillis;
+        this.expirationPolicies = expirationPolicies;
+        this.persistedLastSessionRefresh = userSessionEntity.getLastSessionRefresh();
+        this.persistedExpiration = userSessionEntity.getExpiration();
+        userSessionEntity.getClientSessions().values().forEach(this::markClientSessionAsPersisted);
     }
 
     public UserSession getUserSessionEntity() {
@@ -88,8 +109,18 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
     }
 
     // Updates in AuthenticatedClientSession
-    public void markAsUpdated() {
-        updated = true;
+    public void markClientSessionAsUpdated(String clientId) {
+        updatedClientSessions.add(clientId);
+    }
+
+    // Timestamp updates in AuthenticatedClientSession, which may be coalesced
+    public void markClientSessionAsRefreshed(String clientId) {
+        refreshedClientSessions.add(clientId);
+    }
+
+    private void removeClientSession(String clientId) {
+        userSessionEntity.getClientSessions().remove(clientId);
+        removedClientSessions.add(clientId);
     }
 
     public void markAsDeleted() {
@@ -180,7 +211,7 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
 
         // whenever the lastSessionRefresh is changed recompute the expiration time
         setUserSessionExpiration(userSessionEntity, getSessionExpirationData());
-        updated = true;
+        refreshed = true;
     }
 
     @Override
@@ -205,9 +236,7 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
 
     @Override
     public void removeAuthenticatedClientSessions(Collection<String> removedClientUUIDS) {
-        removedClientUUIDS.forEach(
-                clientId -> userSessionEntity.getClientSessions().remove(clientId));
-        updated = true;
+        removedClientUUIDS.forEach(this::removeClientSession);
     }
 
     @Override
@@ -314,23 +343,96 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
     }
 
     public void flush() {
-        if (updated && !deleted) {
-            setUserSessionExpiration(userSessionEntity, getSessionExpirationData());
+        if (!deleted) {
+            flushUserSession();
+            flushClientSessions();
+        }
+
+        updated = false;
+        refreshed = false;
+        updatedClientSessions.clear();
+        refreshedClientSessions.clear();
+        removedClientSessions.clear();
+    }
+
+    private void flushUserSession() {
+        if (!updated && !refreshed) {
+            return;
+        }
+
+        setUserSessionExpiration(userSessionEntity, getSessionExpirationData());
+        if (updated
+                || !isRefreshCoalesced(
+                        persistedLastSessionRefresh,
+                        persistedExpiration,
+                        userSessionEntity.getLastSessionRefresh(),
+                        userSessionEntity.getExpiration())) {
             userSessionRepository.update(userSessionEntity);
-            updated = false;
+            persistedLastSessionRefresh = userSessionEntity.getLastSessionRefresh();
+            persistedExpiration = userSessionEntity.getExpiration();
         }
     }
 
+    private void flushClientSessions() {
+        for (String clientId : removedClientSessions) {
+            // client sessions may have been created again within the same transaction
+            if (!userSessionEntity.getClientSessions().containsKey(clientId)) {
+                userSessionRepository.removeClientSession(userSessionEntity, clientId);
+                persistedClientSessionTimestamps.remove(clientId);
+                persistedClientSessionExpirations.remove(clientId);
+            }
+        }
+
+        Set<String> touchedClientSessions = new HashSet<>(updatedClientSessions);
+        touchedClientSessions.addAll(refreshedClientSessions);
+        for (String clientId : touchedClientSessions) {
+            AuthenticatedClientSessionValue clientSession =
+                    userSessionEntity.getClientSessions().get(clientId);
+            if (clientSession == null) {
+                continue;
+            }
+
+            if (updatedClientSessions.contains(clientId)
+                    || !isRefreshCoalesced(
+                            persistedClientSessionTimestamps.get(clientId),
+                            persistedClientSessionExpirations.get(clientId),
+                            clientSession.getTimestamp(),
+                            clientSession.getExpiration())) {
+                userSessionRepository.updateClientSession(userSessionEntity, clientSession);
+                markClientSessionAsPersisted(clientSession);
+            }
+        }
+    }
+
+    private void markClientSessionAsPersisted(AuthenticatedClientSessionValue clientSession) {
+        persistedClientSessionTimestamps.put(clientSession.getClientId(), clientSession.getTimestamp());
+        persistedClientSessionExpirations.put(clientSession.getClientId(), clientSession.getExpiration());
+    }
+
+    // Pure refreshes are not written within the write window after the last persisted refresh, so the session may
+    // expire up to the window earlier than its idle timeout. Refreshes are always written once the persisted expiration
+    // is less than the window away, e.g. for short client idle timeouts or close to the max lifespan, and whenever the
+    // expiration becomes earlier than the persisted one, e.g. because of a lifespan or idle timeout override.
+    private boolean isRefreshCoalesced(
+            Long persistedTimestamp, Long persistedExpiration, Long timestamp, Long expiration) {
+        return refreshWriteWindowMillis > 0
+                && persistedTimestamp != null
+                && persistedExpiration != null
+                && timestamp != null
+                && expiration != null
+                && expiration >= persistedExpiration
+                && timestamp - persistedTimestamp < refreshWriteWindowMillis
+                && persistedExpiration - Time.currentTimeMillis() > refreshWriteWindowMillis;
+    }
+
     private boolean filterAndRemoveExpiredClientSessions(AuthenticatedClientSessionValue clientSession) {
         try {
             if (isExpired(clientSession, false)) {
-                userSessionEntity.getClientSessions().remove(clientSession.getClientId());
-                updated = true;
+                removeClientSession(clientSession.getClientId());
                 return false;
             }
         } catch (ModelIllegalStateException ex) {
-            userSessionEntity.getClientSessions().remove(clientSession.getClientId());
-            updated = true;
+            removeClientSession(clientSession.getClientId());
             return false;
         }
 
@@ -350,8 +452,7 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
         ClientModel client = realm.getClientById(clientSession.getClientId());
 
         if (client == null) {
-            userSessionEntity.getClientSessions().remove(clientSession.getClientId());
-            updated = true;
+            removeClientSession(clientSession.getClientId());
 
             // Filter out entities that doesn't have client
             return false;
@@ -367,14 +468,17 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
             @Override
             public void detachFromUserSession() {
                 // TODO: what are the intended semantics of "detach"?
-                userSessionEntity.getClientSessions().remove(clientSessionEntity.getClientId());
-                updated = true;
+                removeClientSession(clientSessionEntity.getClientId());
 
                 this.userSession = null;
             }
         };
     }
 
+    public ClientExpirationPolicy getClientExpirationPolicy(ClientModel client) {
+        return expirationPolicies.of(client);
+    }
+
     public SessionExpirationData getSessionExpirationData() {
         Integer lifespanOverride = getOverride(SESSION_MAX_LIFESPAN_OVERRIDE_ATTRIBUTE);
         Integer idleTimeoutOverride = getOverride(SESSION_IDLE_TIMEOUT_OVERRIDE_ATTRIBUTE);
@@ -386,7 +490,7 @@ public class CassandraUserSessionAdapter implements UserSessionModel {
         Integer clientOfflineIdleTimeoutOverride = getOverride(CLIENT_OFFLINE_IDLE_TIMEOUT_OVERRIDE_ATTRIBUTE);
 
         return SessionExpirationData.builder()
-                .realm(realm)
+                .realmPolicy(expirationPolicies.of(realm))
                 .maxLifespanOverride(lifespanOverride)
                 .idleTimeoutOverride(idleTimeoutOverride)
                 .offlineMaxLifespanOverride(offlineLifespanOverride)
@@ -24,6 +24,7 @@ import static org.keycloak.models.UserSessionModel.CORRESPONDING_SESSION_ID;
 import static org.keycloak.models.UserSessionModel.SessionPersistenceState.TRANSIENT;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.CassandraModelTransaction;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ExpirationPolicies;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.SessionExpirationData;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.UserSessionRepository;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
@@ -34,6 +35,7 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.jbosslog.JBossLog;
 import org.apache.commons.lang3.StringUtils;
@@ -49,6 +51,10 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 public class CassandraUserSessionProvider implements UserSessionProvider {
     private final KeycloakSession session;
     private final UserSessionRepository userSessionRepository;
+    private final long refreshWriteWindowMillis;
+
+    @Getter
+    private final ExpirationPolicies expirationPolicies;
 
     private final Map<String, UserSession> transientUserSessions = new HashMap<>();
     private final Map<String, CassandraUserSessionAdapter> sessionModels = new HashMap<>();
@@ -80,8 +86,13 @@ public class CassandraUserSessionProvider implements UserSessionProvider {
                     return sessionModels.get(origEntity.getId());
                 }
 
-                CassandraUserSessionAdapter cassandraUserSessionAdapter =
-                        new CassandraUserSessionAdapter(session, realm, origEntity, userSessionRepository);
+                CassandraUserSessionAdapter cassandraUserSessionAdapter = new CassandraUserSessionAdapter(
+                        session,
+                        realm,
+                        origEntity,
+                        userSessionRepository,
+                        refreshWriteWindowMillis,
+                        expirationPolicies);
 
                 if (Profile.isFeatureEnabled(Profile.Feature.TRANSIENT_USERS)
                         && origEntity.getNotes().containsKey(SESSION_NOTE_LIGHTWEIGHT_USER)) {
@@ -133,7 +144,11 @@ public class CassandraUserSessionProvider implements UserSessionProvider {
                 : String.valueOf(0);
         entity.getNotes().put(AuthenticatedClientSessionModel.STARTED_AT_NOTE, started);
         setClientSessionExpiration(
-                entity, SessionExpirationData.builder().realm(realm).build(), client);
+                entity,
+                SessionExpirationData.builder()
+                        .realmPolicy(expirationPolicies.of(realm))
+                        .build(),
+                expirationPolicies.of(client));
 
         userSessionRepository.addClientSession(realm, userSessionEntity, entity);
 
@@ -217,7 +232,10 @@ public class CassandraUserSessionProvider implements UserSessionProvider {
 
         entity.setPersistenceState(persistenceState);
         setUserSessionExpiration(
-                entity, SessionExpirationData.builder().realm(realm).build());
+                entity,
+                SessionExpirationData.builder()
+                        .realmPolicy(expirationPolicies.of(realm))
+                        .build());
         if (TRANSIENT == persistenceState) {
             if (id == null) {
                 entity.setId(UUID.randomUUID().toString());
@@ -447,7 +465,9 @@ public class CassandraUserSessionProvider implements UserSessionProvider {
         offlineUserSession.setLastSessionRefresh(currentTime);
         setUserSessionExpiration(
                 offlineUserSession,
-                SessionExpirationData.builder().realm(userSession.getRealm()).build());
+                SessionExpirationData.builder()
+                        .realmPolicy(expirationPolicies.of(userSession.getRealm()))
+                        .build());
 
         CassandraUserSessionAdapter offlineSessionAdapter =
                 entityToAdapterFunc(userSession.getRealm()).apply(offlineUserSession);
@@ -519,8 +539,10 @@ public class CassandraUserSessionProvider implements UserSessionProvider {
         RealmModel realm = clientSession.getRealm();
         setClientSessionExpiration(
                 clientSessionEntity,
-                SessionExpirationData.builder().realm(realm).build(),
-                clientSession.getClient());
+                SessionExpirationData.builder()
+                        .realmPolicy(expirationPolicies.of(realm))
+                        .build(),
+                expirationPolicies.of(clientSession.getClient()));
 
         Optional<UserSession> userSessionEntity = getOfflineUserSessionEntityStream(realm, offlineUserSession.getId())
                 .findFirst();
@@ -23,6 +23,8 @@ import static org.keycloak.userprofile.DeclarativeUserProfileProviderFactory.PRO
 
 import com.google.auto.service.AutoService;
 import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ExpirationPolicies;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.Config;
 import org.keycloak.models.*;
@@ -32,22 +34,44 @@ import org.keycloak.provider.EnvironmentDependentProviderFactory;
 @AutoService(UserSessionProviderFactory.class)
 public class CassandraUserSessionProviderFactory
         implements UserSessionProviderFactory<CassandraUserSessionProvider>, EnvironmentDependentProviderFactory {
+    private long refreshWriteWindowMillis;
+    private ExpirationPolicies expirationPolicies;
 
     @Override
     public CassandraUserSessionProvider create(KeycloakSession session) {
         CassandraConnectionProvider cassandraConnectionProvider =
                 createProviderCached(session, CassandraConnectionProvider.class);
-        return new CassandraUserSessionProvider(session, cassandraConnectionProvider.getRepository());
+        return new CassandraUserSessionProvider(
+                session, cassandraConnectionProvider.getRepository(), refreshWriteWindowMillis, expirationPolicies);
     }
 
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        refreshWriteWindowMillis = TimeUnit.SECONDS.toMillis(config.getInt("refreshWriteWindowSeconds", 0));
+        if (refreshWriteWindowMillis > 0) {
+            log.infov("Coalescing session refreshes within {0} seconds", config.getInt("refreshWriteWindowSeconds"));
+        }
+        expirationPolicies = new ExpirationPolicies(config.getInt("expirationPolicyCacheSize", 10_000));
+    }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {}
+    public void postInit(KeycloakSessionFactory factory) {
+        // Policies are also replaced once the version changes, this only drops the policies of removed entities early
+        factory.register(event -> {
+            if (event instanceof RealmModel.RealmRemovedEvent realmRemoved) {
+                expirationPolicies.invalidateRealm(realmRemoved.getRealm().getId());
+            } else if (event instanceof ClientModel.ClientRemovedEvent clientRemoved) {
+                expirationPolicies.invalidateClient(clientRemoved.getClient().getId());
+            }
+        });
+    }
 
     @Override
-    public void close() {}
+    public void close() {
+        if (expirationPolicies != null) {
+            expirationPolicies.clear();
+        }
+    }
 
     @Override
     public String getId() {
@@ -17,33 +17,24 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
-import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
+import java.util.concurrent.TimeUnit;
 import org.keycloak.common.util.Time;
-import org.keycloak.models.ClientModel;
-import org.keycloak.protocol.oidc.OIDCConfigAttributes;
 
 public class CassandraSessionExpiration {
     public static void setClientSessionExpiration(
-            AuthenticatedClientSessionValue entity, SessionExpirationData expirationData, ClientModel client) {
+            AuthenticatedClientSessionValue entity,
+            SessionExpirationData expirationData,
+            ClientExpirationPolicy clientPolicy) {
         long timestampMillis = entity.getTimestamp() != null ? entity.getTimestamp() : 0L;
         if (Boolean.TRUE.equals(entity.isOffline())) {
-            long sessionExpires = timestampMillis
-                    + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionIdleTimeout());
+            long sessionExpires = timestampMillis + toMillis(expirationData.getOfflineSessionIdleTimeout());
             if (expirationData.isOfflineSessionMaxLifespanEnabled()) {
-                sessionExpires = timestampMillis
-                        + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionMaxLifespan());
-
-                long clientOfflineSessionMaxLifespan;
-                String clientOfflineSessionMaxLifespanPerClient =
-                        client.getAttribute(OIDCConfigAttributes.CLIENT_OFFLINE_SESSION_MAX_LIFESPAN);
-                if (clientOfflineSessionMaxLifespanPerClient != null
-                        && !clientOfflineSessionMaxLifespanPerClient.trim().isEmpty()) {
-                    clientOfflineSessionMaxLifespan = TimeAdapter.fromSecondsToMilliseconds(
-                            Long.parseLong(clientOfflineSessionMaxLifespanPerClient));
-                } else {
-                    clientOfflineSessionMaxLifespan =
-                            TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientOfflineSessionMaxLifespan());
-                }
+                sessionExpires = timestampMillis + toMillis(expirationData.getOfflineSessionMaxLifespan());
+
+                Long clientOfflineSessionMaxLifespanPerClient = clientPolicy.getClientOfflineSessionMaxLifespan();
+                long clientOfflineSessionMaxLifespan = clientOfflineSessionMaxLifespanPerClient != null
+                        ? clientOfflineSessionMaxLifespanPerClient
+                        : toMillis(expirationData.getClientOfflineSessionMaxLifespan());
 
                 if (clientOfflineSessionMaxLifespan > 0) {
                     long clientOfflineSessionMaxExpiration = timestampMillis + clientOfflineSessionMaxLifespan;
@@ -51,20 +42,12 @@ public class CassandraSessionExpiration {
                 }
             }
 
-            long expiration = timestampMillis
-                    + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionIdleTimeout());
-
-            long clientOfflineSessionIdleTimeout;
-            String clientOfflineSessionIdleTimeoutPerClient =
-                    client.getAttribute(OIDCConfigAttributes.CLIENT_OFFLINE_SESSION_IDLE_TIMEOUT);
-            if (clientOfflineSessionIdleTimeoutPerClient != null
-                    && !clientOfflineSessionIdleTimeoutPerClient.trim().isEmpty()) {
-                clientOfflineSessionIdleTimeout =
-                        TimeAdapter.fromSecondsToMilliseconds(Long.parseLong(clientOfflineSessionIdleTimeoutPerClient));
-            } else {
-                clientOfflineSessionIdleTimeout =
-                        TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientOfflineSessionIdleTimeout());
-            }
+            long expiration = timestampMillis + toMillis(expirationData.getOfflineSessionIdleTimeout());
+
+            Long clientOfflineSessionIdleTimeoutPerClient = clientPolicy.getClientOfflineSessionIdleTimeout();
+            long clientOfflineSessionIdleTimeout = clientOfflineSessionIdleTimeoutPerClient != null
+                    ? clientOfflineSessionIdleTimeoutPerClient
+                    : toMillis(expirationData.getClientOfflineSessionIdleTimeout());
 
             if (clientOfflineSessionIdleTimeout > 0) {
                 long clientOfflineSessionIdleExpiration = timestampMillis + clientOfflineSessionIdleTimeout;
@@ -75,20 +58,13 @@ public class CassandraSessionExpiration {
         } else {
             long sessionExpires = timestampMillis
                     + (expirationData.getSsoSessionMaxLifespanRememberMe() > 0
-                            ? TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionMaxLifespanRememberMe())
-                            : TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionMaxLifespan()));
-
-            long clientSessionMaxLifespan;
-            String clientSessionMaxLifespanPerClient =
-                    client.getAttribute(OIDCConfigAttributes.CLIENT_SESSION_MAX_LIFESPAN);
-            if (clientSessionMaxLifespanPerClient != null
-                    && !clientSessionMaxLifespanPerClient.trim().isEmpty()) {
-                clientSessionMaxLifespan =
-                        TimeAdapter.fromSecondsToMilliseconds(Long.parseLong(clientSessionMaxLifespanPerClient));
-            } else {
-                clientSessionMaxLifespan =
-                        TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientSessionMaxLifespan());
-            }
+                            ? toMillis(expirationData.getSsoSessionMaxLifespanRememberMe())
+                            : toMillis(expirationData.getSsoSessionMaxLifespan()));
+
+            Long clientSessionMaxLifespanPerClient = clientPolicy.getClientSessionMaxLifespan();
+            long clientSessionMaxLifespan = clientSessionMaxLifespanPerClient != null
+                    ? clientSessionMaxLifespanPerClient
+                    : toMillis(expirationData.getClientSessionMaxLifespan());
 
             if (clientSessionMaxLifespan > 0) {
                 long clientSessionMaxExpiration = timestampMillis + clientSessionMaxLifespan;
@@ -97,20 +73,13 @@ public class CassandraSessionExpiration {
 
             long expiration = timestampMillis
                     + (expirationData.getSsoSessionIdleTimeoutRememberMe() > 0
-                            ? TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionIdleTimeoutRememberMe())
-                            : TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionIdleTimeout()));
-
-            long clientSessionIdleTimeout;
-            String clientSessionIdleTimeoutPerClient =
-                    client.getAttribute(OIDCConfigAttributes.CLIENT_SESSION_IDLE_TIMEOUT);
-            if (clientSessionIdleTimeoutPerClient != null
-                    && !clientSessionIdleTimeoutPerClient.trim().isEmpty()) {
-                clientSessionIdleTimeout =
-                        TimeAdapter.fromSecondsToMilliseconds(Long.parseLong(clientSessionIdleTimeoutPerClient));
-            } else {
-                clientSessionIdleTimeout =
-                        TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientSessionIdleTimeout());
-            }
+                            ? toMillis(expirationData.getSsoSessionIdleTimeoutRememberMe())
+                            : toMillis(expirationData.getSsoSessionIdleTimeout()));
+
+            Long clientSessionIdleTimeoutPerClient = clientPolicy.getClientSessionIdleTimeout();
+            long clientSessionIdleTimeout = clientSessionIdleTimeoutPerClient != null
+                    ? clientSessionIdleTimeoutPerClient
+                    : toMillis(expirationData.getClientSessionIdleTimeout());
 
             if (clientSessionIdleTimeout > 0) {
                 long clientSessionIdleExpiration = timestampMillis + clientSessionIdleTimeout;
@@ -125,14 +94,11 @@ public class CassandraSessionExpiration {
         long timestampMillis = entity.getTimestamp() != null ? entity.getTimestamp() : 0L;
         long lastSessionRefreshMillis = entity.getLastSessionRefresh() != null ? entity.getLastSessionRefresh() : 0L;
         if (Boolean.TRUE.equals(entity.getOffline())) {
-            long sessionExpires = lastSessionRefreshMillis
-                    + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionIdleTimeout());
+            long sessionExpires = lastSessionRefreshMillis + toMillis(expirationData.getOfflineSessionIdleTimeout());
             if (expirationData.isOfflineSessionMaxLifespanEnabled()) {
-                sessionExpires = timestampMillis
-                        + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionMaxLifespan());
+                sessionExpires = timestampMillis + toMillis(expirationData.getOfflineSessionMaxLifespan());
 
-                long clientOfflineSessionMaxLifespan =
-                        TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientOfflineSessionMaxLifespan());
+                long clientOfflineSessionMaxLifespan = toMillis(expirationData.getClientOfflineSessionMaxLifespan());
 
                 if (clientOfflineSessionMaxLifespan > 0) {
                     long clientOfflineSessionMaxExpiration = timestampMillis + clientOfflineSessionMaxLifespan;
@@ -140,11 +106,9 @@ public class CassandraSessionExpiration {
                 }
             }
 
-            long expiration = lastSessionRefreshMillis
-                    + TimeAdapter.fromSecondsToMilliseconds(expirationData.getOfflineSessionIdleTimeout());
+            long expiration = lastSessionRefreshMillis + toMillis(expirationData.getOfflineSessionIdleTimeout());
 
-            long clientOfflineSessionIdleTimeout =
-                    TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientOfflineSessionIdleTimeout());
+            long clientOfflineSessionIdleTimeout = toMillis(expirationData.getClientOfflineSessionIdleTimeout());
 
             if (clientOfflineSessionIdleTimeout > 0) {
                 long clientOfflineSessionIdleExpiration = Time.currentTimeMillis() + clientOfflineSessionIdleTimeout;
@@ -156,11 +120,10 @@ public class CassandraSessionExpiration {
             long sessionExpires = timestampMillis
                     + (Boolean.TRUE.equals(entity.getRememberMe())
                                     && expirationData.getSsoSessionMaxLifespanRememberMe() > 0
-                            ? TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionMaxLifespanRememberMe())
-                            : TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionMaxLifespan()));
+                            ? toMillis(expirationData.getSsoSessionMaxLifespanRememberMe())
+                            : toMillis(expirationData.getSsoSessionMaxLifespan()));
 
-            long clientSessionMaxLifespan =
-                    TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientSessionMaxLifespan());
+            long clientSessionMaxLifespan = toMillis(expirationData.getClientSessionMaxLifespan());
 
             if (clientSessionMaxLifespan > 0) {
                 long clientSessionMaxExpiration = timestampMillis + clientSessionMaxLifespan;
@@ -170,11 +133,10 @@ public class CassandraSessionExpiration {
             long expiration = lastSessionRefreshMillis
                     + (Boolean.TRUE.equals(entity.getRememberMe())
                                     && expirationData.getSsoSessionIdleTimeoutRememberMe() > 0
-                            ? TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionIdleTimeoutRememberMe())
-                            : TimeAdapter.fromSecondsToMilliseconds(expirationData.getSsoSessionIdleTimeout()));
+                            ? toMillis(expirationData.getSsoSessionIdleTimeoutRememberMe())
+                            : toMillis(expirationData.getSsoSessionIdleTimeout()));
 
-            long clientSessionIdleTimeout =
-                    TimeAdapter.fromSecondsToMilliseconds(expirationData.getClientSessionIdleTimeout());
+            long clientSessionIdleTimeout = toMillis(expirationData.getClientSessionIdleTimeout());
 
             if (clientSessionIdleTimeout > 0) {
                 long clientSessionIdleExpiration = lastSessionRefreshMillis + clientSessionIdleTimeout;
@@ -184,4 +146,9 @@ public class CassandraSessionExpiration {
             entity.setExpiration(Math.min(expiration, sessionExpires));
         }
     }
+
+    // Primitive conversion, avoids boxing on every session refresh
+    private static long toMillis(int seconds) {
+        return TimeUnit.SECONDS.toMillis(seconds);
+    }
 }
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
+
+import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
+import lombok.Value;
+import org.keycloak.models.ClientModel;
+import org.keycloak.protocol.oidc.OIDCConfigAttributes;
+
+/**
+ * Client specific session timeouts in milliseconds, parsed from the client attributes once per client version. Null
+ * if the client doesn't override the timeout of the realm.
+ */
+@Value
+public class ClientExpirationPolicy {
+    Long clientSessionIdleTimeout;
+    Long clientSessionMaxLifespan;
+    Long clientOfflineSessionIdleTimeout;
+    Long clientOfflineSessionMaxLifespan;
+
+    ClientExpirationPolicy(ClientModel client) {
+        clientSessionIdleTimeout = getTimeout(client, OIDCConfigAttributes.CLIENT_SESSION_IDLE_TIMEOUT);
+        clientSessionMaxLifespan = getTimeout(client, OIDCConfigAttributes.CLIENT_SESSION_MAX_LIFESPAN);
+        clientOfflineSessionIdleTimeout = getTimeout(client, OIDCConfigAttributes.CLIENT_OFFLINE_SESSION_IDLE_TIMEOUT);
+        clientOfflineSessionMaxLifespan = getTimeout(client, OIDCConfigAttributes.CLIENT_OFFLINE_SESSION_MAX_LIFESPAN);
+    }
+
+    private static Long getTimeout(ClientModel client, String attribute) {
+        String timeout = client.getAttribute(attribute);
+        if (timeout == null || timeout.trim().isEmpty()) {
+            return null;
+        }
+
+        return TimeAdapter.fromSecondsToMilliseconds(Long.parseLong(timeout));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
+
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Expiration policies of realms and clients, owned by the user session provider factory so that the cached policies
+ * are bounded per node and dropped together with the factory.
+ */
+public class ExpirationPolicies {
+    private final ExpirationPolicyCache<RealmModel, RealmExpirationPolicy> realmPolicies;
+    private final ExpirationPolicyCache<ClientModel, ClientExpirationPolicy> clientPolicies;
+
+    public ExpirationPolicies(int maxSize) {
+        realmPolicies = new ExpirationPolicyCache<>(maxSize, RealmExpirationPolicy::new);
+        clientPolicies = new ExpirationPolicyCache<>(maxSize, ClientExpirationPolicy::new);
+    }
+
+    public RealmExpirationPolicy of(RealmModel realm) {
+        return realmPolicies.get(realm.getId(), realm);
+    }
+
+    public ClientExpirationPolicy of(ClientModel client) {
+        return clientPolicies.get(client.getId(), client);
+    }
+
+    public void invalidateRealm(String realmId) {
+        realmPolicies.invalidate(realmId);
+    }
+
+    public void invalidateClient(String clientId) {
+        clientPolicies.invalidate(clientId);
+    }
+
+    public int size() {
+        return realmPolicies.size() + clientPolicies.size();
+    }
+
+    public void clear() {
+        realmPolicies.clear();
+        clientPolicies.clear();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.TransactionalModelAdapter;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.Value;
+
+/**
+ * Node-local cache of expiration policies by entity id. A policy is reused as long as the version of the entity is
+ * unchanged, models with changes pending in the current transaction (or without version) are never cached.
+ *
+ * <p>The cache holds at most the given number of policies, entries of entities which are no longer used are evicted
+ * after an hour at the latest.
+ */
+class ExpirationPolicyCache<M, P> {
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ExpiringCache<String, VersionedPolicy<P>> policies;
+    private final Function<M, P> policyFactory;
+
+    ExpirationPolicyCache(int maxSize, Function<M, P> policyFactory) {
+        this.policies = new ExpiringCache<>(TTL_MILLIS, maxSize);
+        this.policyFactory = policyFactory;
+    }
+
+    P get(String id, M model) {
+        Long version = model instanceof TransactionalModelAdapter<?> adapter && !adapter.isUpdated()
+                ? adapter.getVersion()
+                : null;
+        if (version == null) {
+            return policyFactory.apply(model);
+        }
+
+        VersionedPolicy<P> cached = policies.get(id);
+        if (cached != null && cached.getVersion() == version) {
+            return cached.getPolicy();
+        }
+
+        long generation = policies.generation(id);
+        P policy = policyFactory.apply(model);
+        policies.put(id, new VersionedPolicy<>(version, policy), generation);
+        return policy;
+    }
+
+    void invalidate(String id) {
+        policies.invalidate(id);
+    }
+
+    void clear() {
+        policies.clear();
+    }
+
+    int size() {
+        return policies.size();
+    }
+
+    @Value
+    private static class VersionedPolicy<P> {
+        long version;
+        P policy;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
+
+import lombok.Value;
+import org.keycloak.models.RealmModel;
+
+/**
+ * Session timeouts of a realm in seconds, read from the realm attributes once per realm version instead of on every
+ * session refresh.
+ */
+@Value
+public class RealmExpirationPolicy {
+    int ssoSessionIdleTimeout;
+    int ssoSessionMaxLifespan;
+    int ssoSessionIdleTimeoutRememberMe;
+    int ssoSessionMaxLifespanRememberMe;
+    int offlineSessionIdleTimeout;
+    int offlineSessionMaxLifespan;
+    boolean offlineSessionMaxLifespanEnabled;
+    int clientSessionIdleTimeout;
+    int clientSessionMaxLifespan;
+    int clientOfflineSessionIdleTimeout;
+    int clientOfflineSessionMaxLifespan;
+
+    RealmExpirationPolicy(RealmModel realm) {
+        ssoSessionIdleTimeout = realm.getSsoSessionIdleTimeout();
+        ssoSessionMaxLifespan = realm.getSsoSessionMaxLifespan();
+        ssoSessionIdleTimeoutRememberMe = realm.getSsoSessionIdleTimeoutRememberMe();
+        ssoSessionMaxLifespanRememberMe = realm.getSsoSessionMaxLifespanRememberMe();
+        offlineSessionIdleTimeout = realm.getOfflineSessionIdleTimeout();
+        offlineSessionMaxLifespan = realm.getOfflineSessionMaxLifespan();
+        offlineSessionMaxLifespanEnabled = realm.isOfflineSessionMaxLifespanEnabled();
+        clientSessionIdleTimeout = realm.getClientSessionIdleTimeout();
+        clientSessionMaxLifespan = realm.getClientSessionMaxLifespan();
+        clientOfflineSessionIdleTimeout = realm.getClientOfflineSessionIdleTimeout();
+        clientOfflineSessionMaxLifespan = realm.getClientOfflineSessionMaxLifespan();
+    }
+}
@@ -19,13 +19,12 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.NoArgsConstructor;
-import org.keycloak.models.RealmModel;
 
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class SessionExpirationData {
-    private RealmModel realm;
+    private RealmExpirationPolicy realmPolicy;
     private Integer maxLifespanOverride;
     private Integer offlineMaxLifespanOverride;
     private Integer clientMaxLifespanOverride;
@@ -36,47 +35,47 @@ public class SessionExpirationData {
     private Integer offlineClientIdleTimeoutOverride;
 
     public int getOfflineSessionMaxLifespan() {
-        return getEffectiveLifespan(offlineMaxLifespanOverride, realm.getOfflineSessionMaxLifespan());
+        return getEffectiveLifespan(offlineMaxLifespanOverride, realmPolicy.getOfflineSessionMaxLifespan());
     }
 
     public int getSsoSessionMaxLifespan() {
-        return getEffectiveLifespan(maxLifespanOverride, realm.getSsoSessionMaxLifespan());
+        return getEffectiveLifespan(maxLifespanOverride, realmPolicy.getSsoSessionMaxLifespan());
     }
 
     public int getSsoSessionMaxLifespanRememberMe() {
-        return realm.getSsoSessionMaxLifespanRememberMe();
+        return realmPolicy.getSsoSessionMaxLifespanRememberMe();
     }
 
     public int getOfflineSessionIdleTimeout() {
-        return getEffectiveLifespan(offlineIdleTimeoutOverride, realm.getOfflineSessionIdleTimeout());
+        return getEffectiveLifespan(offlineIdleTimeoutOverride, realmPolicy.getOfflineSessionIdleTimeout());
     }
 
     public boolean isOfflineSessionMaxLifespanEnabled() {
-        return realm.isOfflineSessionMaxLifespanEnabled();
+        return realmPolicy.isOfflineSessionMaxLifespanEnabled();
     }
 
     public int getSsoSessionIdleTimeoutRememberMe() {
-        return realm.getSsoSessionIdleTimeoutRememberMe();
+        return realmPolicy.getSsoSessionIdleTimeoutRememberMe();
     }
 
     public int getSsoSessionIdleTimeout() {
-        return getEffectiveLifespan(idleTimeoutOverride, realm.getSsoSessionIdleTimeout());
+        return getEffectiveLifespan(idleTimeoutOverride, realmPolicy.getSsoSessionIdleTimeout());
     }
 
     public int getClientOfflineSessionMaxLifespan() {
-        return getEffectiveLifespan(offlineClientMaxLifespanOverride, realm.getClientOfflineSessionMaxLifespan());
+        return getEffectiveLifespan(offlineClientMaxLifespanOverride, realmPolicy.getClientOfflineSessionMaxLifespan());
     }
 
     public int getClientOfflineSessionIdleTimeout() {
-        return getEffectiveLifespan(offlineClientIdleTimeoutOverride, realm.getClientOfflineSessionIdleTimeout());
+        return getEffectiveLifespan(offlineClientIdleTimeoutOverride, realmPolicy.getClientOfflineSessionIdleTimeout());
     }
 
     public int getClientSessionIdleTimeout() {
-        return getEffectiveLifespan(clientIdleTimeoutOverride, realm.getClientSessionIdleTimeout());
+        return getEffectiveLifespan(clientIdleTimeoutOverride, realmPolicy.getClientSessionIdleTimeout());
     }
 
     public int getClientSessionMaxLifespan() {
-        return getEffectiveLifespan(clientMaxLifespanOverride, realm.getClientSessionMaxLifespan());
+        return getEffectiveLifespan(clientMaxLifespanOverride, realmPolicy.getClientSessionMaxLifespan());
     }
 
     private int getEffectiveLifespan(Integer override, int realmLifespan) {
@@ -18,9 +18,11 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence;
 import static org.keycloak.models.UserSessionModel.CORRESPONDING_SESSION_ID;
 import static org.keycloak.models.UserSessionModel.SessionPersistenceState.PERSISTENT;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
 import de.arbeitsagentur.opdt.keycloak.cassandra.StreamExtensions;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AttributeToUserSessionMapping;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.LegacyUserSessionClientSessions;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSessionToAttributeMapping;
 import de.arbeitsagentur.opdt.keycloak.common.TimeAdapter;
@@ -40,9 +42,15 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
     private static final String BROKER_USER_ID = "brokerUserId";
     private static final String BROKER_SESSION_ID = "brokerSessionId";
     private final UserSessionDao dao;
+    private final boolean legacyClientSessionsEnabled;
+
+    public CassandraUserSessionRepository(UserSessionDao dao) {
+        this(dao, true);
+    }
 
     @Override
     public void update(UserSession session) {
+        writeLegacyClientSessions(session);
         insertOrUpdate(session);
     }
 
@@ -88,30 +96,66 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
 
     @Override
     public void addClientSession(RealmModel realm, UserSession session, AuthenticatedClientSessionValue clientSession) {
+        writeLegacyClientSessions(session);
+        boolean newClient = !session.getClientSessions().containsKey(clientSession.getClientId());
+        clientSession.setUserSessionId(session.getId());
         session.getClientSessions().put(clientSession.getClientId(), clientSession);
 
-        UserSessionToAttributeMapping clientIdsAttribute =
-                new UserSessionToAttributeMapping(session.getId(), CLIENT_IDS, new ArrayList<>());
+        if (isPersistent(session)) {
+            insertOrUpdate(clientSession);
+        }
 
-        for (String clientId : session.getClientSessions().keySet()) {
-            clientIdsAttribute.getAttributeValues().add(clientId);
+        // Only the new client id is added to the attribute, the mappings of the other client sessions stay untouched
+        if (newClient) {
+            Integer ttl = calculateAttributeTtl(session);
+            List<String> clientIds = List.of(clientSession.getClientId());
+            AttributeToUserSessionMapping attributeToUserSessionMapping =
+                    new AttributeToUserSessionMapping(CLIENT_IDS, clientSession.getClientId(), session.getId());
+
+            if (ttl == null) {
+                dao.appendAttributeValues(session.getId(), CLIENT_IDS, clientIds);
+                dao.insert(attributeToUserSessionMapping);
+            } else {
+                dao.appendAttributeValues(session.getId(), CLIENT_IDS, clientIds, ttl);
+                dao.insert(attributeToUserSessionMapping, ttl);
+            }
         }
+    }
 
-        if (!clientIdsAttribute.getAttributeValues().isEmpty()) {
-            insertOrUpdate(realm, session, clientIdsAttribute);
+    @Override
+    public void updateClientSession(UserSession session, AuthenticatedClientSessionValue clientSession) {
+        writeLegacyClientSessions(session);
+        if (isPersistent(session)) {
+            clientSession.setUserSessionId(session.getId());
+            insertOrUpdate(clientSession);
         }
+    }
 
-        insertOrUpdate(session);
+    @Override
+    public void removeClientSession(UserSession session, String clientId) {
+        writeLegacyClientSessions(session);
+        if (isPersistent(session)) {
+            dao.deleteClientSession(session.getId(), clientId);
+        }
     }
 
     @Override
     public UserSession findUserSessionById(String id) {
-        return dao.findById(id);
+        UserSession session = dao.findById(id);
+        if (session == null) {
+            return null;
+        }
+
+        dao.findClientSessions(id)
+                .forEach(clientSession -> session.getClientSessions().put(clientSession.getClientId(), clientSession));
+        readLegacyClientSessions(session);
+
+        return session;
     }
 
     @Override
     public List<UserSession> findAll() {
-        return dao.findAll().all();
+        return withClientSessions(dao.findAll().all(), dao.findAllClientSessions());
     }
 
     @Override
@@ -141,6 +185,7 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
         }
 
         dao.deleteUserSession(session);
+        dao.deleteClientSessions(session.getId());
 
         // Attributes
         if (session.getOffline() != null && session.getOffline()) {
@@ -204,7 +249,11 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
                 .map(AttributeToUserSessionMapping::getUserSessionId)
                 .collect(Collectors.toList());
 
-        return dao.findByIds(sessionIds).all();
+        if (sessionIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return withClientSessions(dao.findByIds(sessionIds).all(), dao.findClientSessionsByUserSessionIds(sessionIds));
     }
 
     @Override
@@ -240,9 +289,76 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
         return dao.findAttribute(userSessionId, attributeName);
     }
 
+    private List<UserSession> withClientSessions(
+            List<UserSession> sessions, Iterable<AuthenticatedClientSessionValue> clientSessions) {
+        Map<String, UserSession> sessionsById = new HashMap<>();
+        sessions.forEach(session -> sessionsById.put(session.getId(), session));
+
+        for (AuthenticatedClientSessionValue clientSession : clientSessions) {
+            UserSession session = sessionsById.get(clientSession.getUserSessionId());
+            if (session != null) {
+                session.getClientSessions().put(clientSession.getClientId(), clientSession);
+            }
+        }
+
+        sessions.forEach(this::readLegacyClientSessions);
+        return sessions;
+    }
+
+    // Client sessions used to be stored as a map within the user session. Sessions without client session rows may
+    // still have them there, reading them doesn't write anything.
+    private void readLegacyClientSessions(UserSession session) {
+        if (!legacyClientSessionsEnabled || !session.getClientSessions().isEmpty()) {
+            return;
+        }
+
+        LegacyUserSessionClientSessions legacyClientSessions = dao.findLegacyClientSessions(session.getId());
+        if (legacyClientSessions == null
+                || legacyClientSessions.getClientSessions() == null
+                || legacyClientSessions.getClientSessions().isEmpty()) {
+            return;
+        }
+
+        legacyClientSessions.getClientSessions().forEach((clientId, value) -> {
+            if (value != null) {
+                AuthenticatedClientSessionValue clientSession =
+                        CassandraJsonSerialization.readValue(value, AuthenticatedClientSessionValue.class);
+                clientSession.setUserSessionId(session.getId());
+                clientSession.setClientId(clientId);
+                session.getClientSessions().put(clientId, clientSession);
+            }
+        });
+        session.setLegacyClientIds(new HashSet<>(session.getClientSessions().keySet()));
+    }
+
+    // The first write of a session read with legacy client sessions moves them to rows of their own and clears the
+    // legacy column, so it is only written once per session
+    private void writeLegacyClientSessions(UserSession session) {
+        if (session.getLegacyClientIds() == null) {
+            return;
+        }
+
+        if (isPersistent(session)) {
+            log.debugf(
+                    "Migrate %d legacy client sessions of session %s",
+                    session.getLegacyClientIds().size(), session.getId());
+            session.getLegacyClientIds().stream()
+                    .map(clientId -> session.getClientSessions().get(clientId))
+                    .filter(Objects::nonNull)
+                    .forEach(this::insertOrUpdate);
+            dao.deleteLegacyClientSessions(session.getId());
+        }
+
+        session.setLegacyClientIds(null);
+    }
+
+    private boolean isPersistent(UserSession session) {
+        return (session.getOffline() != null && session.getOffline())
+                || PERSISTENT.equals(session.getPersistenceState());
+    }
+
     private void insertOrUpdate(UserSession session) {
-        if ((session.getOffline() != null && session.getOffline())
-                || PERSISTENT.equals(session.getPersistenceState())) {
+        if (isPersistent(session)) {
             if (session.getExpiration() == null) {
                 dao.insertOrUpdate(session);
             } else {
@@ -253,11 +369,29 @@ public class CassandraUserSessionRepository implements UserSessionRepository {
         }
     }
 
-    private void insertOrUpdate(RealmModel realm, UserSession session, UserSessionToAttributeMapping mapping) {
-        Integer calculatedTtl = session.getExpiration() == null
+    private void insertOrUpdate(AuthenticatedClientSessionValue clientSession) {
+        if (clientSession.getExpiration() == null) {
+            dao.insertOrUpdate(clientSession);
+        } else {
+            // a TTL of 0 would keep an already expired client session forever
+            int ttl = Math.max(
+                    1,
+                    TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
+                            TimeAdapter.fromMilliSecondsToSeconds(
+                                    clientSession.getExpiration() - Time.currentTimeMillis())));
+            dao.insertOrUpdate(clientSession, ttl);
+        }
+    }
+
+    private Integer calculateAttributeTtl(UserSession session) {
+        return session.getExpiration() == null
                 ? null
                 : TimeAdapter.fromLongWithTimeInSecondsToIntegerWithTimeInSeconds(
                         TimeAdapter.fromMilliSecondsToSeconds(session.getExpiration() - Time.currentTimeMillis()));
+    }
+
+    private void insertOrUpdate(RealmModel realm, UserSession session, UserSessionToAttributeMapping mapping) {
+        Integer calculatedTtl = calculateAttributeTtl(session);
 
         if (mapping.getAttributeName().equals(CORRESPONDING_SESSION_ID)) {
             calculatedTtl = realm.getOfflineSessionMaxLifespan() * 2; // Housekeeping
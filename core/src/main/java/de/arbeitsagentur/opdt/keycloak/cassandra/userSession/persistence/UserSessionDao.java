@@ -19,6 +19,8 @@ import com.datastax.oss.driver.api.core.PagingIterable;
 import com.datastax.oss.driver.api.mapper.annotations.*;
 import de.arbeitsagentur.opdt.keycloak.cassandra.BaseDao;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AttributeToUserSessionMapping;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.LegacyUserSessionClientSessions;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSession;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.UserSessionToAttributeMapping;
 import java.util.List;
@@ -26,76 +28,124 @@ import java.util.List;
 @Dao
 public interface UserSessionDao extends BaseDao {
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(UserSession session);
 
     @Update(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(UserSession session, int ttl);
 
     @Select(customWhereClause = "id = :id")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     UserSession findById(String id);
 
     @Select(customWhereClause = "id IN :ids")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     PagingIterable<UserSession> findByIds(List<String> ids);
 
     @Select
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
     PagingIterable<UserSession> findAll();
 
     @Delete
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void deleteUserSession(UserSession session);
 
+    @Select(customWhereClause = "id = :id")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
+    LegacyUserSessionClientSessions findLegacyClientSessions(String id);
+
+    @Query("UPDATE ${keyspaceId}.user_sessions SET client_sessions = null WHERE id = :id")
+    @StatementAttributes(executionProfileName = "session-write")
+    void deleteLegacyClientSessions(String id);
+
     @Delete(entityClass = UserSession.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void deleteUserSession(String id);
 
+    // Client sessions
+    @Update
+    @StatementAttributes(executionProfileName = "session-write")
+    void insertOrUpdate(AuthenticatedClientSessionValue clientSession);
+
+    @Update(ttl = ":ttl")
+    @StatementAttributes(executionProfileName = "session-write")
+    void insertOrUpdate(AuthenticatedClientSessionValue clientSession, int ttl);
+
+    @Select(customWhereClause = "user_session_id = :userSessionId")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
+    PagingIterable<AuthenticatedClientSessionValue> findClientSessions(String userSessionId);
+
+    @Select(customWhereClause = "user_session_id IN :userSessionIds")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
+    PagingIterable<AuthenticatedClientSessionValue> findClientSessionsByUserSessionIds(List<String> userSessionIds);
+
+    @Select
+    @StatementAttributes(executionProfileName = "bulk-scan", idempotence = true)
+    PagingIterable<AuthenticatedClientSessionValue> findAllClientSessions();
+
+    @Delete(entityClass = AuthenticatedClientSessionValue.class)
+    @StatementAttributes(executionProfileName = "session-write")
+    void deleteClientSession(String userSessionId, String clientId);
+
+    @Delete(entityClass = AuthenticatedClientSessionValue.class, customWhereClause = "user_session_id = :userSessionId")
+    @StatementAttributes(executionProfileName = "session-write")
+    void deleteClientSessions(String userSessionId);
+
     // Attributes
     // Tabelle hat keine Non-PK-Columns -> Update nicht möglich, stattdessen Delete + Insert
     @Insert
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insert(AttributeToUserSessionMapping mapping);
 
     @Insert(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insert(AttributeToUserSessionMapping mapping, int ttl);
 
     @Update
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(UserSessionToAttributeMapping mapping);
 
     @Update(ttl = ":ttl")
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     void insertOrUpdate(UserSessionToAttributeMapping mapping, int ttl);
 
+    @Query(
+            "UPDATE ${keyspaceId}.user_sessions_to_attributes SET attribute_values = attribute_values + :attributeValues "
+                    + "WHERE user_session_id = :userSessionId AND attribute_name = :attributeName")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    void appendAttributeValues(String userSessionId, String attributeName, List<String> attributeValues);
+
+    @Query("UPDATE ${keyspaceId}.user_sessions_to_attributes USING TTL :ttl SET attribute_values = attribute_values + "
+            + ":attributeValues WHERE user_session_id = :userSessionId AND attribute_name = :attributeName")
+    @StatementAttributes(executionProfileName = "session-write", idempotence = false)
+    void appendAttributeValues(String userSessionId, String attributeName, List<String> attributeValues, int ttl);
+
     @Select(customWhereClause = "user_session_id = :userSessionId AND attribute_name = :attributeName")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     UserSessionToAttributeMapping findAttribute(String userSessionId, String attributeName);
 
     @Select(customWhereClause = "user_session_id = :userSessionId")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     PagingIterable<UserSessionToAttributeMapping> findAllAttributes(String userSessionId);
 
     @Select(customWhereClause = "attribute_name = :attributeName AND attribute_value = :attributeValue")
-    @StatementAttributes(executionProfileName = "read")
+    @StatementAttributes(executionProfileName = "session-read", idempotence = true)
     PagingIterable<AttributeToUserSessionMapping> findByAttribute(String attributeName, String attributeValue);
 
     @Delete
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     boolean deleteAttributeToUserSessionMapping(AttributeToUserSessionMapping mapping);
 
     @Delete(entityClass = AttributeToUserSessionMapping.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     boolean deleteAttributeToUserSessionMapping(String attributeName, String attributeValue, String userSessionId);
 
     @Delete(entityClass = UserSessionToAttributeMapping.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     boolean deleteAllUserSessionToAttributeMappings(String userSessionId);
 
     @Delete(entityClass = UserSessionToAttributeMapping.class)
-    @StatementAttributes(executionProfileName = "write")
+    @StatementAttributes(executionProfileName = "session-write")
     boolean deleteAttribute(String userSessionId, String attributeName);
 }
@@ -30,6 +30,10 @@ public interface UserSessionRepository {
 
     void addClientSession(RealmModel realmModel, UserSession session, AuthenticatedClientSessionValue clientSession);
 
+    void updateClientSession(UserSession session, AuthenticatedClientSessionValue clientSession);
+
+    void removeClientSession(UserSession session, String clientId);
+
     UserSession findUserSessionById(String id);
 
     List<UserSession> findAll();
@@ -15,6 +15,10 @@
  */
 package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities;
 
+import com.datastax.oss.driver.api.mapper.annotations.ClusteringColumn;
+import com.datastax.oss.driver.api.mapper.annotations.CqlName;
+import com.datastax.oss.driver.api.mapper.annotations.Entity;
+import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import de.arbeitsagentur.opdt.keycloak.common.ExpirableEntity;
 import java.util.HashMap;
@@ -27,9 +31,16 @@ import lombok.*;
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonIgnoreProperties(ignoreUnknown = true) // ignore old "refreshTokenUses"
+@Entity
+@CqlName("user_session_client_sessions")
 public class AuthenticatedClientSessionValue implements ExpirableEntity {
-    private String id;
+    @PartitionKey
+    private String userSessionId;
+
+    @ClusteringColumn
     private String clientId;
+
+    private String id;
     private Long timestamp;
     private Long expiration;
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2022 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities;
+
+import com.datastax.oss.driver.api.mapper.annotations.CqlName;
+import com.datastax.oss.driver.api.mapper.annotations.Entity;
+import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import java.util.Map;
+import lombok.*;
+
+/**
+ * Projection of the legacy {@code client_sessions} column of the {@code user_sessions} table. Client sessions are stored
+ * in {@link AuthenticatedClientSessionValue} rows now, this entity is only read for sessions without such rows.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@CqlName("user_sessions")
+public class LegacyUserSessionClientSessions {
+    @PartitionKey
+    private String id;
+
+    // JSON encoded client sessions by client id
+    private Map<String, String> clientSessions;
+}
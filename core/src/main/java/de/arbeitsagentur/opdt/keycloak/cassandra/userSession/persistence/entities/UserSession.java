@@ -20,9 +20,11 @@ import static org.keycloak.models.UserSessionModel.CORRESPONDING_SESSION_ID;
 import com.datastax.oss.driver.api.mapper.annotations.CqlName;
 import com.datastax.oss.driver.api.mapper.annotations.Entity;
 import com.datastax.oss.driver.api.mapper.annotations.PartitionKey;
+import com.datastax.oss.driver.api.mapper.annotations.Transient;
 import de.arbeitsagentur.opdt.keycloak.common.ExpirableEntity;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import lombok.*;
 import org.keycloak.models.UserSessionModel;
 
@@ -55,9 +57,15 @@ public class UserSession implements ExpirableEntity {
     @Builder.Default
     private Map<String, String> notes = new HashMap<>();
 
+    // Stored as rows of their own, see AuthenticatedClientSessionValue
+    @Transient
     @Builder.Default
     private Map<String, AuthenticatedClientSessionValue> clientSessions = new HashMap<>();
 
+    // Client sessions read from the legacy client_sessions column, written as rows of their own by the first update
+    @Transient
+    private Set<String> legacyClientIds;
+
     private UserSessionModel.SessionPersistenceState persistenceState;
 
     public boolean hasCorrespondingSession() {
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.compatibility;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import lombok.extern.jbosslog.JBossLog;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.PublicKeysWrapper;
+import org.keycloak.keys.PublicKeyLoader;
+import org.keycloak.keys.PublicKeyStorageProvider;
+
+/**
+ * Node-local cache of the public keys of clients and identity providers (e.g. JWKS of a client or an IdP). Keys are
+ * cached per model key until they expire. A lookup of an unknown key reloads them, but at most once per minimum
+ * refresh interval, and concurrent loads of the same model key are collapsed into one. At most the configured number
+ * of model keys is cached, the least recently used ones are evicted first.
+ *
+ * <p>There is no invalidation across nodes: changed keys are picked up by the unknown-key reload or after the cache
+ * time at the latest.
+ */
+@JBossLog
+public class CachingPublicKeyStorageProvider implements PublicKeyStorageProvider {
+    private final ExpiringCache<String, Entry> entries;
+    private final Map<String, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final long maxCacheTimeMillis;
+    private final long minTimeBetweenRequestsMillis;
+    private final CassandraMetrics metrics;
+    private final LongSupplier clock;
+
+    public CachingPublicKeyStorageProvider(
+            long maxCacheTimeMillis, long minTimeBetweenRequestsMillis, int maxCacheSize, CassandraMetrics metrics) {
+        this(maxCacheTimeMillis, minTimeBetweenRequestsMillis, maxCacheSize, metrics, Time::currentTimeMillis);
+    }
+
+    CachingPublicKeyStorageProvider(
+            long maxCacheTimeMillis,
+            long minTimeBetweenRequestsMillis,
+            int maxCacheSize,
+            CassandraMetrics metrics,
+            LongSupplier clock) {
+        // entries carry their own expiration, the time to live of the cache only has to outlast it
+        this.entries = new ExpiringCache<>(maxCacheTimeMillis + minTimeBetweenRequestsMillis, maxCacheSize);
+        this.maxCacheTimeMillis = maxCacheTimeMillis;
+        this.minTimeBetweenRequestsMillis = minTimeBetweenRequestsMillis;
+        this.metrics = metrics;
+        this.clock = clock;
+    }
+
+    @Override
+    public KeyWrapper getFirstPublicKey(String modelKey, String algorithm, PublicKeyLoader loader) {
+        return getPublicKey(modelKey, null, algorithm, loader);
+    }
+
+    @Override
+    public KeyWrapper getPublicKey(String modelKey, String kid, String algorithm, PublicKeyLoader loader) {
+        return getKey(modelKey, loader, keys -> keys.getKeyByKidAndAlg(kid, algorithm));
+    }
+
+    @Override
+    public KeyWrapper getFirstPublicKey(String modelKey, Predicate<KeyWrapper> predicate, PublicKeyLoader loader) {
+        return getKey(modelKey, loader, keys -> keys.getKeyByPredicate(predicate));
+    }
+
+    @Override
+    public List<KeyWrapper> getKeys(String modelKey, PublicKeyLoader loader) {
+        return getEntry(modelKey, loader).keys().getKeys();
+    }
+
+    @Override
+    public boolean reloadKeys(String modelKey, PublicKeyLoader loader) {
+        Entry entry = entries.get(modelKey);
+        if (entry != null && !isRefreshAllowed(entry)) {
+            return false;
+        }
+
+        PublicKeysWrapper previousKeys = entry == null ? null : entry.keys();
+        return load(modelKey, loader, entry).keys() != previousKeys;
+    }
+
+    public void invalidate(String modelKey) {
+        entries.invalidate(modelKey);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public void close() {
+        // noop, the cache is shared by all sessions of this node
+    }
+
+    private KeyWrapper getKey(String modelKey, PublicKeyLoader loader, Function<PublicKeysWrapper, KeyWrapper> lookup) {
+        Entry entry = getEntry(modelKey, loader);
+        KeyWrapper key = lookup.apply(entry.keys());
+
+        // the keys may have been rotated since they were cached
+        if (key == null && isRefreshAllowed(entry)) {
+            log.debugf("Key not found in cached keys of %s, reloading", modelKey);
+            key = lookup.apply(load(modelKey, loader, entry).keys());
+        }
+
+        return key;
+    }
+
+    private Entry getEntry(String modelKey, PublicKeyLoader loader) {
+        Entry entry = entries.get(modelKey);
+        if (entry != null && entry.expiresAt() > clock.getAsLong()) {
+            metrics.recordPublicKeyCacheAccess(true);
+            return entry;
+        }
+
+        metrics.recordPublicKeyCacheAccess(false);
+        return load(modelKey, loader, entry);
+    }
+
+    private boolean isRefreshAllowed(Entry entry) {
+        return clock.getAsLong() - entry.lastRequest() >= minTimeBetweenRequestsMillis;
+    }
+
+    // Only one thread loads the keys of a model key, the others wait for its result
+    private Entry load(String modelKey, PublicKeyLoader loader, Entry previous) {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> running = loading.putIfAbsent(modelKey, future);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            // read before the entry, so that an invalidation during the load keeps the loaded keys out of the cache
+            long generation = entries.generation(modelKey);
+            Entry current = entries.get(modelKey);
+            Entry entry =
+                    current != null && current != previous ? current : loadKeys(modelKey, loader, current, generation);
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(modelKey, future);
+        }
+    }
+
+    private Entry loadKeys(String modelKey, PublicKeyLoader loader, Entry previous, long generation) {
+        long now = clock.getAsLong();
+        long start = System.nanoTime();
+        try {
+            PublicKeysWrapper keys = loader.loadKeys();
+            metrics.recordPublicKeyLoad(System.nanoTime() - start, true);
+
+            long expiresAt = now + maxCacheTimeMillis;
+            if (keys.getExpirationTime() != null) {
+                expiresAt = Math.min(expiresAt, keys.getExpirationTime());
+            }
+
+            Entry entry = new Entry(keys, now, expiresAt);
+            entries.put(modelKey, entry, generation);
+            return entry;
+        } catch (Exception e) {
+            metrics.recordPublicKeyLoad(System.nanoTime() - start, false);
+            if (previous == null) {
+                throw e instanceof RuntimeException runtimeException ? runtimeException : new RuntimeException(e);
+            }
+
+            // keep serving the previous keys, but don't retry before the minimum refresh interval
+            log.warnf(e, "Failed to reload public keys of %s, using the previous keys", modelKey);
+            Entry entry =
+                    new Entry(previous.keys(), now, Math.max(previous.expiresAt(), now + minTimeBetweenRequestsMillis));
+            entries.put(modelKey, entry, generation);
+            return entry;
+        }
+    }
+
+    private record Entry(PublicKeysWrapper keys, long lastRequest, long expiresAt) {}
+}
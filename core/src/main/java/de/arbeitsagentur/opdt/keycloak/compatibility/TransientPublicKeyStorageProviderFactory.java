@@ -22,34 +22,108 @@ import static de.arbeitsagentur.opdt.keycloak.common.ProviderHelpers.createProvi
 import static org.keycloak.userprofile.DeclarativeUserProfileProviderFactory.PROVIDER_PRIORITY;
 
 import com.google.auto.service.AutoService;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProviderFactory;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.jbosslog.JBossLog;
 import org.keycloak.Config;
+import org.keycloak.jose.jwk.JWK;
+import org.keycloak.keys.PublicKeyStorageProvider;
 import org.keycloak.keys.PublicKeyStorageProviderFactory;
+import org.keycloak.keys.PublicKeyStorageUtils;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.IdentityProviderModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
 import org.keycloak.provider.EnvironmentDependentProviderFactory;
 import org.keycloak.provider.ServerInfoAwareProviderFactory;
 
+@JBossLog
 @AutoService(PublicKeyStorageProviderFactory.class)
 public class TransientPublicKeyStorageProviderFactory
-        implements PublicKeyStorageProviderFactory<TransientPublicKeyStorageProvider>,
+        implements PublicKeyStorageProviderFactory<PublicKeyStorageProvider>,
                 EnvironmentDependentProviderFactory,
                 ServerInfoAwareProviderFactory {
+    private boolean cacheEnabled;
+    private long maxCacheTime;
+    private long minTimeBetweenRequests;
+    private int maxCacheSize;
+    private CachingPublicKeyStorageProvider cache;
 
     @Override
-    public TransientPublicKeyStorageProvider create(KeycloakSession session) {
+    public PublicKeyStorageProvider create(KeycloakSession session) {
+        if (cache != null) {
+            return cache;
+        }
+
         return createProviderCached(
                 session, TransientPublicKeyStorageProvider.class, TransientPublicKeyStorageProvider::new);
     }
 
     @Override
-    public void init(Config.Scope config) {}
+    public void init(Config.Scope config) {
+        cacheEnabled = config.getBoolean("cacheEnabled", false);
+        maxCacheTime = config.getLong("maxCacheTime", 86400L);
+        minTimeBetweenRequests = config.getLong("minTimeBetweenRequests", 10L);
+        maxCacheSize = config.getInt("maxCacheSize", 10000);
+    }
 
     @Override
-    public void postInit(KeycloakSessionFactory factory) {}
+    public void postInit(KeycloakSessionFactory factory) {
+        if (!cacheEnabled) {
+            return;
+        }
+
+        log.infov(
+                "Caching public keys of at most {0} clients and IdPs for at most {1} seconds, reloading at most every {2} seconds",
+                maxCacheSize, maxCacheTime, minTimeBetweenRequests);
+        cache = new CachingPublicKeyStorageProvider(
+                TimeUnit.SECONDS.toMillis(maxCacheTime),
+                TimeUnit.SECONDS.toMillis(minTimeBetweenRequests),
+                maxCacheSize,
+                getMetrics(factory));
+
+        // Only invalidates the keys on this node, other nodes rely on the reload of unknown keys or the cache time
+        factory.register(event -> {
+            if (event instanceof ClientModel.ClientUpdatedEvent clientUpdated) {
+                invalidateClient(clientUpdated.getUpdatedClient());
+            } else if (event instanceof ClientModel.ClientRemovedEvent clientRemoved) {
+                invalidateClient(clientRemoved.getClient());
+            } else if (event instanceof RealmModel.IdentityProviderUpdatedEvent idpUpdated) {
+                invalidateIdentityProvider(idpUpdated.getRealm(), idpUpdated.getUpdatedIdentityProvider());
+            } else if (event instanceof RealmModel.IdentityProviderRemovedEvent idpRemoved) {
+                invalidateIdentityProvider(idpRemoved.getRealm(), idpRemoved.getRemovedIdentityProvider());
+            }
+        });
+    }
+
+    // Follows the metrics setting of the connection provider
+    private static CassandraMetrics getMetrics(KeycloakSessionFactory factory) {
+        return factory.getProviderFactory(CassandraConnectionProvider.class)
+                        instanceof CassandraConnectionProviderFactory<?> connectionProviderFactory
+                ? connectionProviderFactory.getMetrics()
+                : CassandraMetrics.NOOP;
+    }
+
+    private void invalidateClient(ClientModel client) {
+        String realmId = client.getRealm().getId();
+        cache.invalidate(PublicKeyStorageUtils.getClientModelCacheKey(realmId, client.getId(), JWK.Use.SIG));
+        cache.invalidate(PublicKeyStorageUtils.getClientModelCacheKey(realmId, client.getId(), JWK.Use.ENCRYPTION));
+    }
+
+    private void invalidateIdentityProvider(RealmModel realm, IdentityProviderModel identityProvider) {
+        cache.invalidate(PublicKeyStorageUtils.getIdpModelCacheKey(realm.getId(), identityProvider.getInternalId()));
+    }
 
     @Override
-    public void close() {}
+    public void close() {
+        if (cache != null) {
+            cache.clear();
+        }
+    }
 
     @Override
     public String getId() {
@@ -68,6 +142,7 @@ public class TransientPublicKeyStorageProviderFactory
 
     @Override
     public Map<String, String> getOperationalInfo() {
-        return Map.of("implementation", "transient (cassandra-extension)");
+        return Map.of(
+                "implementation", cache != null ? "caching (cassandra-extension)" : "transient (cassandra-extension)");
     }
 }
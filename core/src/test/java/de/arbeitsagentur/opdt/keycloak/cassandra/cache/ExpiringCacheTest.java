@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+
+public class ExpiringCacheTest {
+
+    @After
+    public void resetTime() {
+        Time.setOffset(0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60_000, 3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals("1", cache.get("a"));
+
+        cache.put("d", "4");
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("4", cache.get("d"));
+    }
+
+    @Test
+    public void testSizeIsBoundedWhenFull() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(60_000, 100);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertEquals(Integer.valueOf(9_999), cache.get(9_999));
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10_000, 10);
+        cache.put("a", "1");
+
+        Time.setOffset(11);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidationDuringLoadIsNotCached() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(60_000, 10);
+        long generation = cache.generation("a");
+        cache.invalidate("a");
+
+        cache.put("a", "stale", generation);
+
+        assertNull(cache.get("a"));
+    }
+}
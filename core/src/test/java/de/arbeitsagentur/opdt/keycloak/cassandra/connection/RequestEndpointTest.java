@@ -0,0 +1,62 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.connection;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RequestEndpointTest {
+
+    @Test
+    public void testProtocolEndpoints() {
+        assertEquals(
+                "POST /realms/{realm}/protocol/openid-connect/token",
+                RequestEndpoint.of("POST", "/realms/test/protocol/openid-connect/token"));
+        assertEquals(
+                "POST /realms/{realm}/protocol/openid-connect/token/introspect",
+                RequestEndpoint.of("post", "realms/test/protocol/openid-connect/token/introspect"));
+        assertEquals(
+                "GET /realms/{realm}/protocol/openid-connect/**",
+                RequestEndpoint.of("GET", "/realms/test/protocol/openid-connect/unknown/endpoint"));
+        assertEquals(
+                "POST /realms/{realm}/broker/{alias}/endpoint",
+                RequestEndpoint.of("POST", "/realms/test/broker/my-idp/endpoint"));
+    }
+
+    @Test
+    public void testAdminResourceNamesAreNotIncluded() {
+        assertEquals(
+                "GET /admin/realms/{realm}/users/{id}",
+                RequestEndpoint.of("GET", "/admin/realms/test/users/9f3a8c1e-0000-4000-8000-000000000000"));
+        assertEquals(
+                "PUT /admin/realms/{realm}/roles/{id}/**",
+                RequestEndpoint.of("PUT", "/admin/realms/test/roles/some-role-name/composites"));
+        assertEquals(
+                "GET /admin/realms/{realm}/clients/{id}/**",
+                RequestEndpoint.of("GET", "/admin/realms/test/clients/my-client/roles/some-role/users"));
+        assertEquals(
+                "DELETE /admin/realms/{realm}/**",
+                RequestEndpoint.of("DELETE", "/admin/realms/test/some-unknown-resource/name"));
+    }
+
+    @Test
+    public void testUnknownRequests() {
+        assertEquals("GET other", RequestEndpoint.of("GET", "/resources/abc/login/keycloak.v2/css/styles.css"));
+        assertEquals(RequestEndpoint.OTHER, RequestEndpoint.of("PROPFIND", "/realms/test"));
+        assertEquals(RequestEndpoint.NONE, RequestEndpoint.of(null, "/realms/test"));
+    }
+}
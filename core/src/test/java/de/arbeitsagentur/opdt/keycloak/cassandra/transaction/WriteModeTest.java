@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WriteModeTest {
+
+    @Test
+    public void testParseIsCaseInsensitive() {
+        assertEquals(WriteMode.QUORUM, WriteMode.parse("quorum"));
+        assertEquals(WriteMode.QUORUM_READ_VERIFY, WriteMode.parse(" Quorum_Read_Verify "));
+        assertEquals(WriteMode.LIGHTWEIGHT_TRANSACTION, WriteMode.parse("LIGHTWEIGHT_TRANSACTION"));
+    }
+
+    @Test
+    public void testParseListsValidValues() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> WriteMode.parse("LWT"));
+        assertTrue(e.getMessage().contains("QUORUM_READ_VERIFY"));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.compatibility;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.PublicKeysWrapper;
+import org.keycloak.keys.PublicKeyLoader;
+
+public class CachingPublicKeyStorageProviderTest {
+    private static final String MODEL_KEY = "realm::client::sig";
+    private static final String ALGORITHM = "RS256";
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void testKeysAreCachedUntilExpiration() {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 100, CassandraMetrics.NOOP, now::get);
+        CountingLoader loader = new CountingLoader("kid1");
+
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(1, storage.getKeys(MODEL_KEY, loader).size());
+        Assert.assertEquals(1, loader.loads.get());
+
+        now.addAndGet(61_000);
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(2, loader.loads.get());
+
+        storage.invalidate(MODEL_KEY);
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(3, loader.loads.get());
+    }
+
+    @Test
+    public void testUnknownKidReloadIsThrottled() {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 100, CassandraMetrics.NOOP, now::get);
+        CountingLoader loader = new CountingLoader("kid1");
+
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+
+        // rotated keys are not reloaded within the minimum time between requests
+        loader.kid.set("kid2");
+        Assert.assertNull(storage.getPublicKey(MODEL_KEY, "kid2", ALGORITHM, loader));
+        Assert.assertFalse(storage.reloadKeys(MODEL_KEY, loader));
+        Assert.assertEquals(1, loader.loads.get());
+
+        now.addAndGet(11_000);
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid2", ALGORITHM, loader));
+        Assert.assertNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void testFailedReloadKeepsPreviousKeys() {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 100, CassandraMetrics.NOOP, now::get);
+        CountingLoader loader = new CountingLoader("kid1");
+
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+
+        loader.kid.set(null);
+        now.addAndGet(61_000);
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void testConcurrentLoadsAreCollapsed() throws Exception {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 100, CassandraMetrics.NOOP, now::get);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountingLoader loader = new CountingLoader("kid1") {
+            @Override
+            public PublicKeysWrapper loadKeys() throws Exception {
+                started.countDown();
+                loading.await();
+                return super.loadKeys();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            CountDownLatch submitted = new CountDownLatch(16);
+            List<Future<KeyWrapper>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    submitted.countDown();
+                    return storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader);
+                }));
+            }
+
+            // every request either waits for the running load or finds its result in the cache
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(submitted.await(10, TimeUnit.SECONDS));
+            loading.countDown();
+
+            for (Future<KeyWrapper> result : results) {
+                Assert.assertNotNull(result.get());
+            }
+            Assert.assertEquals(1, loader.loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidationDuringLoadIsNotOverwritten() {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 100, CassandraMetrics.NOOP, now::get);
+        AtomicBoolean invalidated = new AtomicBoolean();
+        CountingLoader loader = new CountingLoader("kid1") {
+            @Override
+            public PublicKeysWrapper loadKeys() throws Exception {
+                PublicKeysWrapper keys = super.loadKeys();
+                if (invalidated.compareAndSet(false, true)) {
+                    // e.g. the client was updated while its keys were fetched
+                    storage.invalidate(MODEL_KEY);
+                }
+                return keys;
+            }
+        };
+
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertNotNull(storage.getPublicKey(MODEL_KEY, "kid1", ALGORITHM, loader));
+        Assert.assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void testCacheSizeIsBounded() {
+        CachingPublicKeyStorageProvider storage =
+                new CachingPublicKeyStorageProvider(60_000, 10_000, 2, CassandraMetrics.NOOP, now::get);
+        CountingLoader loader = new CountingLoader("kid1");
+
+        for (String modelKey : List.of("realm::a::sig", "realm::b::sig", "realm::c::sig")) {
+            Assert.assertNotNull(storage.getPublicKey(modelKey, "kid1", ALGORITHM, loader));
+        }
+        Assert.assertEquals(3, loader.loads.get());
+
+        // the least recently used keys were evicted
+        Assert.assertNotNull(storage.getPublicKey("realm::a::sig", "kid1", ALGORITHM, loader));
+        Assert.assertEquals(4, loader.loads.get());
+    }
+
+    // Returns a single key with the current kid and fails if there is none
+    private static class CountingLoader implements PublicKeyLoader {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final AtomicReference<String> kid;
+
+        private CountingLoader(String kid) {
+            this.kid = new AtomicReference<>(kid);
+        }
+
+        @Override
+        public PublicKeysWrapper loadKeys() throws Exception {
+            loads.incrementAndGet();
+            if (kid.get() == null) {
+                throw new IllegalStateException("JWKS endpoint not available");
+            }
+
+            KeyWrapper key = new KeyWrapper();
+            key.setKid(kid.get());
+            key.setAlgorithm(ALGORITHM);
+            return new PublicKeysWrapper(List.of(key));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.metrics.micrometer;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.CqlSessionBuilder;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+import com.google.auto.service.AutoService;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.SpeculativeExecutionStatistics;
+import de.arbeitsagentur.opdt.keycloak.cassandra.metrics.CassandraMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records metrics of the extension and the Cassandra driver in Micrometer's global registry, which Keycloak exposes
+ * on its metrics endpoint.
+ */
+@AutoService(CassandraMetrics.class)
+public class MicrometerCassandraMetrics implements CassandraMetrics {
+    private static final String PREFIX = "keycloak.cassandra";
+
+    private static final List<String> SESSION_METRICS = List.of(
+            "bytes-sent",
+            "bytes-received",
+            "connected-nodes",
+            "cql-requests",
+            "cql-client-timeouts",
+            "cql-prepared-cache-size",
+            "throttling.delay",
+            "throttling.queue-size",
+            "throttling.errors");
+
+    private static final List<String> NODE_METRICS = List.of(
+            "pool.open-connections",
+            "pool.available-streams",
+            "pool.in-flight",
+            "cql-messages",
+            "errors.request.unsent",
+            "errors.request.aborted",
+            "errors.request.write-timeouts",
+            "errors.request.read-timeouts",
+            "errors.request.unavailables",
+            "errors.connection.init",
+            "retries.total",
+            "speculative-executions");
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> requestStatements = new ConcurrentHashMap<>();
+
+    public MicrometerCassandraMetrics() {
+        this(Metrics.globalRegistry);
+    }
+
+    public MicrometerCassandraMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void configureDriver(
+            CqlSessionBuilder sessionBuilder, ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder) {
+        sessionBuilder.withMetricRegistry(registry);
+        configLoaderBuilder
+                .withString(DefaultDriverOption.METRICS_FACTORY_CLASS, "MicrometerMetricsFactory")
+                .withString(DefaultDriverOption.METRICS_ID_GENERATOR_CLASS, "TaggingMetricIdGenerator")
+                .withString(DefaultDriverOption.METRICS_ID_GENERATOR_PREFIX, PREFIX + ".driver")
+                .withStringList(DefaultDriverOption.METRICS_SESSION_ENABLED, SESSION_METRICS)
+                .withStringList(DefaultDriverOption.METRICS_NODE_ENABLED, NODE_METRICS);
+    }
+
+    @Override
+    public void bindSession(CqlSession session) {
+        SpeculativeExecutionStatistics statistics = SpeculativeExecutionStatistics.forSession(session.getName());
+
+        FunctionCounter.builder(
+                        PREFIX + ".speculative.executions",
+                        statistics,
+                        SpeculativeExecutionStatistics::getSpeculativeExecutions)
+                .description("Speculative executions sent")
+                .register(registry);
+        FunctionCounter.builder(
+                        PREFIX + ".speculative.requests",
+                        statistics,
+                        SpeculativeExecutionStatistics::getSpeculativeRequests)
+                .description("Completed requests for which a speculative execution was sent")
+                .register(registry);
+        FunctionCounter.builder(
+                        PREFIX + ".speculative.wins", statistics, SpeculativeExecutionStatistics::getSpeculativeWins)
+                .description("Requests answered by the node of their speculative execution")
+                .register(registry);
+    }
+
+    @Override
+    public void recordRepositoryCall(String entity, String operation, long durationNanos, boolean success) {
+        String outcome = success ? "success" : "error";
+        timers.computeIfAbsent(entity + "." + operation + "." + outcome, key -> Timer.builder(PREFIX + ".repository")
+                        .description("Calls of repository operations which were not answered by the L1 cache")
+                        .tag("entity", entity)
+                        .tag("operation", entity + "." + operation)
+                        .tag("outcome", outcome)
+                        .register(registry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRowsRead(String entity, long rows) {
+        counter(PREFIX + ".rows.read", "entity", entity).increment(rows);
+    }
+
+    @Override
+    public void recordWriteOperation(String entity) {
+        counter(PREFIX + ".write.operations", "entity", entity).increment();
+    }
+
+    @Override
+    public void recordVersionConflict(String entity) {
+        counter(PREFIX + ".version.conflicts", "entity", entity).increment();
+    }
+
+    @Override
+    public void recordL1CacheAccess(String cacheName, boolean hit) {
+        counter(PREFIX + ".l1cache." + (hit ? "hits" : "misses"), "cache", cacheName)
+                .increment();
+    }
+
+    @Override
+    public void recordPublicKeyCacheAccess(boolean hit) {
+        counter(PREFIX + ".publickeys.cache", "result", hit ? "hit" : "miss").increment();
+    }
+
+    @Override
+    public void recordPublicKeyLoad(long durationNanos, boolean success) {
+        String outcome = success ? "success" : "error";
+        timers.computeIfAbsent("publickeys." + outcome, key -> Timer.builder(PREFIX + ".publickeys.loads")
+                        .description("Loads of public keys of clients and identity providers")
+                        .tag("outcome", outcome)
+                        .register(registry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordRequestBudget(String endpoint, int statements, long cassandraNanos) {
+        // endpoint is one of a fixed set of route templates, see RequestEndpoint
+        requestStatements
+                .computeIfAbsent(endpoint, key -> DistributionSummary.builder(PREFIX + ".request.statements")
+                        .tag("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(statements);
+        timers.computeIfAbsent("request." + endpoint, key -> Timer.builder(PREFIX + ".request.time")
+                        .tag("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(cassandraNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Counter counter(String name, String tagKey, String tagValue) {
+        return counters.computeIfAbsent(
+                name + "." + tagValue,
+                key -> Counter.builder(name).tag(tagKey, tagValue).register(registry));
+    }
+}
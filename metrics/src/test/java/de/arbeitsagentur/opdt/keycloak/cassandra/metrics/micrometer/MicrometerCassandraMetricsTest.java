@@ -0,0 +1,107 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.metrics.micrometer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MicrometerCassandraMetricsTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MicrometerCassandraMetrics metrics = new MicrometerCassandraMetrics(registry);
+
+    @Test
+    public void testRepositoryCallsAreTimedPerOperationAndOutcome() {
+        metrics.recordRepositoryCall("user", "findUserById", TimeUnit.MILLISECONDS.toNanos(2), true);
+        metrics.recordRepositoryCall("user", "findUserById", TimeUnit.MILLISECONDS.toNanos(4), true);
+        metrics.recordRepositoryCall("user", "findUserById", TimeUnit.MILLISECONDS.toNanos(8), false);
+
+        Timer success = registry.get("keycloak.cassandra.repository")
+                .tag("entity", "user")
+                .tag("operation", "user.findUserById")
+                .tag("outcome", "success")
+                .timer();
+        Assert.assertEquals(2, success.count());
+        Assert.assertEquals(6, success.totalTime(TimeUnit.MILLISECONDS), 0.001);
+
+        Timer error = registry.get("keycloak.cassandra.repository")
+                .tag("outcome", "error")
+                .timer();
+        Assert.assertEquals(1, error.count());
+    }
+
+    @Test
+    public void testCountersAreTaggedPerEntity() {
+        metrics.recordRowsRead("client", 3);
+        metrics.recordRowsRead("client", 2);
+        metrics.recordWriteOperation("client");
+        metrics.recordWriteOperation("role");
+        metrics.recordVersionConflict("user");
+
+        Assert.assertEquals(5, counter("keycloak.cassandra.rows.read", "entity", "client"), 0);
+        Assert.assertEquals(1, counter("keycloak.cassandra.write.operations", "entity", "client"), 0);
+        Assert.assertEquals(1, counter("keycloak.cassandra.write.operations", "entity", "role"), 0);
+        Assert.assertEquals(1, counter("keycloak.cassandra.version.conflicts", "entity", "user"), 0);
+    }
+
+    @Test
+    public void testCacheAccessesAreCountedAsHitsAndMisses() {
+        metrics.recordL1CacheAccess("userCache", true);
+        metrics.recordL1CacheAccess("userCache", true);
+        metrics.recordL1CacheAccess("userCache", false);
+        metrics.recordPublicKeyCacheAccess(false);
+        metrics.recordPublicKeyLoad(TimeUnit.MILLISECONDS.toNanos(10), true);
+
+        Assert.assertEquals(2, counter("keycloak.cassandra.l1cache.hits", "cache", "userCache"), 0);
+        Assert.assertEquals(1, counter("keycloak.cassandra.l1cache.misses", "cache", "userCache"), 0);
+        Assert.assertEquals(1, counter("keycloak.cassandra.publickeys.cache", "result", "miss"), 0);
+        Assert.assertEquals(
+                1,
+                registry.get("keycloak.cassandra.publickeys.loads")
+                        .tag("outcome", "success")
+                        .timer()
+                        .count());
+    }
+
+    @Test
+    public void testRequestBudgetIsRecordedPerEndpoint() {
+        String endpoint = "POST /realms/{realm}/protocol/openid-connect/token";
+        metrics.recordRequestBudget(endpoint, 4, TimeUnit.MILLISECONDS.toNanos(12));
+
+        Assert.assertEquals(
+                4,
+                registry.get("keycloak.cassandra.request.statements")
+                        .tag("endpoint", endpoint)
+                        .summary()
+                        .totalAmount(),
+                0);
+        Assert.assertEquals(
+                12,
+                registry.get("keycloak.cassandra.request.time")
+                        .tag("endpoint", endpoint)
+                        .timer()
+                        .totalTime(TimeUnit.MILLISECONDS),
+                0.001);
+    }
+
+    private double counter(String name, String tagKey, String tagValue) {
+        Counter counter = registry.get(name).tag(tagKey, tagValue).counter();
+        return counter.count();
+    }
+}
@@ -20,6 +20,11 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.CompositeRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.client.persistence.entities.Client;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
+import de.arbeitsagentur.opdt.keycloak.common.ModelIllegalStateException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -28,8 +33,10 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.hamcrest.core.Is;
 import org.hamcrest.core.IsNull;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.models.*;
+import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.models.utils.RepresentationToModel;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
@@ -883,4 +890,41 @@ public class ClientModelTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    public void testConflictingClientWritesAreRejected() {
+        // plain quorum writes are last-write-wins
+        Assume.assumeTrue(CassandraMapStorage.isInMemory() || CassandraMapStorage.CLIENT_WRITE_MODE.isConditional());
+
+        String id = KeycloakModelUtils.generateId();
+        withRealm(realmId, (session, realm) -> {
+            repository(session)
+                    .insertOrUpdate(Client.builder().realmId(realmId).id(id).build());
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            // a second insert of the same id, e.g. by a concurrent request, must not overwrite the first one
+            assertThrows(ModelDuplicateException.class, () -> repository(session)
+                    .insertOrUpdate(Client.builder().realmId(realmId).id(id).build()));
+
+            // an update based on an outdated version must not overwrite a newer one
+            Client outdated =
+                    Client.builder().realmId(realmId).id(id).version(5L).build();
+            assertThrows(
+                    ModelIllegalStateException.class, () -> repository(session).insertOrUpdate(outdated));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            Client stored = repository(session).getClientById(realmId, id);
+            assertThat(stored.getVersion(), is(1L));
+            repository(session).delete(stored);
+            return null;
+        });
+    }
+
+    private static CompositeRepository repository(KeycloakSession session) {
+        return session.getProvider(CassandraConnectionProvider.class).getRepository();
+    }
 }
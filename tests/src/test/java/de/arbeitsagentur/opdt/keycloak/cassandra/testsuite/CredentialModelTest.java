@@ -2,14 +2,23 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
 
 import static org.junit.Assert.*;
 
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.Row;
+import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.CredentialValue;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.common.crypto.CryptoIntegration;
 import org.keycloak.credential.CredentialModel;
 import org.keycloak.models.*;
 import org.keycloak.models.credential.OTPCredentialModel;
+import org.keycloak.models.credential.PasswordCredentialModel;
 import org.keycloak.services.resources.KeycloakApplication;
 
 /**
@@ -149,6 +158,173 @@ public class CredentialModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    public void testLegacyCredentialsAreMigrated() {
+        // Manipulates rows directly via CQL
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        AtomicReference<String> userId = new AtomicReference<>();
+
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().addUser(realm, "legacy-user");
+            userId.set(user.getId());
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            CredentialValue legacyCredential = CredentialValue.builder()
+                    .id("legacy-otp")
+                    .type(OTPCredentialModel.TYPE)
+                    .userLabel("legacy")
+                    .secretData("{}")
+                    .credentialData("{}")
+                    .priority(10)
+                    .created(1L)
+                    .build();
+
+            CqlSession cqlSession = currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession();
+            // Users written before user_credentials existed have no migration flag
+            cqlSession.execute(
+                    "UPDATE users SET credentials = ?, credentials_migrated = null WHERE realm_id = ? AND id = ?",
+                    Set.of(CassandraJsonSerialization.writeValueAsString(legacyCredential)),
+                    realm.getId(),
+                    userId.get());
+
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().getUserById(realm, userId.get());
+            List<CredentialModel> list =
+                    user.credentialManager().getStoredCredentialsStream().collect(Collectors.toList());
+            assertOrder(list, "legacy-otp");
+            assertEquals("legacy", list.get(0).getUserLabel());
+
+            // The migration increments the version, updates within the same transaction still succeed
+            user.setFirstName("migrated");
+
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            CqlSession cqlSession = currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession();
+            Row row = cqlSession
+                    .execute("SELECT credentials FROM users WHERE realm_id = ? AND id = ?", realm.getId(), userId.get())
+                    .one();
+            assertNotNull(row);
+            assertTrue(row.getSet("credentials", String.class).isEmpty());
+
+            UserModel user = currentSession.users().getUserById(realm, userId.get());
+            assertEquals("migrated", user.getFirstName());
+            assertNotNull(user.credentialManager().getStoredCredentialById("legacy-otp"));
+
+            return null;
+        });
+
+        // Migrated users don't read the legacy column again, even if they have no credentials
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().getUserById(realm, userId.get());
+            user.credentialManager().removeStoredCredentialById("legacy-otp");
+
+            currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "UPDATE users SET credentials = ? WHERE realm_id = ? AND id = ?",
+                            Set.of("{\"id\":\"stale\"}"),
+                            realm.getId(),
+                            userId.get());
+
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().getUserById(realm, userId.get());
+            assertEquals(
+                    0, user.credentialManager().getStoredCredentialsStream().count());
+
+            return null;
+        });
+    }
+
+    @Test
+    public void testInterruptedMigrationDoesNotRestoreRemovedCredentials() {
+        // Manipulates rows directly via CQL
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        String userId = withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().addUser(realm, "concurrent-legacy-user");
+            CredentialValue legacyCredential = CredentialValue.builder()
+                    .id("legacy-password")
+                    .type(PasswordCredentialModel.TYPE)
+                    .secretData("{}")
+                    .credentialData("{}")
+                    .priority(10)
+                    .created(1L)
+                    .build();
+
+            currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "UPDATE users SET credentials = ?, credentials_migrated = null WHERE realm_id = ? AND id = ?",
+                            Set.of(CassandraJsonSerialization.writeValueAsString(legacyCredential)),
+                            realm.getId(),
+                            user.getId());
+            return user.getId();
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().getUserById(realm, userId);
+
+            // A concurrent update of the users row rejects the first attempt to complete the migration
+            CqlSession cqlSession = currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession();
+            long version = cqlSession
+                    .execute("SELECT version FROM users WHERE realm_id = ? AND id = ?", realm.getId(), userId)
+                    .one()
+                    .getLong("version");
+            cqlSession.execute(
+                    "UPDATE users SET version = ? WHERE realm_id = ? AND id = ?", version + 1, realm.getId(), userId);
+
+            assertNotNull(user.credentialManager().getStoredCredentialById("legacy-password"));
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            Row row = currentSession
+                    .getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "SELECT credentials, credentials_migrated FROM users WHERE realm_id = ? AND id = ?",
+                            realm.getId(),
+                            userId)
+                    .one();
+            assertNotNull(row);
+            assertTrue(row.getSet("credentials", String.class).isEmpty());
+            assertTrue(row.getBoolean("credentials_migrated"));
+
+            currentSession
+                    .users()
+                    .getUserById(realm, userId)
+                    .credentialManager()
+                    .removeStoredCredentialById("legacy-password");
+            return null;
+        });
+
+        withRealm(realmId, (currentSession, realm) -> {
+            UserModel user = currentSession.users().getUserById(realm, userId);
+            assertEquals(
+                    0, user.credentialManager().getStoredCredentialsStream().count());
+            return null;
+        });
+    }
+
     private void assertOrder(List<CredentialModel> creds, String... expectedIds) {
         assertEquals(expectedIds.length, creds.size());
 
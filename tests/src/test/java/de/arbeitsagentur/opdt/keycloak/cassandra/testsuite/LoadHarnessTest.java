@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.RequestBudget;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.junit.Assume;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.*;
+import org.keycloak.utils.KeycloakSessionUtil;
+
+/**
+ * Drives complete login flows through the model layer: login (user session, client session and authorization code),
+ * code-to-token exchange, refresh token rotation and logout. Reports throughput, latency percentiles per step and
+ * Cassandra statements per flow. Runs against Cassandra or the in-memory storage, depending on the test parameters.
+ *
+ * <p>Only runs with -Dkeycloak.testsuite.benchmark=true, results are logged. Load can be configured with
+ * -Dkeycloak.testsuite.load.flows, -Dkeycloak.testsuite.load.concurrency, -Dkeycloak.testsuite.load.refreshes and
+ * -Dkeycloak.testsuite.load.users.
+ */
+public class LoadHarnessTest extends KeycloakModelTest {
+    private static final int FLOWS = Integer.getInteger("keycloak.testsuite.load.flows", 2000);
+    private static final int CONCURRENCY = Integer.getInteger("keycloak.testsuite.load.concurrency", 64);
+    private static final int REFRESHES_PER_FLOW = Integer.getInteger("keycloak.testsuite.load.refreshes", 3);
+    private static final int USERS = Integer.getInteger("keycloak.testsuite.load.users", 100);
+    private static final int CODE_LIFESPAN_SECONDS = 60;
+    private static final List<String> STEPS = List.of("login", "code-to-token", "refresh", "logout");
+
+    private final Map<String, Queue<Long>> latencies = new ConcurrentHashMap<>();
+    private final LongAdder statements = new LongAdder();
+    private String realmId;
+    private List<String> userIds;
+
+    @Override
+    protected boolean isUseSameKeycloakSessionFactoryForAllThreads() {
+        return true;
+    }
+
+    @Override
+    public void createEnvironment(KeycloakSession s) {
+        RealmModel realm = createRealm(s, "load-test");
+        realm.setDefaultRole(
+                s.roles().addRealmRole(realm, Constants.DEFAULT_ROLES_ROLE_PREFIX + "-" + realm.getName()));
+        realm.setSsoSessionIdleTimeout(1800);
+        realm.setSsoSessionMaxLifespan(36000);
+        s.clients().addClient(realm, "load-test-client");
+
+        userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add(s.users().addUser(realm, "load-user-" + i).getId());
+        }
+
+        realmId = realm.getId();
+    }
+
+    @Override
+    public void cleanEnvironment(KeycloakSession s) {
+        RealmModel realm = s.realms().getRealm(realmId);
+        s.sessions().removeUserSessions(realm);
+        s.realms().removeRealm(realmId);
+    }
+
+    @Test
+    public void runLoginFlows() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("keycloak.testsuite.benchmark"));
+
+        // warm up prepared statements, connections and caches
+        for (int i = 0; i < Math.min(50, FLOWS); i++) {
+            runFlow(userIds.get(i % userIds.size()));
+        }
+        latencies.clear();
+        statements.reset();
+
+        AtomicInteger remainingFlows = new AtomicInteger(FLOWS);
+        List<Future<Void>> workers = new ArrayList<>();
+
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CONCURRENCY; i++) {
+                workers.add(executor.submit(() -> {
+                    int flow;
+                    while ((flow = remainingFlows.decrementAndGet()) >= 0) {
+                        runFlow(userIds.get(flow % userIds.size()));
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> worker : workers) {
+                worker.get();
+            }
+        }
+        long duration = System.nanoTime() - start;
+
+        assertEquals(FLOWS, latencies.get("logout").size());
+
+        log.infof(
+                "%d login flows with %d virtual threads: %.0f flows/s, %.1f statements/flow",
+                FLOWS, CONCURRENCY, FLOWS / (duration / 1_000_000_000d), statements.sum() / (double) FLOWS);
+
+        for (String step : STEPS) {
+            long[] stepLatencies =
+                    latencies.get(step).stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(stepLatencies);
+            log.infof(
+                    "%s: %d calls, p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                    step,
+                    stepLatencies.length,
+                    percentile(stepLatencies, 0.5),
+                    percentile(stepLatencies, 0.95),
+                    percentile(stepLatencies, 0.99),
+                    stepLatencies[stepLatencies.length - 1] / 1_000_000d);
+        }
+    }
+
+    private void runFlow(String userId) {
+        String code = UUID.randomUUID().toString();
+
+        String userSessionId = step("login", session -> {
+            RealmModel realm = session.getContext().getRealm();
+            UserModel user = session.users().getUserById(realm, userId);
+            UserSessionModel userSession = session.sessions()
+                    .createUserSession(realm, user, user.getUsername(), "127.0.0.1", "form", false, null, null);
+            session.sessions().createClientSession(realm, getClient(session), userSession);
+            session.singleUseObjects().put(code, CODE_LIFESPAN_SECONDS, Map.of("userSessionId", userSession.getId()));
+
+            return userSession.getId();
+        });
+
+        step("code-to-token", session -> {
+            Map<String, String> codeData = session.singleUseObjects().remove(code);
+            assertNotNull(codeData);
+
+            return getClientSession(session, codeData.get("userSessionId"));
+        });
+
+        for (int i = 0; i < REFRESHES_PER_FLOW; i++) {
+            step("refresh", session -> {
+                int now = Time.currentTime();
+                AuthenticatedClientSessionModel clientSession = getClientSession(session, userSessionId);
+                clientSession.getUserSession().setLastSessionRefresh(now);
+                clientSession.setTimestamp(now);
+                clientSession.setRefreshTokenUseCount("tab", clientSession.getRefreshTokenUseCount("tab") + 1);
+
+                return clientSession;
+            });
+        }
+
+        step("logout", session -> {
+            RealmModel realm = session.getContext().getRealm();
+            session.sessions().removeUserSession(realm, session.sessions().getUserSession(realm, userSessionId));
+
+            return null;
+        });
+    }
+
+    // Runs a step like a request: the transaction including its commit is attributed to the session
+    private <R> R step(String name, Function<KeycloakSession, R> what) {
+        long start = System.nanoTime();
+        KeycloakSession session = getFactory().create();
+        KeycloakSession previous = KeycloakSessionUtil.setKeycloakSession(session);
+
+        try {
+            session.getTransactionManager().begin();
+            session.getContext().setRealm(session.realms().getRealm(realmId));
+
+            R result = what.apply(session);
+            session.getTransactionManager().commit();
+            statements.add(RequestBudget.of(session).getStatements());
+
+            return result;
+        } finally {
+            if (session.getTransactionManager().isActive()) {
+                session.getTransactionManager().rollback();
+            }
+            session.close();
+            KeycloakSessionUtil.setKeycloakSession(previous);
+
+            latencies.computeIfAbsent(name, k -> new ConcurrentLinkedQueue<>()).add(System.nanoTime() - start);
+        }
+    }
+
+    private static ClientModel getClient(KeycloakSession session) {
+        return session.clients().getClientByClientId(session.getContext().getRealm(), "load-test-client");
+    }
+
+    private static AuthenticatedClientSessionModel getClientSession(KeycloakSession session, String userSessionId) {
+        UserSessionModel userSession =
+                session.sessions().getUserSession(session.getContext().getRealm(), userSessionId);
+        return userSession.getAuthenticatedClientSessionByClient(
+                getClient(session).getId());
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000d;
+    }
+}
@@ -20,13 +20,30 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertNull;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.models.*;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
 public class LoginFailureModelTest extends KeycloakModelTest {
 
     private String realmId;
 
+    @Override
+    protected boolean isUseSameKeycloakSessionFactoryForAllThreads() {
+        return true;
+    }
+
     @Override
     public void createEnvironment(KeycloakSession s) {
         RealmModel realm = s.realms().createRealm("realm");
@@ -116,4 +133,131 @@ public class LoginFailureModelTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    public void testRemoveAllUserLoginFailuresKeepsOtherRealms() {
+        String otherRealmId = inComittedTransaction(s -> {
+            RealmModel realm = s.realms().createRealm("other-realm");
+            realm.setDefaultRole(
+                    s.roles().addRealmRole(realm, Constants.DEFAULT_ROLES_ROLE_PREFIX + "-" + realm.getName()));
+            return realm.getId();
+        });
+
+        try {
+            List<String> userIds = withRealm(realmId, (s, realm) -> IntStream.range(0, 40)
+                    .mapToObj(i -> s.users().addUser(realm, "user-" + i).getId())
+                    .peek(userId -> s.loginFailures().addUserLoginFailure(realm, userId))
+                    .collect(Collectors.toList()));
+            String otherUserId = withRealm(otherRealmId, (s, realm) -> {
+                String userId = s.users().addUser(realm, "user").getId();
+                s.loginFailures().addUserLoginFailure(realm, userId).incrementFailures();
+                return userId;
+            });
+
+            withRealm(realmId, (s, realm) -> {
+                s.loginFailures().removeAllUserLoginFailures(realm);
+                return null;
+            });
+
+            withRealm(realmId, (s, realm) -> {
+                userIds.forEach(userId -> assertNull(s.loginFailures().getUserLoginFailure(realm, userId)));
+                return null;
+            });
+            withRealm(otherRealmId, (s, realm) -> {
+                UserLoginFailureModel loginFailure = s.loginFailures().getUserLoginFailure(realm, otherUserId);
+                assertThat(loginFailure.getNumFailures(), is(1));
+                return null;
+            });
+        } finally {
+            inComittedTransaction(s -> {
+                s.realms().removeRealm(otherRealmId);
+            });
+        }
+    }
+
+    @Test
+    public void testRemoveAllUserLoginFailuresRemovesLegacyEntries() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        // written before the realm index existed
+        String userId = withRealm(realmId, (s, realm) -> {
+            String id = s.users().addUser(realm, "user").getId();
+            s.getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "INSERT INTO login_failures (user_id, id, realm_id, num_failures) VALUES (?, ?, ?, 3)",
+                            id,
+                            KeycloakModelUtils.generateId(),
+                            realm.getId());
+            return id;
+        });
+
+        // as done once at startup after the upgrade
+        inComittedTransaction(s -> {
+            CassandraConnectionProvider connection = s.getProvider(CassandraConnectionProvider.class);
+            connection
+                    .getCqlSession()
+                    .execute("DELETE FROM data_migrations WHERE name = 'login_failures_by_realm_backfill'");
+            connection.getRepository().backfillLoginFailureRealmIndex();
+        });
+
+        withRealm(realmId, (s, realm) -> {
+            assertThat(s.loginFailures().getUserLoginFailure(realm, userId).getNumFailures(), is(3));
+            s.loginFailures().removeAllUserLoginFailures(realm);
+            return null;
+        });
+
+        withRealm(realmId, (s, realm) -> {
+            assertNull(s.loginFailures().getUserLoginFailure(realm, userId));
+            return null;
+        });
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        String userId = withRealm(realmId, (s, realm) -> s.users().addUser(realm, "user"))
+                .getId();
+        int attempts = 100;
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < attempts; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return withRealm(realmId, (s, realm) -> {
+                        UserLoginFailureProvider loginFailureProvider = s.loginFailures();
+                        UserLoginFailureModel loginFailure = loginFailureProvider.getUserLoginFailure(realm, userId);
+                        if (loginFailure == null) {
+                            loginFailure = loginFailureProvider.addUserLoginFailure(realm, userId);
+                        }
+
+                        loginFailure.setLastIPFailure("some-ip");
+                        loginFailure.incrementFailures();
+                        loginFailure.incrementTemporaryLockouts();
+                        return null;
+                    });
+                }));
+            }
+            start.countDown();
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        withRealm(realmId, (s, realm) -> {
+            UserLoginFailureModel loginFailure = s.loginFailures().getUserLoginFailure(realm, userId);
+
+            // no increment is lost, and concurrent first failures share a single login failure
+            assertThat(loginFailure.getNumFailures(), is(attempts));
+            assertThat(loginFailure.getNumTemporaryLockouts(), is(attempts));
+            assertThat(loginFailure.getLastIPFailure(), is("some-ip"));
+
+            return null;
+        });
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ModelDuplicateException;
+
+public class SingleUseObjectConcurrencyTest extends KeycloakModelTest {
+    private static final int THREADS = 32;
+    private static final int ATTEMPTS = 200;
+
+    @Override
+    protected boolean isUseSameKeycloakSessionFactoryForAllThreads() {
+        return true;
+    }
+
+    @Test
+    public void testConcurrentPutIfAbsent() throws Exception {
+        String key = UUID.randomUUID().toString();
+
+        int successes = hammer(session -> session.singleUseObjects().putIfAbsent(key, 60));
+
+        Assert.assertEquals(1, successes);
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        String key = UUID.randomUUID().toString();
+
+        int successes = hammer(session -> {
+            try {
+                session.singleUseObjects().put(key, 60, Map.of("foo", "bar"));
+                return true;
+            } catch (ModelDuplicateException e) {
+                return false;
+            }
+        });
+
+        Assert.assertEquals(1, successes);
+    }
+
+    @Test
+    public void testConcurrentRemove() throws Exception {
+        String key = UUID.randomUUID().toString();
+        inComittedTransaction(session -> {
+            session.singleUseObjects().put(key, 60, Map.of("foo", "bar"));
+        });
+
+        int successes = hammer(session -> {
+            Map<String, String> notes = session.singleUseObjects().remove(key);
+            if (notes == null) {
+                return false;
+            }
+
+            Assert.assertEquals("bar", notes.get("foo"));
+            return true;
+        });
+
+        Assert.assertEquals(1, successes);
+    }
+
+    // Runs the operation on the same key in many transactions at once and counts the successful ones
+    private int hammer(Predicate<KeycloakSession> operation) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < ATTEMPTS; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return inComittedTransaction(operation::test);
+                }));
+            }
+            start.countDown();
+
+            int successes = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    successes++;
+                }
+            }
+
+            return successes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -18,6 +18,9 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.cache.ExpiringCache;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.singleUseObject.CassandraSingleUseObjectProvider;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -163,6 +166,55 @@ public class SingleUseObjectModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    public void testNegativeCache() {
+        ExpiringCache<String, Boolean> missingKeys = new ExpiringCache<>(60_000, 100);
+        String key = UUID.randomUUID().toString();
+        String otherNodeKey = UUID.randomUUID().toString();
+
+        inComittedTransaction(session -> {
+            SingleUseObjectProvider singleUseStore = new CassandraSingleUseObjectProvider(
+                    session.getProvider(CassandraConnectionProvider.class).getRepository(), missingKeys);
+
+            Assert.assertNull(singleUseStore.get(key));
+            Assert.assertNull(singleUseStore.get(otherNodeKey));
+
+            // local writes are visible immediately
+            Assert.assertTrue(singleUseStore.putIfAbsent(key, 60));
+            Assert.assertNotNull(singleUseStore.get(key));
+            Assert.assertFalse(singleUseStore.putIfAbsent(key, 60));
+        });
+
+        // writes of other nodes are hidden from get by cached misses, but never from contains or conditional operations
+        inComittedTransaction(session -> {
+            session.singleUseObjects().put(otherNodeKey, 60, Map.of("foo", "bar"));
+        });
+        inComittedTransaction(session -> {
+            SingleUseObjectProvider singleUseStore = new CassandraSingleUseObjectProvider(
+                    session.getProvider(CassandraConnectionProvider.class).getRepository(), missingKeys);
+
+            Assert.assertNull(singleUseStore.get(otherNodeKey));
+            Assert.assertTrue(singleUseStore.contains(otherNodeKey));
+            Assert.assertFalse(singleUseStore.putIfAbsent(otherNodeKey, 60));
+            Assert.assertEquals("bar", singleUseStore.remove(otherNodeKey).get("foo"));
+        });
+    }
+
+    @Test
+    public void testNegativeCacheIgnoresMissesReadDuringWrite() {
+        ExpiringCache<String, Boolean> missingKeys = new ExpiringCache<>(60_000, 100);
+        String key = UUID.randomUUID().toString();
+
+        // a miss read before a concurrent write of the same key completed must not be cached
+        long generation = missingKeys.generation(key);
+        missingKeys.invalidate(key);
+        missingKeys.put(key, Boolean.TRUE, generation);
+        Assert.assertNull(missingKeys.get(key));
+
+        missingKeys.put(key, Boolean.TRUE, missingKeys.generation(key));
+        Assert.assertEquals(Boolean.TRUE, missingKeys.get(key));
+    }
+
     private void sleep(int waitTimeMs) {
         try {
             Thread.sleep(waitTimeMs);
@@ -19,6 +19,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import org.keycloak.common.crypto.CryptoIntegration;
 import org.keycloak.models.*;
@@ -50,4 +51,18 @@ public class StartupTest extends KeycloakModelTest {
             session.realms().removeRealm(masterRealm.getId());
         });
     }
+
+    @Test
+    public void testFactoryStartupTime() {
+        long start = System.nanoTime();
+        reinitializeKeycloakSessionFactory();
+        long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.infof("Keycloak session factory started in %d ms", startupMillis);
+
+        inComittedTransaction(session -> {
+            RealmModel realm = session.realms().createRealm("startup-test");
+            assertNotNull(session.realms().getRealm(realm.getId()));
+            session.realms().removeRealm(realm.getId());
+        });
+    }
 }
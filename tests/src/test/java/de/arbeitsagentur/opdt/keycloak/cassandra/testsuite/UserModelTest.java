@@ -21,6 +21,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import com.datastax.oss.driver.api.core.cql.Row;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
 import de.arbeitsagentur.opdt.keycloak.cassandra.user.CassandraUserAdapter;
 import java.util.*;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -29,6 +32,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.*;
@@ -1622,4 +1626,100 @@ public class UserModelTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    public void testFederatedIdentityLookupWithLegacyMapping() {
+        // Manipulates rows directly via CQL
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        String userId = withRealm(originalRealmId, (session, realm) -> {
+            UserModel user = session.users().addUser(realm, "brokeredUser");
+            session.users()
+                    .addFederatedIdentity(
+                            realm,
+                            user,
+                            new FederatedIdentityModel("legacyProvider", "legacyBrokerUserId", "legacyName"));
+
+            // Simulate a mapping row written before the identity fields were denormalized
+            session.getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "UPDATE federated_identity_to_user_mapping SET created_timestamp = null, realm_id = null, "
+                                    + "broker_user_name = null WHERE broker_user_id = ? AND identity_provider = ?",
+                            "legacyBrokerUserId",
+                            "legacyProvider");
+
+            return user.getId();
+        });
+
+        withRealm(originalRealmId, (session, realm) -> {
+            UserModel user = session.users()
+                    .getUserByFederatedIdentity(
+                            realm, new FederatedIdentityModel("legacyProvider", "legacyBrokerUserId", null));
+            assertThat(user.getId(), is(userId));
+            assertThat(
+                    session.users()
+                            .getFederatedIdentity(realm, user, "legacyProvider")
+                            .getUserName(),
+                    is("legacyName"));
+
+            Row row = session.getProvider(CassandraConnectionProvider.class)
+                    .getCqlSession()
+                    .execute(
+                            "SELECT broker_user_name FROM federated_identity_to_user_mapping "
+                                    + "WHERE broker_user_id = ? AND identity_provider = ?",
+                            "legacyBrokerUserId",
+                            "legacyProvider")
+                    .one();
+            assertThat(row.getString("broker_user_name"), is("legacyName"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testIndexedAttributeUpdatesSearchIndex() {
+        String userId = withRealm(originalRealmId, (session, realm) -> {
+            UserModel user = session.users().addUser(realm, "indexed-user");
+            user.setSingleAttribute("indexed.department", "sales");
+            return user.getId();
+        });
+
+        withRealm(originalRealmId, (session, realm) -> {
+            UserModel user = session.users().getUserById(realm, userId);
+            user.setLastName("changed");
+            user.setSingleAttribute("indexed.department", "marketing");
+            return null;
+        });
+
+        withRealm(originalRealmId, (session, realm) -> {
+            assertThat(
+                    session.users()
+                            .searchForUserByUserAttributeStream(realm, "indexed.department", "sales")
+                            .collect(Collectors.toList()),
+                    empty());
+            assertThat(
+                    session.users()
+                            .searchForUserByUserAttributeStream(realm, "indexed.department", "marketing")
+                            .map(UserModel::getId)
+                            .collect(Collectors.toList()),
+                    contains(userId));
+
+            UserModel user = session.users().getUserById(realm, userId);
+            assertThat(user.getLastName(), is("changed"));
+            assertThat(user.getUsername(), is("indexed-user"));
+
+            user.removeAttribute("indexed.department");
+            return null;
+        });
+
+        withRealm(originalRealmId, (session, realm) -> {
+            assertThat(
+                    session.users()
+                            .searchForUserByUserAttributeStream(realm, "indexed.department", "marketing")
+                            .collect(Collectors.toList()),
+                    empty());
+            assertThat(session.users().getUserByUsername(realm, "indexed-user").getId(), is(userId));
+            return null;
+        });
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2024 IT-Systemhaus der Bundesagentur fuer Arbeit
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.WriteMode;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.CassandraUserRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserMapperBuilder;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.UserRepository;
+import de.arbeitsagentur.opdt.keycloak.cassandra.user.persistence.entities.User;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assume;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+
+/**
+ * Compares latency and throughput of user updates in the different {@link WriteMode}s.
+ *
+ * <p>Only runs with -Dkeycloak.testsuite.benchmark=true, results are logged.
+ */
+public class WriteModeBenchmarkTest extends KeycloakModelTest {
+    private static final int USERS = 200;
+    private static final int UPDATES_PER_USER = 10;
+    private static final int THREADS = 16;
+
+    @Test
+    public void benchmarkUserUpdates() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("keycloak.testsuite.benchmark"));
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        CqlSession cqlSession = inComittedTransaction((KeycloakSession session) ->
+                session.getProvider(CassandraConnectionProvider.class).getCqlSession());
+
+        for (WriteMode writeMode : WriteMode.values()) {
+            UserRepository repository = new CassandraUserRepository(
+                    new UserMapperBuilder(cqlSession)
+                            .withSchemaValidationEnabled(false)
+                            .build()
+                            .userDao(),
+                    writeMode);
+
+            List<User> users = createUsers(repository);
+
+            // warm up prepared statements and connections
+            updateSequentially(repository, users.subList(0, 10));
+
+            long[] latencies = updateSequentially(repository, users);
+            double throughput = updateConcurrently(repository, users);
+            assertPersisted(repository, users);
+
+            Arrays.sort(latencies);
+            log.infof(
+                    "%s: p50=%.2fms p99=%.2fms max=%.2fms, %.0f updates/s with %d threads",
+                    writeMode,
+                    percentile(latencies, 0.5),
+                    percentile(latencies, 0.99),
+                    latencies[latencies.length - 1] / 1_000_000d,
+                    throughput,
+                    THREADS);
+
+            users.forEach(user -> repository.deleteUser(user.getRealmId(), user.getId()));
+            users.forEach(user -> assertNull(repository.findUserById(user.getRealmId(), user.getId())));
+        }
+    }
+
+    private List<User> createUsers(UserRepository repository) {
+        String realmId = UUID.randomUUID().toString();
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < USERS; i++) {
+            User user = User.builder()
+                    .realmId(realmId)
+                    .id(UUID.randomUUID().toString())
+                    .username("benchmark-" + i)
+                    .usernameCaseInsensitive("benchmark-" + i)
+                    .build();
+            repository.insertOrUpdate(user);
+            users.add(user);
+        }
+
+        return users;
+    }
+
+    private long[] updateSequentially(UserRepository repository, List<User> users) {
+        long[] latencies = new long[users.size()];
+
+        for (int i = 0; i < users.size(); i++) {
+            User user = users.get(i);
+            user.setLastName(UUID.randomUUID().toString());
+
+            long start = System.nanoTime();
+            repository.insertOrUpdate(user);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        return latencies;
+    }
+
+    private double updateConcurrently(UserRepository repository, List<User> users) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (User user : users) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < UPDATES_PER_USER; i++) {
+                    user.setFirstName("update-" + i);
+                    repository.insertOrUpdate(user);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long duration = System.nanoTime() - start;
+
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        return users.size() * UPDATES_PER_USER / (duration / 1_000_000_000d);
+    }
+
+    // Every user is only updated by a single thread, so all updates have to be applied in every write mode
+    private void assertPersisted(UserRepository repository, List<User> users) {
+        for (User user : users) {
+            User dbUser = repository.findUserById(user.getRealmId(), user.getId());
+            assertEquals(user.getLastName(), dbUser.getLastName());
+            assertEquals("update-" + (UPDATES_PER_USER - 1), dbUser.getFirstName());
+            assertEquals(user.getVersion(), dbUser.getVersion());
+        }
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000d;
+    }
+}
@@ -21,8 +21,10 @@ import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraDatastoreProviderFacto
 import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProviderFactory;
 import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionSpi;
 import de.arbeitsagentur.opdt.keycloak.cassandra.connection.DefaultCassandraConnectionProviderFactory;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.InMemoryCassandraConnectionProviderFactory;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.Config;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelParameters;
+import de.arbeitsagentur.opdt.keycloak.cassandra.transaction.WriteMode;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Set;
@@ -35,6 +37,10 @@ import org.testcontainers.containers.wait.strategy.LogMessageWaitStrategy;
 public class CassandraMapStorage extends KeycloakModelParameters {
     public static final Boolean START_CONTAINER =
             Boolean.valueOf(System.getProperty("keycloak.testsuite.start-cassandra-container", "true"));
+    public static final String CONNECTION_PROVIDER = System.getProperty(
+            "keycloak.testsuite.cassandra-connection-provider", DefaultCassandraConnectionProviderFactory.PROVIDER_ID);
+    public static final WriteMode CLIENT_WRITE_MODE = WriteMode.parse(System.getProperty(
+            "keycloak.testsuite.cassandra-client-write-mode", WriteMode.LIGHTWEIGHT_TRANSACTION.name()));
 
     static final Set<Class<? extends Spi>> ALLOWED_SPIS = ImmutableSet.<Class<? extends Spi>>builder()
             .add(CassandraConnectionSpi.class)
@@ -57,6 +63,11 @@ public class CassandraMapStorage extends KeycloakModelParameters {
     public void updateConfig(Config cf) {
         cf.spi("datastore").defaultProvider("legacy").config("dir", "${project.build.directory:target}");
 
+        if (isInMemory()) {
+            cf.spi(CassandraConnectionSpi.NAME).defaultProvider(InMemoryCassandraConnectionProviderFactory.PROVIDER_ID);
+            return;
+        }
+
         cf.spi(CassandraConnectionSpi.NAME)
                 .provider(DefaultCassandraConnectionProviderFactory.PROVIDER_ID)
                 .config("contactPoints", START_CONTAINER ? cassandraContainer.getHost() : "localhost")
@@ -65,23 +76,28 @@ public class CassandraMapStorage extends KeycloakModelParameters {
                 .config("keyspace", "test")
                 .config("username", "cassandra")
                 .config("password", "cassandra")
-                .config("replicationFactor", "1");
+                .config("replicationFactor", "1")
+                .config("clientWriteMode", CLIENT_WRITE_MODE.name());
     }
 
     @Override
     public void beforeSuite(Config cf) {
-        if (START_CONTAINER) {
+        if (START_CONTAINER && !isInMemory()) {
             cassandraContainer.start();
         }
     }
 
     @Override
     public void afterSuite() {
-        if (START_CONTAINER) {
+        if (START_CONTAINER && !isInMemory()) {
             cassandraContainer.stop();
         }
     }
 
+    public static boolean isInMemory() {
+        return InMemoryCassandraConnectionProviderFactory.PROVIDER_ID.equals(CONNECTION_PROVIDER);
+    }
+
     private static GenericContainer createCassandraContainer() {
         return new GenericContainer("cassandra:5.0.3")
                 .withExposedPorts(9042)
@@ -24,7 +24,11 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertNull;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.CassandraAuthSessionAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.authSession.CassandraRootAuthSessionAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.RequestBudget;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.ProfileTestUtils;
 import java.util.List;
 import java.util.Set;
@@ -33,6 +37,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.*;
@@ -184,6 +189,147 @@ public class AuthenticationSessionTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    public void testTabSessionsAreLoadedOnce() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        AtomicReference<String> rootAuthSessionId = new AtomicReference<>();
+        List<String> tabIds = withRealm(realmId, (session, realm) -> {
+            RootAuthenticationSessionModel rootAuthSession =
+                    session.authenticationSessions().createRootAuthenticationSession(realm);
+            rootAuthSessionId.set(rootAuthSession.getId());
+
+            ClientModel client = realm.getClientByClientId("test-app");
+            return IntStream.range(0, 3)
+                    .mapToObj(i -> rootAuthSession.createAuthenticationSession(client))
+                    .map(AuthenticationSessionModel::getTabId)
+                    .collect(Collectors.toList());
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            ClientModel client = realm.getClientByClientId("test-app");
+            RootAuthenticationSessionModel rootAuthSession =
+                    session.authenticationSessions().getRootAuthenticationSession(realm, rootAuthSessionId.get());
+            int statementsBefore = RequestBudget.of(session).getStatements();
+
+            tabIds.forEach(tabId -> Assert.assertEquals(
+                    tabId,
+                    rootAuthSession.getAuthenticationSession(client, tabId).getTabId()));
+            assertThat(rootAuthSession.getAuthenticationSessions(), Matchers.aMapWithSize(3));
+            assertNull(rootAuthSession.getAuthenticationSession(client, "unknown"));
+
+            // all tab sessions are fetched with a single query
+            Assert.assertEquals(1, RequestBudget.of(session).getStatements() - statementsBefore);
+
+            return null;
+        });
+    }
+
+    @Test
+    public void testRootRefreshDoesNotRewriteTabSessions() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        AtomicReference<String> rootAuthSessionId = new AtomicReference<>();
+        withRealm(realmId, (session, realm) -> {
+            RootAuthenticationSessionModel rootAuthSession =
+                    session.authenticationSessions().createRootAuthenticationSession(realm);
+            rootAuthSessionId.set(rootAuthSession.getId());
+
+            ClientModel client = realm.getClientByClientId("test-app");
+            IntStream.range(0, 3).forEach(i -> rootAuthSession.createAuthenticationSession(client));
+            return null;
+        });
+
+        // within the TTL headroom of the tab sessions only the root is written
+        withRealm(realmId, (session, realm) -> {
+            CassandraRootAuthSessionAdapter rootAuthSession = (CassandraRootAuthSessionAdapter)
+                    session.authenticationSessions().getRootAuthenticationSession(realm, rootAuthSessionId.get());
+            int statementsBefore = RequestBudget.of(session).getStatements();
+
+            rootAuthSession.setTimestamp(Time.currentTime());
+            rootAuthSession.flush();
+
+            Assert.assertEquals(1, RequestBudget.of(session).getStatements() - statementsBefore);
+            return null;
+        });
+
+        // once the root outlives the headroom, the tab sessions get a new TTL
+        try {
+            withRealm(realmId, (session, realm) -> {
+                CassandraRootAuthSessionAdapter rootAuthSession = (CassandraRootAuthSessionAdapter)
+                        session.authenticationSessions().getRootAuthenticationSession(realm, rootAuthSessionId.get());
+                int statementsBefore = RequestBudget.of(session).getStatements();
+
+                Time.setOffset(1850);
+                rootAuthSession.setTimestamp(Time.currentTime());
+                rootAuthSession.flush();
+
+                // root write, tab session read and one write per tab session
+                Assert.assertEquals(5, RequestBudget.of(session).getStatements() - statementsBefore);
+                assertThat(rootAuthSession.getAuthenticationSessions(), Matchers.aMapWithSize(3));
+                return null;
+            });
+        } finally {
+            Time.setOffset(0);
+        }
+    }
+
+    @Test
+    public void testFlushWritesOnlyChangedNotes() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        AtomicReference<String> rootAuthSessionId = new AtomicReference<>();
+        String tabId = withRealm(realmId, (session, realm) -> {
+            RootAuthenticationSessionModel rootAuthSession =
+                    session.authenticationSessions().createRootAuthenticationSession(realm);
+            rootAuthSessionId.set(rootAuthSession.getId());
+
+            AuthenticationSessionModel authSession =
+                    rootAuthSession.createAuthenticationSession(realm.getClientByClientId("test-app"));
+            authSession.setAuthNote("a", "1");
+            authSession.setAuthNote("b", "2");
+            authSession.setClientNote("c", "3");
+            authSession.setExecutionStatus("username", AuthenticationSessionModel.ExecutionStatus.SUCCESS);
+            return authSession.getTabId();
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            CassandraAuthSessionAdapter authSession = (CassandraAuthSessionAdapter) session.authenticationSessions()
+                    .getRootAuthenticationSession(realm, rootAuthSessionId.get())
+                    .getAuthenticationSession(realm.getClientByClientId("test-app"), tabId);
+            int statementsBefore = RequestBudget.of(session).getStatements();
+
+            authSession.setAuthNote("a", "4");
+            authSession.removeAuthNote("b");
+            authSession.flush();
+
+            Assert.assertEquals(1, RequestBudget.of(session).getStatements() - statementsBefore);
+            String update = RequestBudget.of(session).getTopQueryShapes(100).stream()
+                    .map(RequestBudget.QueryShape::getQuery)
+                    .filter(query -> query.startsWith("UPDATE") && query.contains("authentication_sessions"))
+                    .findFirst()
+                    .orElseThrow();
+            assertThat(update, Matchers.containsString("auth_notes"));
+            assertThat(update, Matchers.not(Matchers.containsString("client_notes")));
+            assertThat(update, Matchers.not(Matchers.containsString("execution_status")));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            AuthenticationSessionModel authSession = session.authenticationSessions()
+                    .getRootAuthenticationSession(realm, rootAuthSessionId.get())
+                    .getAuthenticationSession(realm.getClientByClientId("test-app"), tabId);
+
+            Assert.assertEquals("4", authSession.getAuthNote("a"));
+            assertNull(authSession.getAuthNote("b"));
+            Assert.assertEquals("3", authSession.getClientNote("c"));
+            Assert.assertEquals(
+                    AuthenticationSessionModel.ExecutionStatus.SUCCESS,
+                    authSession.getExecutionStatus().get("username"));
+            return null;
+        });
+    }
+
     @Test
     public void testRemoveExpiredAuthSessions() {
         AtomicReference<String> rootAuthSessionId = new AtomicReference<>();
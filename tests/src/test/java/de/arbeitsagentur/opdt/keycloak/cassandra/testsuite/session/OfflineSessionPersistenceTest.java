@@ -19,6 +19,7 @@ package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.session;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Consumer;
@@ -26,6 +27,7 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.hamcrest.Matchers;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.models.*;
 import org.keycloak.services.managers.RealmManager;
@@ -71,6 +73,9 @@ public class OfflineSessionPersistenceTest extends KeycloakModelTest {
 
     @Test
     public void testPersistenceSingleNodeDeleteRealm() {
+        // Simulates a server restart, which loses all data of the in-memory storage
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
         String realmId2 = inComittedTransaction(session -> {
             return prepareRealm(session, "realm2").getId();
         });
@@ -102,6 +107,9 @@ public class OfflineSessionPersistenceTest extends KeycloakModelTest {
 
     @Test
     public void testPersistenceSingleNode() {
+        // Simulates a server restart, which loses all data of the in-memory storage
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
         List<String> offlineSessionIds = createOfflineSessions(realmId, userIds);
         assertOfflineSessionsExist(realmId, offlineSessionIds);
 
@@ -17,17 +17,27 @@
 
 package de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.session;
 
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.sameInstance;
 
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelTest;
 import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.CassandraUserSessionAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.CassandraUserSessionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ClientExpirationPolicy;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.ExpirationPolicies;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.expiration.RealmExpirationPolicy;
 import java.util.stream.Collectors;
 import org.junit.Test;
 import org.keycloak.common.util.Time;
 import org.keycloak.models.*;
+import org.keycloak.protocol.oidc.OIDCConfigAttributes;
 
 public class UserSessionExpirationTest extends KeycloakModelTest {
 
@@ -64,6 +74,233 @@ public class UserSessionExpirationTest extends KeycloakModelTest {
         s.realms().removeRealm(realmId);
     }
 
+    @Test
+    public void testExpirationPoliciesFollowRealmAndClientUpdates() {
+        String clientId = withRealm(realmId, (session, realm) -> {
+            realm.setSsoSessionIdleTimeout(1800);
+            return realm.addClient("policy-client").getId();
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            ExpirationPolicies policies = expirationPolicies(session);
+            ClientModel client = realm.getClientById(clientId);
+            RealmExpirationPolicy realmPolicy = policies.of(realm);
+            ClientExpirationPolicy clientPolicy = policies.of(client);
+
+            // computed once per version
+            assertThat(policies.of(realm), sameInstance(realmPolicy));
+            assertThat(policies.of(client), sameInstance(clientPolicy));
+            assertThat(realmPolicy.getSsoSessionIdleTimeout(), is(1800));
+            assertThat(clientPolicy.getClientSessionIdleTimeout(), nullValue());
+
+            // changes of the current transaction are visible immediately
+            realm.setSsoSessionIdleTimeout(600);
+            client.setAttribute(OIDCConfigAttributes.CLIENT_SESSION_IDLE_TIMEOUT, "60");
+            assertThat(policies.of(realm).getSsoSessionIdleTimeout(), is(600));
+            assertThat(policies.of(client).getClientSessionIdleTimeout(), is(60_000L));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            ExpirationPolicies policies = expirationPolicies(session);
+            assertThat(policies.of(realm).getSsoSessionIdleTimeout(), is(600));
+            assertThat(policies.of(realm.getClientById(clientId)).getClientSessionIdleTimeout(), is(60_000L));
+            return null;
+        });
+    }
+
+    @Test
+    public void testExpirationPoliciesAreEvictedOnRemoval() {
+        String otherRealmId = inComittedTransaction(session -> {
+            RealmModel realm = session.realms().createRealm("policy-realm");
+            realm.addClient("policy-client");
+            return realm.getId();
+        });
+
+        int cached = withRealm(otherRealmId, (session, realm) -> {
+            ExpirationPolicies policies = expirationPolicies(session);
+            int before = policies.size();
+            policies.of(realm);
+            policies.of(realm.getClientByClientId("policy-client"));
+            assertThat(policies.size(), is(before + 2));
+            return policies.size();
+        });
+
+        int afterClientRemoval = withRealm(otherRealmId, (session, realm) -> {
+            realm.removeClient(realm.getClientByClientId("policy-client").getId());
+            return expirationPolicies(session).size();
+        });
+        assertThat(afterClientRemoval, is(cached - 1));
+
+        int afterRealmRemoval = inComittedTransaction(session -> {
+            session.realms().removeRealm(otherRealmId);
+            return expirationPolicies(session).size();
+        });
+        assertThat(afterRealmRemoval, is(cached - 2));
+    }
+
+    private static ExpirationPolicies expirationPolicies(KeycloakSession session) {
+        return ((CassandraUserSessionProvider) session.sessions()).getExpirationPolicies();
+    }
+
+    @Test
+    public void testCoalescedRefreshWrites() {
+        withRealm(realmId, (session, realm) -> {
+            realm.setSsoSessionIdleTimeout(1800);
+            realm.setSsoSessionMaxLifespan(36000);
+            return null;
+        });
+
+        String uSId = withRealm(realmId, (session, realm) -> session.sessions()
+                .createUserSession(
+                        realm,
+                        session.users().getUserByUsername(realm, "user1"),
+                        "user1",
+                        "127.0.0.1",
+                        "form",
+                        true,
+                        null,
+                        null)
+                .getId());
+        int created = withRealm(realmId, (session, realm) -> session.sessions()
+                .getUserSession(realm, uSId)
+                .getLastSessionRefresh());
+
+        // refreshes within the window are not written
+        Time.setOffset(30);
+        withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = refreshWindowProvider(session).getUserSession(realm, uSId);
+            userSession.setLastSessionRefresh(Time.currentTime());
+            return null;
+        });
+        assertThat(
+                withRealm(realmId, (session, realm) -> session.sessions()
+                        .getUserSession(realm, uSId)
+                        .getLastSessionRefresh()),
+                is(created));
+
+        // other changes are written together with the pending refresh
+        int refreshedWithNote = withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = refreshWindowProvider(session).getUserSession(realm, uSId);
+            userSession.setLastSessionRefresh(Time.currentTime());
+            userSession.setNote("foo", "bar");
+            return userSession.getLastSessionRefresh();
+        });
+        assertThat(refreshedWithNote, greaterThan(created));
+        assertThat(
+                withRealm(realmId, (session, realm) -> session.sessions()
+                        .getUserSession(realm, uSId)
+                        .getLastSessionRefresh()),
+                is(refreshedWithNote));
+
+        // refreshes extending the expiration by the window are written
+        Time.setOffset(100);
+        int refreshed = withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = refreshWindowProvider(session).getUserSession(realm, uSId);
+            userSession.setLastSessionRefresh(Time.currentTime());
+            return userSession.getLastSessionRefresh();
+        });
+        assertThat(
+                withRealm(realmId, (session, realm) -> session.sessions()
+                        .getUserSession(realm, uSId)
+                        .getLastSessionRefresh()),
+                is(refreshed));
+    }
+
+    @Test
+    public void testRefreshWritesWithExpirationCappedByMaxLifespan() {
+        withRealm(realmId, (session, realm) -> {
+            realm.setSsoSessionIdleTimeout(1800);
+            realm.setSsoSessionMaxLifespan(600);
+            return null;
+        });
+
+        String uSId = withRealm(realmId, (session, realm) -> session.sessions()
+                .createUserSession(
+                        realm,
+                        session.users().getUserByUsername(realm, "user1"),
+                        "user1",
+                        "127.0.0.1",
+                        "form",
+                        true,
+                        null,
+                        null)
+                .getId());
+        int created = withRealm(realmId, (session, realm) -> session.sessions()
+                .getUserSession(realm, uSId)
+                .getLastSessionRefresh());
+
+        // the expiration stays at the max lifespan, refreshes are still written once per window
+        for (int offset : new int[] {70, 140}) {
+            Time.setOffset(offset);
+            int refreshed = withRealm(realmId, (session, realm) -> {
+                UserSessionModel userSession = refreshWindowProvider(session).getUserSession(realm, uSId);
+                userSession.setLastSessionRefresh(Time.currentTime());
+                return userSession.getLastSessionRefresh();
+            });
+            assertThat(refreshed, greaterThanOrEqualTo(created + offset));
+            assertThat(
+                    withRealm(realmId, (session, realm) -> session.sessions()
+                            .getUserSession(realm, uSId)
+                            .getLastSessionRefresh()),
+                    is(refreshed));
+        }
+    }
+
+    @Test
+    public void testRefreshWritesShorteningTheClientSessionExpiration() {
+        String clientId = withRealm(realmId, (session, realm) -> {
+            realm.setSsoSessionIdleTimeout(1800);
+            realm.setSsoSessionMaxLifespan(36000);
+            realm.setClientSessionIdleTimeout(1800);
+            return realm.addClient("refresh-client").getId();
+        });
+
+        String uSId = withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = session.sessions()
+                    .createUserSession(
+                            realm,
+                            session.users().getUserByUsername(realm, "user1"),
+                            "user1",
+                            "127.0.0.1",
+                            "form",
+                            true,
+                            null,
+                            null);
+            session.sessions().createClientSession(realm, realm.getClientById(clientId), userSession);
+            return userSession.getId();
+        });
+        int created = withRealm(realmId, (session, realm) -> session.sessions()
+                .getUserSession(realm, uSId)
+                .getAuthenticatedClientSessionByClient(clientId)
+                .getTimestamp());
+
+        // the override shortens the client session expiration within the window, so the refresh is written
+        Time.setOffset(30);
+        int refreshed = withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = refreshWindowProvider(session).getUserSession(realm, uSId);
+            userSession.setNote(CassandraUserSessionAdapter.CLIENT_IDLE_TIMEOUT_OVERRIDE_ATTRIBUTE, "600");
+            AuthenticatedClientSessionModel clientSession = userSession.getAuthenticatedClientSessionByClient(clientId);
+            clientSession.setTimestamp(Time.currentTime());
+            return clientSession.getTimestamp();
+        });
+        assertThat(refreshed, greaterThan(created));
+        assertThat(
+                withRealm(realmId, (session, realm) -> session.sessions()
+                        .getUserSession(realm, uSId)
+                        .getAuthenticatedClientSessionByClient(clientId)
+                        .getTimestamp()),
+                is(refreshed));
+    }
+
+    private static CassandraUserSessionProvider refreshWindowProvider(KeycloakSession session) {
+        return new CassandraUserSessionProvider(
+                session,
+                session.getProvider(CassandraConnectionProvider.class).getRepository(),
+                60_000,
+                expirationPolicies(session));
+    }
+
     @Test
     public void testClientSessionIdleTimeout() {
 
@@ -25,11 +25,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.keycloak.models.*;
 
@@ -79,6 +81,9 @@ public class UserSessionInitializerTest extends KeycloakModelTest {
 
     @Test
     public void testUserSessionInitializer() {
+        // Simulates a server restart, which loses all data of the in-memory storage
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
         UserSessionModel[] origSessionIds = createSessionsInPersisterOnly();
         int started = origSessionIds[0].getStarted();
 
@@ -132,6 +137,9 @@ public class UserSessionInitializerTest extends KeycloakModelTest {
 
     @Test
     public void testUserSessionInitializerWithDeletingClient() {
+        // Simulates a server restart, which loses all data of the in-memory storage
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
         UserSessionModel[] origSessionIds = createSessionsInPersisterOnly();
         int started = origSessionIds[0].getStarted();
 
@@ -22,8 +22,15 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.*;
 
+import com.datastax.oss.driver.api.core.CqlSession;
+import de.arbeitsagentur.opdt.keycloak.cassandra.CassandraJsonSerialization;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.CassandraConnectionProvider;
+import de.arbeitsagentur.opdt.keycloak.cassandra.connection.RequestBudget;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.KeycloakModelTest;
+import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.CassandraMapStorage;
 import de.arbeitsagentur.opdt.keycloak.cassandra.testsuite.parameters.ProfileTestUtils;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.CassandraUserSessionAdapter;
+import de.arbeitsagentur.opdt.keycloak.cassandra.userSession.persistence.entities.AuthenticatedClientSessionValue;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -31,6 +38,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.keycloak.common.util.Time;
@@ -1228,4 +1236,134 @@ public class UserSessionProviderModelTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    public void testClientSessionUpdateWritesOnlyThatClientSession() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        UserSessionModel[] origSessions = inComittedTransaction(session -> {
+            return createSessions(session, realmId);
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            CassandraUserSessionAdapter userSession =
+                    (CassandraUserSessionAdapter) session.sessions().getUserSession(realm, origSessions[0].getId());
+            AuthenticatedClientSessionModel clientSession = userSession.getAuthenticatedClientSessionByClient(
+                    realm.getClientByClientId("test-app").getId());
+            int statementsBefore = RequestBudget.of(session).getStatements();
+
+            clientSession.setNote("foo", "bar");
+            userSession.flush();
+
+            Assert.assertEquals(1, RequestBudget.of(session).getStatements() - statementsBefore);
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = session.sessions().getUserSession(realm, origSessions[0].getId());
+            assertThat(userSession.getAuthenticatedClientSessions().size(), is(2));
+            assertEquals(
+                    "bar",
+                    userSession
+                            .getAuthenticatedClientSessionByClient(
+                                    realm.getClientByClientId("test-app").getId())
+                            .getNote("foo"));
+            return null;
+        });
+    }
+
+    @Test
+    public void testLegacyClientSessionsAreMigrated() {
+        Assume.assumeFalse(CassandraMapStorage.isInMemory());
+
+        String userSessionId = withRealm(realmId, (session, realm) -> session.sessions()
+                .createUserSession(
+                        realm,
+                        session.users().getUserByUsername(realm, "user1"),
+                        "user1",
+                        "127.0.0.1",
+                        "form",
+                        true,
+                        null,
+                        null)
+                .getId());
+
+        withRealm(realmId, (session, realm) -> {
+            String clientId = realm.getClientByClientId("test-app").getId();
+            AuthenticatedClientSessionValue legacyClientSession = AuthenticatedClientSessionValue.builder()
+                    .id(KeycloakModelUtils.generateId())
+                    .clientId(clientId)
+                    .timestamp(Time.currentTimeMillis())
+                    .expiration(Time.currentTimeMillis() + 60_000)
+                    .notes(new HashMap<>(Map.of("foo", "bar")))
+                    .build();
+
+            CqlSession cqlSession =
+                    session.getProvider(CassandraConnectionProvider.class).getCqlSession();
+            cqlSession.execute(
+                    "UPDATE user_sessions SET client_sessions = ? WHERE id = ?",
+                    Map.of(clientId, CassandraJsonSerialization.writeValueAsString(legacyClientSession)),
+                    userSessionId);
+            return null;
+        });
+
+        // Reading the session doesn't write anything
+        withRealm(realmId, (session, realm) -> {
+            UserSessionModel userSession = session.sessions().getUserSession(realm, userSessionId);
+            assertEquals(
+                    "bar",
+                    userSession
+                            .getAuthenticatedClientSessionByClient(
+                                    realm.getClientByClientId("test-app").getId())
+                            .getNote("foo"));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            CqlSession cqlSession =
+                    session.getProvider(CassandraConnectionProvider.class).getCqlSession();
+            assertThat(
+                    cqlSession
+                            .execute("SELECT client_sessions FROM user_sessions WHERE id = ?", userSessionId)
+                            .one()
+                            .getMap("client_sessions", String.class, String.class)
+                            .keySet(),
+                    hasSize(1));
+            assertThat(
+                    cqlSession
+                            .execute(
+                                    "SELECT client_id FROM user_session_client_sessions WHERE user_session_id = ?",
+                                    userSessionId)
+                            .all(),
+                    hasSize(0));
+            return null;
+        });
+
+        // The first write moves the legacy client sessions to rows of their own
+        withRealm(realmId, (session, realm) -> {
+            session.sessions().getUserSession(realm, userSessionId).setNote("migrated", "true");
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            CqlSession cqlSession =
+                    session.getProvider(CassandraConnectionProvider.class).getCqlSession();
+            assertTrue(cqlSession
+                    .execute("SELECT client_sessions FROM user_sessions WHERE id = ?", userSessionId)
+                    .one()
+                    .getMap("client_sessions", String.class, String.class)
+                    .isEmpty());
+            assertThat(
+                    cqlSession
+                            .execute(
+                                    "SELECT client_id FROM user_session_client_sessions WHERE user_session_id = ?",
+                                    userSessionId)
+                            .all(),
+                    hasSize(1));
+
+            UserSessionModel userSession = session.sessions().getUserSession(realm, userSessionId);
+            assertThat(userSession.getAuthenticatedClientSessions().size(), is(1));
+            return null;
+        });
+    }
 }